@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.HeadlessRunner;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time needed by an effect to render one frame, for every effect and at every resolution. The effects are the ones checked by {@link GoldenFrames}, named relative to <code>org.mihalis.demos</code>: they are
+ * found on the class path by {@link #main}, unless some are given with <code>-p effect=plasma.Plasma,fire.Fire</code>.
+ * <p>
+ * Run with <code>-prof gc</code> to also get the allocation rate per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EffectBenchmark {
+
+	private static final String ROOT_PACKAGE = "org.mihalis.demos.";
+
+	// Only the plasma when the benchmark is run by org.openjdk.jmh.Main
+	@Param("plasma.Plasma")
+	public String effect;
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String resolution;
+
+	private int width, height;
+	private int[] frame;
+	private Effect instance;
+	private long frameIndex;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final int x = resolution.indexOf('x');
+		width = Integer.parseInt(resolution.substring(0, x));
+		height = Integer.parseInt(resolution.substring(x + 1));
+		frame = new int[width * height];
+		instance = HeadlessRunner.createEffect(ROOT_PACKAGE + effect);
+		instance.init(width, height);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		instance.dispose();
+	}
+
+	@Benchmark
+	public int[] renderFrame() {
+		instance.renderFrame(frame, frameIndex++);
+		return frame;
+	}
+
+	/**
+	 * Run JMH with the given options, adding every effect found on the class path when no effect is given
+	 */
+	public static void main(String[] args) throws Exception {
+		final List<String> options = new ArrayList<>(Arrays.asList(args));
+		boolean effects = false;
+		for (int i = 0; i + 1 < options.size(); i++) {
+			effects |= "-p".equals(options.get(i)) && options.get(i + 1).startsWith("effect=");
+		}
+		if (!effects) {
+			final List<String> names = new ArrayList<>();
+			for (final String className : GoldenFrames.findEffects()) {
+				names.add(className.substring(ROOT_PACKAGE.length()));
+			}
+			options.add("-p");
+			options.add("effect=" + String.join(",", names));
+		}
+		Main.main(options.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.HeadlessRunner;
+
+/**
+ * Golden-frame regression harness. Every effect found under <code>org.mihalis.demos</code> renders a given frame headless, with a fixed random seed, and the checksum of this frame is compared with the one stored in the golden file. The
+ * same run also fails when the mean frame time or the bytes allocated per frame exceed the budgets of the effect.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.mihalis.demos.benchmarks.GoldenFrames                 # check every effect
+ * java -cp target/benchmarks.jar org.mihalis.demos.benchmarks.GoldenFrames -only tunnel    # check some effects
+ * java -cp target/benchmarks.jar org.mihalis.demos.benchmarks.GoldenFrames -update         # record the current frames
+ * </pre>
+ *
+ * Each line of the golden file holds an effect class, the size, the index of the checked frame, the CRC-32 of its pixels, the frame time budget in milliseconds and the allocation budget in bytes per frame. The budgets are only written
+ * when an effect is added, then edited by hand. When a frame does not match, the rendered frame is saved as a PNG file to be compared with the previous version.
+ */
+public class GoldenFrames {
+
+	private static final String ROOT = "org/mihalis/demos";
+	private static final String BENCHMARKS_PACKAGE = GoldenFrames.class.getPackage().getName() + ".";
+	private static final long SEED = 1;
+	private static final int WIDTH = 320, HEIGHT = 240;
+	private static final int FRAME = 99;
+
+	// Frames rendered before the time and the allocations are measured
+	private static final int WARMUP = 20;
+
+	// Budgets given to a new effect, relative to its first measure
+	private static final double TIME_MARGIN = 4;
+	private static final double MIN_TIME_BUDGET = 2;
+	private static final long MIN_ALLOCATION_BUDGET = 16 * 1024;
+
+	/**
+	 * A line of the golden file
+	 */
+	private static final class Golden {
+		final String className;
+		int width = WIDTH, height = HEIGHT, frame = FRAME;
+		String checksum;
+		double timeBudget;
+		long allocationBudget = -1;
+
+		Golden(String className) {
+			this.className = className;
+		}
+
+		static Golden parse(String line) {
+			final String[] fields = line.trim().split("\\s+");
+			if (fields.length != 6) {
+				throw new IllegalArgumentException("Invalid golden frame: " + line);
+			}
+			final Golden golden = new Golden(fields[0]);
+			final int x = fields[1].indexOf('x');
+			golden.width = Integer.parseInt(fields[1].substring(0, x));
+			golden.height = Integer.parseInt(fields[1].substring(x + 1));
+			golden.frame = Integer.parseInt(fields[2]);
+			golden.checksum = fields[3];
+			golden.timeBudget = Double.parseDouble(fields[4]);
+			golden.allocationBudget = Long.parseLong(fields[5]);
+			return golden;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-48s %dx%d %4d %s %7.1f %9d", className, width, height, frame, checksum, timeBudget, allocationBudget);
+		}
+	}
+
+	/**
+	 * The checked frame of an effect, with the mean time and allocations of the frames after the warmup
+	 */
+	private static final class Result {
+		int[] frame;
+		String checksum;
+		double time;
+		long allocation = -1;
+	}
+
+	private static Result render(Golden golden, com.sun.management.ThreadMXBean threadBean) {
+		FastRandom.setDefaultSeed(SEED);
+		final HeadlessRunner runner = new HeadlessRunner(HeadlessRunner.createEffect(golden.className), golden.width, golden.height);
+		final Result result = new Result();
+		final long threadId = Thread.currentThread().getId();
+		final int warmup = Math.min(WARMUP, golden.frame);
+		long time = 0, allocation = 0;
+		try {
+			for (int i = 0; i <= golden.frame; i++) {
+				final long allocationStart = threadBean != null ? threadBean.getThreadAllocatedBytes(threadId) : -1;
+				final long start = System.nanoTime();
+				result.frame = runner.renderFrame();
+				if (i >= warmup) {
+					time += System.nanoTime() - start;
+					if (threadBean != null) {
+						allocation += threadBean.getThreadAllocatedBytes(threadId) - allocationStart;
+					}
+				}
+			}
+		} finally {
+			runner.dispose();
+		}
+		final int measured = golden.frame + 1 - warmup;
+		result.time = time / 1e6 / measured;
+		if (threadBean != null) {
+			result.allocation = allocation / measured;
+		}
+		result.checksum = checksum(result.frame);
+		return result;
+	}
+
+	private static String checksum(int[] pixels) {
+		final byte[] bytes = new byte[pixels.length * 4];
+		for (int i = 0; i < pixels.length; i++) {
+			final int pixel = pixels[i];
+			bytes[i * 4] = (byte) (pixel >> 24);
+			bytes[i * 4 + 1] = (byte) (pixel >> 16);
+			bytes[i * 4 + 2] = (byte) (pixel >> 8);
+			bytes[i * 4 + 3] = (byte) pixel;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		return String.format("%08x", crc.getValue());
+	}
+
+	/**
+	 * @return the thread bean if it can measure the bytes allocated by a thread, or <code>null</code>
+	 */
+	private static com.sun.management.ThreadMXBean createThreadBean() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		try {
+			if (!sunBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+			return sunBean;
+		} catch (final UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the names of the effect classes on the class path that can be created without argument
+	 */
+	static Set<String> findEffects() throws IOException {
+		final ClassLoader loader = GoldenFrames.class.getClassLoader();
+		final Set<String> classNames = new TreeSet<>();
+		final Enumeration<URL> roots = loader.getResources(ROOT);
+		while (roots.hasMoreElements()) {
+			final URL root = roots.nextElement();
+			if ("jar".equals(root.getProtocol())) {
+				final JarURLConnection connection = (JarURLConnection) root.openConnection();
+				connection.setUseCaches(false);
+				try (JarFile jar = connection.getJarFile()) {
+					final Enumeration<JarEntry> entries = jar.entries();
+					while (entries.hasMoreElements()) {
+						addClassName(entries.nextElement().getName(), classNames);
+					}
+				}
+			} else if ("file".equals(root.getProtocol())) {
+				try {
+					final Path directory = Paths.get(root.toURI());
+					final Path base = directory.getParent().getParent().getParent();
+					try (Stream<Path> files = Files.walk(directory)) {
+						files.forEach(file -> addClassName(base.relativize(file).toString().replace(File.separatorChar, '/'), classNames));
+					}
+				} catch (final URISyntaxException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+		final Set<String> effects = new TreeSet<>();
+		for (final String className : classNames) {
+			try {
+				final Class<?> type = Class.forName(className, false, loader);
+				if (Effect.class.isAssignableFrom(type) && Modifier.isPublic(type.getModifiers()) && !type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+					type.getConstructor();
+					effects.add(className);
+				}
+			} catch (final ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+				// Not an effect that can be created without argument
+			}
+		}
+		return effects;
+	}
+
+	private static void addClassName(String path, Set<String> classNames) {
+		if (path.startsWith(ROOT + "/") && path.endsWith(".class") && path.indexOf('$') < 0) {
+			final String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+			if (!className.startsWith(BENCHMARKS_PACKAGE)) {
+				classNames.add(className);
+			}
+		}
+	}
+
+	private static Map<String, Golden> read(File file) throws IOException {
+		final Map<String, Golden> goldens = new TreeMap<>();
+		if (!file.exists()) {
+			return goldens;
+		}
+		for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			if (line.trim().isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			final Golden golden = Golden.parse(line);
+			goldens.put(golden.className, golden);
+		}
+		return goldens;
+	}
+
+	private static void write(File file, Map<String, Golden> goldens) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+			out.println("# Golden frames, checked by org.mihalis.demos.benchmarks.GoldenFrames");
+			out.println("# effect, size, frame index, CRC-32 of the frame, budget in ms per frame, budget in bytes allocated per frame");
+			for (final Golden golden : goldens.values()) {
+				out.println(golden);
+			}
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: GoldenFrames [-update] [-only <text>] [-file <golden file>] [-out <directory>]");
+		System.err.println("  -update  record the frames that changed and the effects that have no golden frame yet");
+		System.err.println("  -only    only check the effects whose class name contains the given text");
+		System.err.println("  -file    golden file, golden-frames.txt by default");
+		System.err.println("  -out     directory of the frames that do not match, target/golden by default");
+		System.exit(2);
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean update = false;
+		String only = null;
+		File file = new File("golden-frames.txt"), out = new File("target/golden");
+		for (int i = 0; i < args.length; i++) {
+			final String option = args[i];
+			if ("-update".equals(option)) {
+				update = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				usage();
+			}
+			final String value = args[++i];
+			switch (option) {
+				case "-only":
+					only = value;
+					break;
+				case "-file":
+					file = new File(value);
+					break;
+				case "-out":
+					out = new File(value);
+					break;
+				default:
+					usage();
+			}
+		}
+
+		final Map<String, Golden> goldens = read(file);
+		final Set<String> effects = findEffects();
+		final List<String> failures = new ArrayList<>();
+		for (final String className : effects) {
+			if (!goldens.containsKey(className)) {
+				if (update) {
+					goldens.put(className, new Golden(className));
+				} else if (only == null || className.contains(only)) {
+					failures.add(className + ": no golden frame");
+				}
+			}
+		}
+		for (final String className : new ArrayList<>(goldens.keySet())) {
+			if (!effects.contains(className)) {
+				if (update) {
+					goldens.remove(className);
+				} else {
+					failures.add(className + ": golden frame of an unknown effect");
+				}
+			}
+		}
+
+		final com.sun.management.ThreadMXBean threadBean = createThreadBean();
+		for (final Golden golden : goldens.values()) {
+			if (only != null && !golden.className.contains(only)) {
+				continue;
+			}
+			final Result result = render(golden, threadBean);
+			final String name = golden.className.substring(ROOT.length() + 1);
+			final List<String> problems = new ArrayList<>();
+
+			if (golden.checksum == null || !golden.checksum.equals(result.checksum)) {
+				if (update) {
+					golden.checksum = result.checksum;
+				} else {
+					if (!out.isDirectory() && !out.mkdirs()) {
+						throw new IOException("Unable to create the directory " + out);
+					}
+					final File png = new File(out, String.format("%s_%05d.png", name.replace('.', '_'), golden.frame));
+					HeadlessRunner.writePng(result.frame, golden.width, golden.height, png);
+					problems.add("frame " + golden.frame + " is " + result.checksum + " instead of " + golden.checksum + ", see " + png);
+				}
+			}
+			if (golden.timeBudget == 0) {
+				golden.timeBudget = Math.ceil(Math.max(MIN_TIME_BUDGET, result.time * TIME_MARGIN));
+			} else if (result.time > golden.timeBudget) {
+				problems.add(String.format("%.2f ms per frame, over the budget of %.1f ms", result.time, golden.timeBudget));
+			}
+			if (golden.allocationBudget < 0) {
+				golden.allocationBudget = Math.max(MIN_ALLOCATION_BUDGET, result.allocation * 2);
+			} else if (result.allocation > golden.allocationBudget) {
+				problems.add(String.format("%d bytes allocated per frame, over the budget of %d bytes", result.allocation, golden.allocationBudget));
+			}
+
+			System.out.println(String.format("%-4s %-36s %8.2f ms %10d bytes", problems.isEmpty() ? "ok" : "FAIL", name, result.time, result.allocation));
+			for (final String problem : problems) {
+				failures.add(golden.className + ": " + problem);
+			}
+		}
+
+		if (update) {
+			write(file, goldens);
+			System.out.println("Golden frames written to " + file);
+		}
+		if (!failures.isEmpty()) {
+			System.out.println();
+			System.out.println(failures.size() + " failure(s):");
+			for (final String failure : failures) {
+				System.out.println("  " + failure);
+			}
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.scrolls.PerspectiveFilter;
+import org.mihalis.demos.scrolls.TransformFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the perspective filter alone, with both interpolations, on a checkerboard of the size of the frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerspectiveFilterBenchmark {
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String resolution;
+
+	@Param({ "BILINEAR", "NEAREST_NEIGHBOUR" })
+	public String interpolation;
+
+	private PerspectiveFilter filter;
+	private Bitmap source;
+	private Bitmap target;
+
+	@Setup
+	public void setUp() {
+		final int x = resolution.indexOf('x');
+		final int width = Integer.parseInt(resolution.substring(0, x));
+		final int height = Integer.parseInt(resolution.substring(x + 1));
+
+		source = new Bitmap(width, height);
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				source.pixels[j * width + i] = ((i >> 4) + (j >> 4) & 1) == 0 ? 0xFF000000 : 0xFFFFFFFF;
+			}
+		}
+
+		filter = new PerspectiveFilter();
+		filter.setInterpolation("BILINEAR".equals(interpolation) ? TransformFilter.BILINEAR : TransformFilter.NEAREST_NEIGHBOUR);
+		filter.setCorners(width / 2 - 50, 0, width / 2 + 50, 0, width - 1, height - 1, 0, height - 1);
+		target = filter.filter(source, null);
+	}
+
+	@Benchmark
+	public Bitmap filter() {
+		return filter.filter(source, target);
+	}
+}
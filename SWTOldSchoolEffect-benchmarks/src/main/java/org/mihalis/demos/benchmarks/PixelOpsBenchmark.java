@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mihalis.demos.core.PixelOps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk pixel operations on a whole frame, with the scalar and the packed {@link PixelOps}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelOpsBenchmark {
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String resolution;
+
+	@Param({ "scalar", "packed" })
+	public String implementation;
+
+	private PixelOps pixelOps;
+	private int length;
+	private int[] palette, indices, from, to, nw, ne, sw, se, xWeights, yWeights, frame;
+	private byte[] byteIndices;
+
+	@Setup
+	public void setUp() {
+		final int x = resolution.indexOf('x');
+		length = Integer.parseInt(resolution.substring(0, x)) * Integer.parseInt(resolution.substring(x + 1));
+		pixelOps = PixelOps.get(implementation);
+
+		final Random random = new Random(0);
+		palette = randomColors(random, 256);
+		indices = new int[length];
+		byteIndices = new byte[length];
+		xWeights = new int[length];
+		yWeights = new int[length];
+		for (int i = 0; i < length; i++) {
+			indices[i] = random.nextInt(256);
+			byteIndices[i] = (byte) indices[i];
+			xWeights[i] = random.nextInt(257);
+			yWeights[i] = random.nextInt(257);
+		}
+		from = randomColors(random, length);
+		to = randomColors(random, length);
+		nw = randomColors(random, length);
+		ne = randomColors(random, length);
+		sw = randomColors(random, length);
+		se = randomColors(random, length);
+		frame = new int[length];
+	}
+
+	private static int[] randomColors(Random random, int count) {
+		final int[] colors = new int[count];
+		for (int i = 0; i < count; i++) {
+			colors[i] = random.nextInt();
+		}
+		return colors;
+	}
+
+	@Benchmark
+	public int[] expand() {
+		pixelOps.expand(palette, indices, frame, 0, length);
+		return frame;
+	}
+
+	@Benchmark
+	public int[] expandBytes() {
+		pixelOps.expand(palette, byteIndices, frame, 0, length);
+		return frame;
+	}
+
+	@Benchmark
+	public int[] mix() {
+		pixelOps.mix(from, to, 77, frame, 0, length);
+		return frame;
+	}
+
+	@Benchmark
+	public int[] bilinear() {
+		pixelOps.bilinear(nw, ne, sw, se, xWeights, yWeights, frame, length);
+		return frame;
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.mihalis.demos.core.swt.PixelWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of a whole int[] frame into an image data, with SWT and with the {@link PixelWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelWriterBenchmark {
+
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String resolution;
+
+	@Param({ "8", "24", "32" })
+	public int depth;
+
+	private int width, height;
+	private int[] frame;
+	private ImageData imageData;
+	private PixelWriter writer;
+
+	@Setup
+	public void setUp() {
+		final int x = resolution.indexOf('x');
+		width = Integer.parseInt(resolution.substring(0, x));
+		height = Integer.parseInt(resolution.substring(x + 1));
+
+		final PaletteData palette;
+		if (depth == 8) {
+			final RGB[] colors = new RGB[256];
+			for (int i = 0; i < colors.length; i++) {
+				colors[i] = new RGB(i, i, i);
+			}
+			palette = new PaletteData(colors);
+		} else {
+			palette = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+		}
+
+		final Random random = new Random(0);
+		frame = new int[width * height];
+		for (int i = 0; i < frame.length; i++) {
+			frame[i] = depth == 8 ? random.nextInt(256) : random.nextInt() & 0xFFFFFF;
+		}
+
+		imageData = new ImageData(width, height, depth, palette);
+		writer = PixelWriter.create(imageData);
+	}
+
+	/**
+	 * What the demos used to do: one call to setPixel per pixel
+	 */
+	@Benchmark
+	public ImageData setPixelWithSWT() {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				imageData.setPixel(x, y, frame[y * width + x]);
+			}
+		}
+		return imageData;
+	}
+
+	@Benchmark
+	public ImageData setPixelsWithSWT() {
+		imageData.setPixels(0, 0, width * height, frame, 0);
+		return imageData;
+	}
+
+	@Benchmark
+	public ImageData setPixelsWithWriter() {
+		writer.setPixels(frame);
+		return imageData;
+	}
+}
@@ -12,104 +12,31 @@
  *******************************************************************************/
 package org.mihalis.demos.Dancing.light;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class Dancing {
+public class Dancing implements Effect {
 
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
 	private PlanIso plan;
 
-	public Dancing(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		plan = new PlanIso(w, h, 15, 10, 10);
 	}
 
-	public void animate() {
-		if (plan != null) {
-			plan.next();
-		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText("Dancing Shape with a light");
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 640;
-		gdCanvas.heightHint = 480;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, (e) -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			redrawCanvas(e.gc);
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas(GC gc) {
-		final Image image = plan.render();
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		plan.next();
+		plan.render(argb);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Dancing app = new Dancing(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run("Dancing Shape with a light", 640, 480, TIMER_INTERVAL, new Dancing());
 	}
 }
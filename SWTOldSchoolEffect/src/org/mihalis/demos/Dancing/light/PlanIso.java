@@ -12,15 +12,10 @@
  *******************************************************************************/
 package org.mihalis.demos.Dancing.light;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Display;
+import org.mihalis.demos.core.Raster;
 
 public class PlanIso {
 
-	private final Image image;
 	private final int width;
 	private final int height;
 	private int center_x;
@@ -66,8 +61,6 @@ public class PlanIso {
 			}
 		}
 
-		image = new Image(Display.getCurrent(), w, h);
-
 		light = new PointIso(center_x, center_y, 10);
 
 		xc = ph / 2 * dx;
@@ -95,22 +88,8 @@ public class PlanIso {
 		}
 	}
 
-	public Image render() {
-		if (image == null) {
-			return null;
-		}
-
-		GC gc;
-		try {
-			gc = new GC(image);
-		} catch (final IllegalArgumentException iae) {
-			return null;
-		}
-
-		gc.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_WHITE));
-		gc.fillRectangle(0, 0, width, height);
-
-		gc.setForeground(Display.getCurrent().getSystemColor(SWT.COLOR_BLACK));
+	public void render(int[] argb) {
+		Raster.fill(argb, width, height, 0xFFFFFF);
 
 		final int p[] = new int[8];
 
@@ -138,7 +117,7 @@ public class PlanIso {
 				colb = Math.min(255, (int) (colb + (Math.PI - a) * light_b / (dist / dist_attenuation)));
 				colb = Math.max(0, colb);
 
-				final Color color = new Color(Display.getCurrent(), colr, colg, colb);
+				final int color = colr << 16 | colg << 8 | colb;
 
 				p[0] = (int) (points[x][y].getX() - xc);
 				p[2] = (int) (points[x + 1][y].getX() - xc);
@@ -150,12 +129,8 @@ public class PlanIso {
 				p[5] = (int) points[x + 1][y + 1].getY();
 				p[7] = (int) points[x][y + 1].getY();
 
-				gc.setBackground(color);
-				gc.fillPolygon(p);
-				color.dispose();
+				Raster.fillPolygon(argb, width, height, p, color);
 			}
 		}
-		gc.dispose();
-		return image;
 	}
 }
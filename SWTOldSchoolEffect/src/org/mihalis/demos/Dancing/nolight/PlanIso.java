@@ -12,14 +12,9 @@
  *******************************************************************************/
 package org.mihalis.demos.Dancing.nolight;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Display;
+import org.mihalis.demos.core.Raster;
 
 class PlanIso {
-	private final Image image;
 	private final int width;
 	private final int height;
 	private final int cw;
@@ -52,8 +47,6 @@ class PlanIso {
 			}
 		}
 
-		image = new Image(Display.getCurrent(), w, h);
-
 		next();
 	}
 
@@ -70,18 +63,8 @@ class PlanIso {
 		}
 	}
 
-	public Image render() {
-
-		if (image == null) {
-			return null;
-		}
-
-		final GC gc = new GC(image);
-
-		gc.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_WHITE));
-		gc.fillRectangle(0, 0, width, height);
-
-		gc.setForeground(Display.getCurrent().getSystemColor(SWT.COLOR_BLACK));
+	public void render(int[] argb) {
+		Raster.fill(argb, width, height, 0xFFFFFF);
 
 		final int xc = ph / 2 * dx;
 
@@ -89,8 +72,8 @@ class PlanIso {
 
 		for (int x = 0; x < pw - 1; x++) {
 			for (int y = 0; y < ph - 1; y++) {
-				final Color color = new Color(Display.getCurrent(), 255 / ph * y, 255 / ph * y, 255 / ph * y);
-				gc.setBackground(color);
+				final int gray = 255 / ph * y;
+				final int color = gray << 16 | gray << 8 | gray;
 
 				p[0] = (int) (points[x][y].getX() - xc);
 				p[2] = (int) (points[x + 1][y].getX() - xc);
@@ -102,12 +85,8 @@ class PlanIso {
 				p[5] = (int) points[x + 1][y + 1].getY();
 				p[7] = (int) points[x][y + 1].getY();
 
-				gc.fillPolygon(p);
-				color.dispose();
+				Raster.fillPolygon(argb, width, height, p, color);
 			}
 		}
-
-		gc.dispose();
-		return image;
 	}
 }
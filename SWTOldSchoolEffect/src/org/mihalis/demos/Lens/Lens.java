@@ -12,17 +12,18 @@
  *******************************************************************************/
 package org.mihalis.demos.Lens;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Lens {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.DamageEffect;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.TableCache;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Lens implements DamageEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Lens";
@@ -33,157 +34,187 @@ public class Lens {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	//
 	private static final int LENS_WIDTH = 150;
 	private static final int LENS_ZOOM = 40;
-	private ImageData backing;
-	private int[][] lens;
+	private int[] backing;
+	private DisplacementMap lens;
+	private DisplacementEngine engine;
 	private int _x = 16, _y = 16;
 	private int xd = 1, yd = 1;
+	private int lensX, lensY;
 
-	public Lens(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
-		// Load image
-		backing = new ImageData(getClass().getResourceAsStream("tuxblackbg.png"));
+		// Load image, the lens samples it around its own position
+		backing = new int[w * h];
+		Raster.drawBitmap(backing, w, h, Bitmap.load(getClass(), "tuxblackbg.png"), 0, 0);
+		engine = new DisplacementEngine(new Texture(w, h, backing), EdgeMode.CLAMP);
 
-		lens = new int[LENS_WIDTH][LENS_WIDTH];
+		lens = new DisplacementMap(LENS_WIDTH, LENS_WIDTH, getLens());
+	}
 
-		/* generate the lens distortion */
-		final int r = LENS_WIDTH / 2;
-		final int d = LENS_ZOOM;
+	@Override
+	public void prepare(int width, int height) {
+		getLens();
+	}
 
-		/*
-		 * the shift in the following expression is a function of the distance of the
-		 * current point from the center of the sphere. If you imagine:
-		 *
-		 * eye
-		 *
-		 * .-~~~~~~~-. sphere surface .` '. --------------- viewing plane . center of
-		 * sphere
-		 *
-		 * For each point across the viewing plane, draw a line from the point on the
-		 * sphere directly above that point to the center of the sphere. It will
-		 * intersect the viewing plane somewhere closer to the center of the sphere than
-		 * the original point. The shift function below is the end result of the above
-		 * math, given that the height of the point on the sphere can be derived from:
-		 *
-		 * x^2 + y^2 + z^2 = radius^2
-		 *
-		 * x and y are known, z is based on the height of the viewing plane.
-		 *
-		 * The radius of the sphere is the distance from the center of the sphere to the
-		 * edge of the viewing plane, which is a neat little triangle. If d = the
-		 * distance from the center of the sphere to the center of the plane (aka,
-		 * LENS_ZOOM) and r = half the width of the plane (aka, LENS_WIDTH/2) then
-		 * radius^2 = d^2 + r^2.
-		 *
-		 * Things become simpler if we take z=0 to be at the plane's height rather than
-		 * the center of the sphere, turning the z^2 in the expression above to (z+d)^2,
-		 * since the center is now at (0, 0, -d).
-		 *
-		 * So, the resulting function looks like:
-		 *
-		 * x^2 + y^2 + (z+d)^2 = d^2 + r^2
-		 *
-		 * Expand the (z-d)^2:
-		 *
-		 * x^2 + y^2 + z^2 + 2dz + d^2 = d^2 + r^2
-		 *
-		 * Rearrange things to be a quadratic in terms of z:
-		 *
-		 * z^2 + 2dz + x^2 + y^2 - r^2 = 0
-		 *
-		 * Note that x, y, and r are constants, so apply the quadratic formula:
-		 *
-		 * For ax^2 + bx + c = 0,
-		 *
-		 * x = (-b +- sqrt(b^2 - 4ac)) / 2a
-		 *
-		 * We can ignore the negative result, because we want the point at the top of
-		 * the sphere, not at the bottom.
-		 *
-		 * x = (-2d + sqrt(4d^2 - 4 * (x^2 + y^2 - r^2))) / 2
-		 *
-		 * Note that you can take the -4 out of both expressions in the square root to
-		 * put -2 outside, which then cancels out the division:
-		 *
-		 * z = -d + sqrt(d^2 - (x^2 + y^2 - r^2))
-		 *
-		 * This now gives us the height of the point on the sphere directly above the
-		 * equivalent point on the plane. Next we need to find where the line between
-		 * this point and the center of the sphere at (0, 0, -d) intersects the viewing
-		 * plane at (?, ?, 0). This is a matter of the ratio of line below the plane vs
-		 * the total line length, multiplied by the (x,y) coordinates. This ratio can be
-		 * worked out by the height of the line fragment below the plane, which is d,
-		 * and the total height of the line, which is d + z, or the height above the
-		 * plane of the sphere surface plus the height of the plane above the center of
-		 * the sphere.
-		 *
-		 * ratio = d/(d + z)
-		 *
-		 * Subsitute in the formula for z:
-		 *
-		 * ratio = d/(d + -d + sqrt(d^2 - (x^2 + y^2 - r^2))
-		 *
-		 * Simplify to:
-		 *
-		 * ratio = d/sqrt(d^2 - (x^2 + y^2 - r^2))
-		 *
-		 * Since d and r are constant, we now have a formula we can apply for each (x,y)
-		 * point within the sphere to give the (x',y') coordinates of the point we
-		 * should draw to project the image on the plane to the surface of the sphere. I
-		 * subtract the original (x,y) coordinates to give an offset rather than an
-		 * absolute coordinate, then convert that offset to the image dimensions, and
-		 * store the offset in a matrix the size of the intersecting circle. Drawing the
-		 * lens is then a matter of:
-		 *
-		 * screen[coordinate] = image[coordinate + lens[y][x]]
-		 */
+	/**
+	 * @return the coordinates of the pixels seen through the lens, relative to its top left corner and packed as the coordinates of a {@link DisplacementMap}
+	 */
+	private static int[] getLens() {
+		return TableCache.getShared().get("Lens.map", 0, 0, () -> {
+			final int[] lens = new int[LENS_WIDTH * LENS_WIDTH];
+			for (int y = 0; y < LENS_WIDTH; y++) {
+				for (int x = 0; x < LENS_WIDTH; x++) {
+					lens[y * LENS_WIDTH + x] = DisplacementMap.pack(x, y);
+				}
+			}
 
-		/*
-		 * it is sufficient to generate 1/4 of the lens and reflect this around; a
-		 * sphere is mirrored on both the x and y axes
-		 */
-		for (int y = 0; y < LENS_WIDTH >> 1; y++) {
-			for (int x = 0; x < LENS_WIDTH >> 1; x++) {
-				int ix, iy, offset;
-				if (x * x + y * y < r * r) {
-					final float shift = (float) (d / Math.sqrt(d * d - (x * x + y * y - r * r)));
-					ix = (int) (x * shift - x);
-					iy = (int) (y * shift - y);
-				} else {
-					ix = 0;
-					iy = 0;
+			/* generate the lens distortion */
+			final int r = LENS_WIDTH / 2;
+			final int d = LENS_ZOOM;
+
+			/*
+			 * the shift in the following expression is a function of the distance of the
+			 * current point from the center of the sphere. If you imagine:
+			 *
+			 * eye
+			 *
+			 * .-~~~~~~~-. sphere surface .` '. --------------- viewing plane . center of
+			 * sphere
+			 *
+			 * For each point across the viewing plane, draw a line from the point on the
+			 * sphere directly above that point to the center of the sphere. It will
+			 * intersect the viewing plane somewhere closer to the center of the sphere than
+			 * the original point. The shift function below is the end result of the above
+			 * math, given that the height of the point on the sphere can be derived from:
+			 *
+			 * x^2 + y^2 + z^2 = radius^2
+			 *
+			 * x and y are known, z is based on the height of the viewing plane.
+			 *
+			 * The radius of the sphere is the distance from the center of the sphere to the
+			 * edge of the viewing plane, which is a neat little triangle. If d = the
+			 * distance from the center of the sphere to the center of the plane (aka,
+			 * LENS_ZOOM) and r = half the width of the plane (aka, LENS_WIDTH/2) then
+			 * radius^2 = d^2 + r^2.
+			 *
+			 * Things become simpler if we take z=0 to be at the plane's height rather than
+			 * the center of the sphere, turning the z^2 in the expression above to (z+d)^2,
+			 * since the center is now at (0, 0, -d).
+			 *
+			 * So, the resulting function looks like:
+			 *
+			 * x^2 + y^2 + (z+d)^2 = d^2 + r^2
+			 *
+			 * Expand the (z-d)^2:
+			 *
+			 * x^2 + y^2 + z^2 + 2dz + d^2 = d^2 + r^2
+			 *
+			 * Rearrange things to be a quadratic in terms of z:
+			 *
+			 * z^2 + 2dz + x^2 + y^2 - r^2 = 0
+			 *
+			 * Note that x, y, and r are constants, so apply the quadratic formula:
+			 *
+			 * For ax^2 + bx + c = 0,
+			 *
+			 * x = (-b +- sqrt(b^2 - 4ac)) / 2a
+			 *
+			 * We can ignore the negative result, because we want the point at the top of
+			 * the sphere, not at the bottom.
+			 *
+			 * x = (-2d + sqrt(4d^2 - 4 * (x^2 + y^2 - r^2))) / 2
+			 *
+			 * Note that you can take the -4 out of both expressions in the square root to
+			 * put -2 outside, which then cancels out the division:
+			 *
+			 * z = -d + sqrt(d^2 - (x^2 + y^2 - r^2))
+			 *
+			 * This now gives us the height of the point on the sphere directly above the
+			 * equivalent point on the plane. Next we need to find where the line between
+			 * this point and the center of the sphere at (0, 0, -d) intersects the viewing
+			 * plane at (?, ?, 0). This is a matter of the ratio of line below the plane vs
+			 * the total line length, multiplied by the (x,y) coordinates. This ratio can be
+			 * worked out by the height of the line fragment below the plane, which is d,
+			 * and the total height of the line, which is d + z, or the height above the
+			 * plane of the sphere surface plus the height of the plane above the center of
+			 * the sphere.
+			 *
+			 * ratio = d/(d + z)
+			 *
+			 * Subsitute in the formula for z:
+			 *
+			 * ratio = d/(d + -d + sqrt(d^2 - (x^2 + y^2 - r^2))
+			 *
+			 * Simplify to:
+			 *
+			 * ratio = d/sqrt(d^2 - (x^2 + y^2 - r^2))
+			 *
+			 * Since d and r are constant, we now have a formula we can apply for each (x,y)
+			 * point within the sphere to give the (x',y') coordinates of the point we
+			 * should draw to project the image on the plane to the surface of the sphere. I
+			 * subtract the original (x,y) coordinates to give an offset rather than an
+			 * absolute coordinate, then convert that offset to the image dimensions, and
+			 * store the offset in a matrix the size of the intersecting circle. Drawing the
+			 * lens is then a matter of:
+			 *
+			 * screen[coordinate] = image[coordinate + lens[y][x]]
+			 *
+			 * Here the offsets are added to the coordinates of the map, which the
+			 * displacement engine moves with the lens.
+			 */
+
+			/*
+			 * it is sufficient to generate 1/4 of the lens and reflect this around; a
+			 * sphere is mirrored on both the x and y axes
+			 */
+			for (int y = 0; y < LENS_WIDTH >> 1; y++) {
+				for (int x = 0; x < LENS_WIDTH >> 1; x++) {
+					int ix, iy;
+					if (x * x + y * y < r * r) {
+						final float shift = (float) (d / Math.sqrt(d * d - (x * x + y * y - r * r)));
+						ix = (int) (x * shift - x);
+						iy = (int) (y * shift - y);
+					} else {
+						ix = 0;
+						iy = 0;
+					}
+					offset(lens, LENS_WIDTH / 2 - x, LENS_WIDTH / 2 - y, -ix, -iy);
+					offset(lens, LENS_WIDTH / 2 + x, LENS_WIDTH / 2 + y, ix, iy);
+					offset(lens, LENS_WIDTH / 2 - x, LENS_WIDTH / 2 + y, -ix, iy);
+					offset(lens, LENS_WIDTH / 2 + x, LENS_WIDTH / 2 - y, ix, -iy);
 				}
-				offset = iy * w + ix;
-				lens[LENS_WIDTH / 2 - y][LENS_WIDTH / 2 - x] = -offset;
-				lens[LENS_WIDTH / 2 + y][LENS_WIDTH / 2 + x] = offset;
-				offset = -iy * w + ix;
-				lens[LENS_WIDTH / 2 + y][LENS_WIDTH / 2 - x] = -offset;
-				lens[LENS_WIDTH / 2 - y][LENS_WIDTH / 2 + x] = offset;
 			}
-		}
+			return lens;
+		});
+	}
 
-		imageData = new ImageData(w, h, backing.depth, backing.palette);
-		final int[] pixels = new int[w * h];
-		backing.getPixels(0, 0, w * h, pixels, 0);
-		imageData.setPixels(0, 0, w * h, pixels, 0);
+	private static void offset(int[] lens, int x, int y, int ix, int iy) {
+		lens[y * LENS_WIDTH + x] = DisplacementMap.pack(x + ix, y + iy);
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex, boolean full, DirtyRegion damage) {
 		// Animation
 		/* apply the lens */
-		applyLens(_x, _y);
+		if (full) {
+			System.arraycopy(backing, 0, argb, 0, w * h);
+		} else {
+			// Only the squares of the previous and of the new lens change
+			restoreBacking(argb, lensX, lensY);
+			damage.add(lensX, lensY, LENS_WIDTH, LENS_WIDTH);
+			damage.add(_x, _y, LENS_WIDTH, LENS_WIDTH);
+		}
+		applyLens(argb, _x, _y);
+		lensX = _x;
+		lensY = _y;
 
 		/* shift the coordinates around */
 		_x += xd;
@@ -194,94 +225,25 @@ public class Lens {
 		if (_y > h - LENS_WIDTH - 15 || _y < 15) {
 			yd = -yd;
 		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
 	}
 
-	private void applyLens(int ox, int oy) {
-		int x, y, temp, pos;
-
-		for (y = 0; y < LENS_WIDTH; y++) {
-			temp = (y + oy) * w + ox;
-			for (x = 0; x < LENS_WIDTH; x++) {
-				pos = temp + x;
-				final int backPos = pos + lens[y][x];
-				imageData.setPixel(pos % w, pos / w, backing.getPixel(backPos % w, backPos / w));
-			}
+	private void restoreBacking(int[] argb, int ox, int oy) {
+		final int maxX = Math.min(LENS_WIDTH, w - ox);
+		final int maxY = Math.min(LENS_WIDTH, h - oy);
+		for (int y = 0; y < maxY && maxX > 0; y++) {
+			final int offset = (y + oy) * w + ox;
+			System.arraycopy(backing, offset, argb, offset, maxX);
 		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-
+	private void applyLens(int[] argb, int ox, int oy) {
+		// Clip the lens when the frame is too small
+		final int maxX = Math.min(LENS_WIDTH, w - ox);
+		final int maxY = Math.min(LENS_WIDTH, h - oy);
+		engine.render(argb, w, ox, oy, maxX, maxY, lens, 0, 0, ox, oy);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Lens app = new Lens(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Lens());
 	}
 }
@@ -12,22 +12,13 @@
  *******************************************************************************/
 package org.mihalis.demos.SineScroll;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.PaintEvent;
-import org.eclipse.swt.events.PaintListener;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
-
-public class SineScroll {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.ParticleSystem;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class SineScroll implements Effect {
 
 	private short font[];
 	private byte fontLookup[];
@@ -36,10 +27,9 @@ public class SineScroll {
 	private byte scrollText[];
 	private int rasters[];
 	private int sine[];
-	Star[] stars;
+	ParticleSystem stars;
 	boolean haveStars;
 	int bgColor;
-	int scrPix[];
 
 	// Title
 	private static final String SHELL_TITLE = "Sine Scroll";
@@ -47,17 +37,13 @@ public class SineScroll {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
-
-	public SineScroll(final Display display) {
-		this.display = display;
-	}
+	private final FastRandom random = new FastRandom();
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Init
 		if (!initFont()) {
@@ -70,15 +56,14 @@ public class SineScroll {
 		initSine();
 		initStars("0", "250");
 
-		scrPix = new int[w * h];
 		scrollOffset = 0;
 		scrollPos = 0;
 		sinePos = 0;
 
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		// Animation
 		// obtain current scroll offset/text position and sine position,
 		// then advance all of them.
@@ -98,21 +83,22 @@ public class SineScroll {
 		}
 
 		// clear screen by copying background
-		System.arraycopy(background, 0, scrPix, 0, scrPix.length);
+		System.arraycopy(background, 0, argb, 0, w * h);
 
 		// if we have a starfield, draw it
 		if (stars != null) {
-			for (int i = 0; i < stars.length; i++) {
-				final Star s = stars[i];
-				while (s.x >= w) {
-					s.x -= w;
+			final float[] xs = stars.x, ys = stars.y;
+			for (int i = 0; i < stars.getCount(); i++) {
+				while (xs[i] >= w) {
+					xs[i] -= w;
 				}
 				// stars are only drawn over the bgcolor
-				if ((scrPix[s.y * w + s.x] & 0xFFFFFF) == bgColor) {
-					scrPix[s.y * w + s.x] = s.color;
+				final int offset = (int) ys[i] * w + (int) xs[i];
+				if ((argb[offset] & 0xFFFFFF) == bgColor) {
+					argb[offset] = stars.color[i];
 				}
-				s.x += s.dx;
 			}
+			stars.move();
 		}
 
 		// draw a series of 16-pixel high vertical lines
@@ -132,98 +118,19 @@ public class SineScroll {
 
 			for (int y = 0; y < 16; y++) {
 				if ((data & 1 << y) != 0) {
-					scrPix[(y + ypos) * w + x] = rasters[y + ypos];
+					argb[(y + ypos) * w + x] = rasters[y + ypos];
 					// scroll shadow
-					if (y + ypos + 2 < w && x + 2 < w) {
-						scrPix[(y + ypos + 2) * w + x + 2] = 0x000000;
+					if (y + ypos + 2 < h && x + 2 < w) {
+						argb[(y + ypos + 2) * w + x + 2] = 0x000000;
 					}
 				}
 			}
 		}
 
-		imageData.setPixels(0, 0, scrPix.length, scrPix, 0);
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 256;
-		gdCanvas.heightHint = 256;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, new Listener() {
-			@Override
-			public void handleEvent(final Event e) {
-				w = canvas.getClientArea().width;
-				h = canvas.getClientArea().height;
-				init();
-			}
-		});
-
-		canvas.addPaintListener(new PaintListener() {
-
-			@Override
-			public void paintControl(final PaintEvent e) {
-				gc = e.gc;
-				redrawCanvas();
-			}
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image img = new Image(display, imageData);
-		if (img != null) {
-			gc.drawImage(img, 0, 0);
-		}
-		img.dispose();
-
 	}
 
 	public static void main(final String[] args) {
-		final Display display = new Display();
-
-		final SineScroll app = new SineScroll(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, 256, 256, TIMER_INTERVAL, new SineScroll());
 	}
 
 	// loads the classic 16x16 font into font[]
@@ -248,9 +155,8 @@ public class SineScroll {
 
 		// grab a stream of 1x16 slivers, from top to bottom, left to right.
 		// every 16 of these slivers is one font glyph.
-		final String file = getClass().getResource("font_classic_16x16.gif").getFile();
-		final Image img = new Image(Display.getCurrent(), file);
-		final int w = img.getBounds().width;
+		final Bitmap img = Bitmap.load(getClass(), "font_classic_16x16.gif");
+		final int w = img.width;
 
 		int xpos = 0, ypos = 0;
 		font = new short[46 * 16];
@@ -261,7 +167,7 @@ public class SineScroll {
 			}
 			short data = 0;
 			for (int y = 0; y < 16; y++) {
-				final int pixel = img.getImageData().getPixel(xpos, ypos + y);
+				final int pixel = img.getPixel(xpos, ypos + y);
 				if ((pixel & 0xFFFFFF) != 0) {
 					data |= 1 << y;
 				}
@@ -356,15 +262,19 @@ public class SineScroll {
 			try {
 				final int numstars = Integer.parseInt(numstars_t);
 				if (numstars > 0) {
-					stars = new Star[numstars];
+					stars = new ParticleSystem(numstars);
 				}
 			} catch (final Exception e) {
 			}
 		}
 
 		if (stars != null) {
-			for (int i = 0; i < stars.length; i++) {
-				stars[i] = new Star(w, h);
+			for (int n = 0; n < stars.getCapacity(); n++) {
+				final int i = stars.spawn();
+				stars.x[i] = random.nextInt(w);
+				stars.y[i] = random.nextInt(h);
+				stars.vx[i] = random.nextInt(4) + 1;
+				stars.color[i] = (random.nextInt(11) + 4) * 0x111111;
 			}
 		}
 	}
@@ -11,20 +11,15 @@
  *******************************************************************************/
 package org.mihalis.demos.SpecialImage;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DamageEffect;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.swt.EffectWindow;
 
 /**
  *
  */
-public class SpecialImageLoader {
+public class SpecialImageLoader implements DamageEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "SpecialImageLoader";
@@ -36,119 +31,51 @@ public class SpecialImageLoader {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	//
-	private ImageData image;
+	private Bitmap image;
+	private int[] screen;
 	int currentLine;
 
-	public SpecialImageLoader(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		currentLine = h - 1;
 
 		// Load image
-		image = new ImageData(getClass().getResourceAsStream("tuxblackbg.png"));
+		image = Bitmap.load(getClass(), "tuxblackbg.png");
 
-		imageData = new ImageData(w, h, image.depth, image.palette);
+		screen = new int[w * h];
 	}
 
-	public void animate() {
-		if (currentLine < 0) {
-			return;
-		}
-
-		for (int x = 0; x < w; x++) {
-			final int color = image.getPixel(x, currentLine);
-			for (int y = currentLine; y >= 0; y--) {
-				imageData.setPixel(x, y, color);
+	@Override
+	public void renderFrame(int[] argb, long frameIndex, boolean full, DirtyRegion damage) {
+		if (currentLine >= 0) {
+			for (int x = 0; x < w; x++) {
+				final int color = x < image.width && currentLine < image.height ? image.getPixel(x, currentLine) : 0;
+				for (int y = currentLine; y >= 0; y--) {
+					screen[y * w + x] = color;
+				}
 			}
 
-		}
+			// The rows above the current line have changed, once the image is loaded nothing changes anymore
+			if (!full) {
+				System.arraycopy(screen, 0, argb, 0, (currentLine + 1) * w);
+				damage.add(0, 0, w, currentLine + 1);
+			}
 
-		// Animation
-		currentLine--;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
+			// Animation
+			currentLine--;
 		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
 
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+		if (full) {
+			System.arraycopy(screen, 0, argb, 0, w * h);
 		}
-		image.dispose();
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final SpecialImageLoader app = new SpecialImageLoader(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new SpecialImageLoader());
 	}
 }
@@ -12,20 +12,12 @@
  *******************************************************************************/
 package org.mihalis.demos.blob;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Blob {
+import org.mihalis.demos.core.DamageEffect;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Blob implements DamageEffect {
 
 	private static final String SHELL_TITLE = "Blob";
 
@@ -35,30 +27,31 @@ public class Blob {
 
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
-	private ImageData imageData;
 
 	private static final int BLOB_RADIUS = 44;
 	private static final int BLOB_DRADIUS = BLOB_RADIUS * 2;
 	private static final int BLOB_SRADIUS = BLOB_RADIUS * BLOB_RADIUS;
 	private static final int NUMBER_OF_BLOBS = 20;
 	private int[][] blob;
-	private Point[] blobs;
-
-	public Blob(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	private int[] blobsX, blobsY;
+	private int[] palette;
+	private int[] density;
+	private final FastRandom random = new FastRandom();
+
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		blob = new int[BLOB_DRADIUS][BLOB_DRADIUS];
-		blobs = new Point[NUMBER_OF_BLOBS];
+		blobsX = new int[NUMBER_OF_BLOBS];
+		blobsY = new int[NUMBER_OF_BLOBS];
+		density = new int[w * h];
 
 		/* create a suitable palette, this is crucial for a good effect */
-		final RGB[] colors = new RGB[256];
+		palette = new int[256];
 		for (int i = 0; i < 256; ++i) {
-			colors[i] = new RGB(i, i, i);
+			palette[i] = i << 16 | i << 8 | i;
 		}
 
 		/* create blob */
@@ -76,24 +69,24 @@ public class Blob {
 		}
 
 		for (int i = 0; i < NUMBER_OF_BLOBS; i++) {
-			blobs[i] = new Point((w >> 1) - BLOB_RADIUS, (h >> 1) - BLOB_RADIUS);
+			blobsX[i] = (w >> 1) - BLOB_RADIUS;
+			blobsY[i] = (h >> 1) - BLOB_RADIUS;
 		}
-
-		imageData = new ImageData(w, h, 8, new PaletteData(colors));
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex, boolean full, DirtyRegion damage) {
 
 		/* move and draw blobs to screen */
 
 		for (int i = 0; i < NUMBER_OF_BLOBS; i++) {
-			blobs[i].x += -2 + (int) (5.0 * Math.random());
-			blobs[i].y += -2 + (int) (5.0 * Math.random());
+			blobsX[i] += random.nextInt(-2, 3);
+			blobsY[i] += random.nextInt(-2, 3);
 		}
 
 		for (int k = 0; k < NUMBER_OF_BLOBS; ++k) {
-			if (blobs[k].x > 0 && blobs[k].x < w - BLOB_DRADIUS && blobs[k].y > 0 && blobs[k].y < h - BLOB_DRADIUS) {
-				int start = blobs[k].x + blobs[k].y * w;
+			if (blobsX[k] > 0 && blobsX[k] < w - BLOB_DRADIUS && blobsY[k] > 0 && blobsY[k] < h - BLOB_DRADIUS) {
+				int start = blobsX[k] + blobsY[k] * w;
 				for (int i = 0; i < BLOB_DRADIUS; ++i) {
 					for (int j = 0; j < BLOB_DRADIUS; ++j) {
 						if (getPixel(start + j) + blob[i][j] > 255) {
@@ -104,88 +97,43 @@ public class Blob {
 					}
 					start += w;
 				}
+				if (!full) {
+					damage.add(blobsX[k], blobsY[k], BLOB_DRADIUS, BLOB_DRADIUS);
+				}
 			} else {
-				blobs[k].x = (w >> 1) - BLOB_RADIUS;
-				blobs[k].y = (h >> 1) - BLOB_RADIUS;
+				blobsX[k] = (w >> 1) - BLOB_RADIUS;
+				blobsY[k] = (h >> 1) - BLOB_RADIUS;
 			}
 		}
-		if (!canvas.isDisposed())
-		canvas.redraw();
-	}
 
-	private void setPixel(int i, int value) {
-		imageData.setPixel(i % w, i / w, value);
-	}
+		if (full) {
+			for (int i = 0; i < w * h; i++) {
+				argb[i] = palette[density[i]];
+			}
+			return;
+		}
 
-	private int getPixel(int i) {
-		return imageData.getPixel(i % w, i / w);
+		// Only the footprints of the blobs have changed
+		for (int r = 0; r < damage.getCount(); r++) {
+			final int x0 = damage.getX(r), width = damage.getWidth(r);
+			for (int y = damage.getY(r); y < damage.getY(r) + damage.getHeight(r); y++) {
+				final int offset = y * w + x0;
+				for (int i = offset; i < offset + width; i++) {
+					argb[i] = palette[density[i]];
+				}
+			}
+		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_BACKGROUND);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addListener(SWT.Paint, e -> {
-			redrawCanvas(e.gc);
-		});
-
-		return shell;
+	private void setPixel(int i, int value) {
+		density[i] = value;
 	}
 
-	private void redrawCanvas(GC gc) {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
+	private int getPixel(int i) {
+		return density[i];
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Blob app = new Blob(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Blob());
 	}
 }
@@ -12,21 +12,13 @@
  *******************************************************************************/
 package org.mihalis.demos.bump;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
-
-public class Bump {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Bump implements Effect {
 
 	private static final String SHELL_TITLE = "Bump";
 
@@ -36,22 +28,19 @@ public class Bump {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 1;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
-	private ImageData imageData;
 
 	//
-	private ImageData image;
+	private Bitmap image;
+	private int[] palette;
 	private int[] nEnvMap;
 	private float fTime;
 	private int lX, lY;
 
-	public Bump(final Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Create environment map
 		nEnvMap = new int[256 * 256];
@@ -62,35 +51,36 @@ public class Bump {
 		}
 
 		// Create Palette
-		final RGB[] colors = new RGB[256];
-		for (int i = 0; i < 64; i++) {
-			colors[i] = new RGB(0, 0, 0);
-		}
+		palette = new int[256];
 		for (int i = 64; i < 128; i++) {
-			colors[i] = new RGB(0, 0, (i - 64) * 4);
+			palette[i] = (i - 64) * 4;
 		}
 		for (int i = 128; i < 256; i++) {
-			colors[i] = new RGB((i - 128) * 2, (i - 128) * 2, 255);
+			palette[i] = (i - 128) * 2 << 16 | (i - 128) * 2 << 8 | 255;
 		}
 
 		// Load image
-		image = new ImageData(getClass().getResourceAsStream("bump.png"));
+		image = Bitmap.load(getClass(), "bump.png");
 
 		// Init
 		fTime = 0.0f;
-		lX = (int) (CANVAS_WIDTH / 2 + 80 * Math.cos(fTime += .1));
-		lY = (int) (CANVAS_HEIGHT / 2 + 80 * Math.sin(fTime));
-
-		imageData = new ImageData(w, h, 8, new PaletteData(colors));
+		lX = (int) (w / 2 + 80 * Math.cos(fTime += .1));
+		lY = (int) (h / 2 + 80 * Math.sin(fTime));
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+
+		// The borders and what is outside of the bump map stay black
+		Arrays.fill(argb, 0, w * h, palette[0]);
 
-		for (int y = 1; y < CANVAS_HEIGHT - 1; y++) {
-			for (int x = 1; x < CANVAS_WIDTH - 1; x++) {
+		final int maxX = Math.min(w, image.width) - 1;
+		final int maxY = Math.min(h, image.height) - 1;
+		for (int y = 1; y < maxY; y++) {
+			for (int x = 1; x < maxX; x++) {
 				// Pixel orientation
-				int dX = (image.getPixel(x + 1, y) >> 16) - (image.getPixel(x - 1, y) >> 16);
-				int dY = (image.getPixel(x, y + 1) >> 16) - (image.getPixel(x, y - 1) >> 16);
+				int dX = (image.getPixel(x + 1, y) >> 16 & 0xFF) - (image.getPixel(x - 1, y) >> 16 & 0xFF);
+				int dY = (image.getPixel(x, y + 1) >> 16 & 0xFF) - (image.getPixel(x, y - 1) >> 16 & 0xFF);
 
 				// Retrieve the illumation level
 				dX = dX - (lX - x);
@@ -105,88 +95,16 @@ public class Bump {
 				dY += 128;
 
 				// Put pixel
-				imageData.setPixel(x, y, nEnvMap[dX + 256 * dY]);
+				argb[y * w + x] = palette[nEnvMap[dX + 256 * dY]];
 			}
 		}
 
-		lX = (int) (CANVAS_WIDTH / 2 + 80 * Math.cos(fTime += .1));
-		lY = (int) (CANVAS_HEIGHT / 2 + 80 * Math.sin(fTime));
+		lX = (int) (w / 2 + 80 * Math.cos(fTime += .1));
+		lY = (int) (h / 2 + 80 * Math.sin(fTime));
 
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, new Listener() {
-			@Override
-			public void handleEvent(final Event e) {
-				w = canvas.getClientArea().width;
-				h = canvas.getClientArea().height;
-				init();
-				canvas.removeListener(SWT.Resize, this);
-			}
-		});
-
-		canvas.addPaintListener(e -> {
-			redrawCanvas(e.gc);
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas(GC gc) {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-	}
-
-	public static void main(final String[] args) {
-		final Display display = new Display();
-
-		final Bump app = new Bump(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+	public static void main(String[] args) {
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Bump());
 	}
 }
@@ -12,24 +12,17 @@
  *******************************************************************************/
 package org.mihalis.demos.burningsea;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.swt.EffectWindow;
 
 /**
  * Original from Josh83
  */
-public class BurningSea {
+public class BurningSea implements IndexedEffect {
 
 	// Title
 	private static final String TITLE = "BurningSea";
@@ -41,10 +34,13 @@ public class BurningSea {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
-	private ImageData imageData;
+
+	// Color indexes of the sea, at least as big as the area used by the effect
+	private int bw, bh;
+	private int[] buffer;
+	private int[] palette;
+	private byte[] indices;
 
 	//
 	int[] sinp;
@@ -54,23 +50,20 @@ public class BurningSea {
 	short t;
 	int fall;
 	int r1;
+	private final FastRandom random = new FastRandom();
 	static final int YSCROLL = 10;
+	// The waves advance by 0.01 radian per unit of t, that is 1024 / (2 * PI) * 0.01 entries of sinp, in 22.10 fixed point
+	static final int SINP_STEP = 1669;
 
-	public BurningSea(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
-		sinp = new int[628];
-		for (int i = 0; i < 628; i++) {
-			sinp[i] = (int) (Math.sin(i * 0.01) * 128);
-		}
+		sinp = FixedMath.sinTable(1024, 128);
 
 		ran1 = new int[10000];
-		for (int i = 0; i < 10000; i++) {
-			ran1[i] = (int) (Math.random() * 3);
-		}
+		random.nextInts(ran1, 0, ran1.length, 0, 3);
 
 		// Palette
 		final RGB[] colors = new RGB[256];
@@ -108,12 +101,20 @@ public class BurningSea {
 		yfall = new int[10];
 		sfall = new int[10];
 		for (int x = 0; x < 10; x++) {
-			xfall[x] = (int) (Math.random() * 300);
-			yfall[x] = (int) (Math.random() * 50);
-			sfall[x] = (int) (Math.random() * 4) + 1;
+			xfall[x] = random.nextInt(300);
+			yfall[x] = random.nextInt(50);
+			sfall[x] = random.nextInt(4) + 1;
+		}
+
+		palette = new int[256];
+		for (int i = 0; i < 256; i++) {
+			palette[i] = colors[i].red << 16 | colors[i].green << 8 | colors[i].blue;
 		}
 
-		imageData = new ImageData(w, h, 8, new PaletteData(colors));
+		bw = Math.max(w, 310);
+		bh = Math.max(h, 133);
+		buffer = new int[bw * bh];
+		indices = new byte[w * h];
 
 		ti = 0;
 		t = 0;
@@ -121,8 +122,19 @@ public class BurningSea {
 		r1 = 0;
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		renderIndices(indices, frameIndex);
+		PixelOps.get().expand(palette, indices, argb, 0, w * h);
+	}
+
+	@Override
+	public int[] getPalette() {
+		return palette;
+	}
 
+	@Override
+	public void renderIndices(byte[] indices, long frameIndex) {
 		ti++;
 		t += 8;
 		if (t > 60000) {
@@ -134,136 +146,79 @@ public class BurningSea {
 			fall = 0;
 		}
 
-		for (int x = 0; x < w; x++) {
-			for (int y = 130; y < 133; y++) {
-				imageData.setPixel(x, y, (int) (Math.random() * 100 + 80));
-			}
-		}
+		// Rows 130 to 132 are contiguous in the buffer
+		random.nextInts(buffer, 130 * bw, 3 * bw, 80, 180);
 
 		for (int i = 0; i < 10; i++) {
 			yfall[i] += sfall[i];
 			if (yfall[i] > 125) {
-				xfall[i] = (int) (Math.random() * 300);
+				xfall[i] = random.nextInt(300);
 				yfall[i] = 1;
-				sfall[i] = (int) (Math.random() * 4 + 1);
+				sfall[i] = random.nextInt(4) + 1;
 			}
 
 			for (int x = 0; x < sfall[i] + 2; x++) {
 				for (int y = 0; y < sfall[i] + 2; y++) {
-					imageData.setPixel(x + xfall[i], y + yfall[i], (int) (Math.random() * 50 + (sfall[i] << 5)));
+					setPixel(x + xfall[i], y + yfall[i], random.nextInt(50) + (sfall[i] << 5));
 				}
 			}
 		}
 
-		for (int ab = w - 2; ab > 0; ab--) {
+		for (int ab = bw - 2; ab > 0; ab--) {
 			for (int bb = 131; bb > 0; bb--) {
 				if (bb < YSCROLL - 1 || bb > YSCROLL + 12) {
-					if (imageData.getPixel(ab, bb + 1) > 0 || imageData.getPixel(ab, bb) > 0) {
+					if (getPixel(ab, bb + 1) > 0 || getPixel(ab, bb) > 0) {
 						r1++;
 						if (r1 > 9000) {
 							r1 = 0;
 						}
-						int cblur = imageData.getPixel(ab - 1, bb + 1) + imageData.getPixel(ab + 1, bb + 1) + ran1[r1] * imageData.getPixel(ab, bb + 1) + imageData.getPixel(ab, bb) >> 2;
+						int cblur = getPixel(ab - 1, bb + 1) + getPixel(ab + 1, bb + 1) + ran1[r1] * getPixel(ab, bb + 1) + getPixel(ab, bb) >> 2;
 						if (cblur > 190) {
 							cblur = 190;
 						}
-						imageData.setPixel(ab, bb, cblur);
+						setPixel(ab, bb, cblur);
 					}
 				}
-				if (imageData.getPixel(ab, bb) > 0) {
-					imageData.setPixel(ab, bb, imageData.getPixel(ab, bb) - 1);
+				if (getPixel(ab, bb) > 0) {
+					setPixel(ab, bb, getPixel(ab, bb) - 1);
 				}
 
-				final int abnew = ab + (sinp[(t + bb * 20) % 628] * (bb - 110 >> 2) >> 7);
+				final int abnew = ab + (sinp[(t + bb * 20) * SINP_STEP >> 10 & 1023] * (bb - 110 >> 2) >> 7);
 				final int bbnew = 265 - bb;
 
-				if (abnew > 0 && abnew < w) {
-					if (bbnew > 0 && bbnew < h) {
-						imageData.setPixel(ab, bbnew, imageData.getPixel(abnew, bb) >> 1);
+				if (abnew > 0 && abnew < bw) {
+					if (bbnew > 0 && bbnew < bh) {
+						setPixel(ab, bbnew, getPixel(abnew, bb) >> 1);
 					}
 				}
 			}
 		}
 
-		for (int x = 0; x < w; x++) {
+		for (int x = 0; x < bw; x++) {
 			for (int y = 0; y < 30; y++) {
-				imageData.setPixel(x, y, 0);
+				setPixel(x, y, 0);
 			}
 		}
 
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, new Listener() {
-			@Override
-			public void handleEvent(Event e) {
-				w = canvas.getClientArea().width;
-				h = canvas.getClientArea().height;
-				init();
+		for (int y = 0; y < h; y++) {
+			int src = y * bw;
+			int dst = y * w;
+			for (int x = 0; x < w; x++) {
+				indices[dst++] = (byte) buffer[src++];
 			}
-		});
-
-		canvas.addListener(SWT.Paint, e -> redrawCanvas(e.gc));
+		}
 
-		return shell;
 	}
 
-	private void redrawCanvas(GC gc) {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
+	private int getPixel(int x, int y) {
+		return buffer[y * bw + x];
+	}
 
+	private void setPixel(int x, int y, int colorIndex) {
+		buffer[y * bw + x] = colorIndex;
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final BurningSea app = new BurningSea(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new BurningSea());
 	}
 }
@@ -12,23 +12,14 @@
  *******************************************************************************/
 package org.mihalis.demos.copper;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.PaintEvent;
-import org.eclipse.swt.events.PaintListener;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Rectangle;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class Coppers {
+public class Coppers implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "Coppers";
@@ -40,12 +31,11 @@ public class Coppers {
 	private static final int CANVAS_WIDTH = 480;
 	private static final int CANVAS_HEIGHT = 360;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
-	private Image image;
 
-	//
+	// A power of two of entries per turn, indexed with a mask
+	private static final int SINE_SIZE = 512;
+	private static final int SINE_MASK = SINE_SIZE - 1;
 	private int[] aSin;
 	private int red, red3, red5, red7;
 	private int white, white3, white5, white7;
@@ -54,19 +44,18 @@ public class Coppers {
 
 	private RGB[] colors;
 
-	public Coppers(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		final int centery = h >> 1;
 
 		/* create sin lookup table */
-		aSin = new int[360];
-		for (int i = 0; i < 360; i++) {
-			final float rad = i * 0.0174532f;
-			aSin[i] = (int) (centery + Math.sin(rad) * 100.0);
+		final int[] sine = FixedMath.sinTable(SINE_SIZE, 100);
+		aSin = new int[SINE_SIZE];
+		for (int i = 0; i < SINE_SIZE; i++) {
+			aSin[i] = centery + sine[i];
 		}
 
 		// Init palette
@@ -174,177 +163,86 @@ public class Coppers {
 		blue7 = 8;
 
 		drect = new Rectangle(0, 0, w, 1);
-
-		// Init image
-		image = new Image(display, w, h);
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		// Clear screen
-		final GC GCTemp = new GC(image);
-		GCTemp.setBackground(display.getSystemColor(SWT.COLOR_BLACK));
-		GCTemp.fillRectangle(0, 0, w, h);
+		Raster.fill(argb, w, h, 0x000000);
 
 		/* draw copperbars back to front */
 
 		drect.y = aSin[blue7];
-		blue7 += 2;
-		blue7 %= 360;
+		blue7 = blue7 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 31);
+		drawCopper(argb, 31);
 
 		drect.y = aSin[blue5];
-		blue5 += 2;
-		blue5 %= 360;
+		blue5 = blue5 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 31);
+		drawCopper(argb, 31);
 
 		drect.y = aSin[blue3];
-		blue3 += 2;
-		blue3 %= 360;
+		blue3 = blue3 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 31);
+		drawCopper(argb, 31);
 
 		drect.y = aSin[blue];
-		blue += 2;
-		blue %= 360;
+		blue = blue + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 31);
+		drawCopper(argb, 31);
 
 		drect.y = aSin[white7];
-		white7 += 2;
-		white7 %= 360;
+		white7 = white7 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 16);
+		drawCopper(argb, 16);
 
 		drect.y = aSin[white5];
-		white5 += 2;
-		white5 %= 360;
+		white5 = white5 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 16);
+		drawCopper(argb, 16);
 
 		drect.y = aSin[white3];
-		white3 += 2;
-		white3 %= 360;
+		white3 = white3 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 16);
+		drawCopper(argb, 16);
 
 		drect.y = aSin[white];
-		white += 2;
-		white %= 360;
+		white = white + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 16);
+		drawCopper(argb, 16);
 
 		drect.y = aSin[red7];
-		red7 += 2;
-		red7 %= 360;
+		red7 = red7 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 1);
+		drawCopper(argb, 1);
 
 		drect.y = aSin[red5];
-		red5 += 2;
-		red5 %= 360;
+		red5 = red5 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 1);
+		drawCopper(argb, 1);
 
 		drect.y = aSin[red3];
-		red3 += 2;
-		red3 %= 360;
+		red3 = red3 + 2 & SINE_MASK;
 
-		drawCopper(GCTemp, 1);
+		drawCopper(argb, 1);
 
 		drect.y = aSin[red];
-		red += 2;
-		red %= 360;
-
-		drawCopper(GCTemp, 1);
+		red = red + 2 & SINE_MASK;
 
-		GCTemp.dispose();
-
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		drawCopper(argb, 1);
 	}
 
-	private void drawCopper(GC gc, int add) {
+	private void drawCopper(int[] argb, int add) {
 
 		for (int i = 0; i < 15; i++) {
-			final Color color = new Color(display, colors[i + add]);
-			gc.setBackground(color);
-			gc.fillRectangle(drect);
+			final RGB color = colors[i + add];
+			Raster.fillRect(argb, w, h, drect.x, drect.y, drect.width, drect.height, color.red << 16 | color.green << 8 | color.blue);
 			drect.y++;
-			color.dispose();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, new Listener() {
-			@Override
-			public void handleEvent(Event e) {
-				w = canvas.getClientArea().width;
-				h = canvas.getClientArea().height;
-				init();
-			}
-		});
-
-		canvas.addPaintListener(new PaintListener() {
-
-			@Override
-			public void paintControl(PaintEvent e) {
-				redrawCanvas(e.gc);
-			}
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas(GC gc) {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
 		}
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Coppers app = new Coppers(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Coppers());
 	}
 }
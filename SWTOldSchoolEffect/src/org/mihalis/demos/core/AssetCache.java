@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.ImageData;
+
+/**
+ * Decodes image resources once and keeps them in memory, so that initialising an effect again (on every resize) or several effects sharing an image do not decode it again.
+ * <p>
+ * Decoded images are keyed by the digest of their file, so identical files stored in several packages are only decoded once. The cache is bounded by the memory of the decoded pixels: when it is full, the least recently used images are
+ * evicted. Its capacity can be set in megabytes with the system property <code>demos.assets.capacity</code>.
+ * <p>
+ * The returned bitmaps are shared: they must never be modified.
+ */
+public class AssetCache {
+
+	/**
+	 * Default capacity, in bytes
+	 */
+	public static final long DEFAULT_CAPACITY = 64L << 20;
+
+	private static final AssetCache SHARED = new AssetCache(Long.getLong("demos.assets.capacity", DEFAULT_CAPACITY >> 20) << 20);
+
+	private final long capacity;
+
+	// Resource path to the key of its decoded content
+	private final Map<String, String> keys = new HashMap<>();
+
+	// Decoded content, from the least to the most recently used
+	private final LinkedHashMap<String, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long size;
+	private long hits, misses, evictions;
+
+	/**
+	 * @param capacity the maximum memory of the decoded images, in bytes
+	 */
+	public AssetCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the cache shared by all the effects
+	 */
+	public static AssetCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Get an image stored next to a class, decoded as ARGB pixels
+	 *
+	 * @param owner the class used to locate the resource
+	 * @param name the name of the resource, relative to the package of the owner
+	 */
+	public Bitmap getBitmap(Class<?> owner, String name) {
+		return (Bitmap) get(owner, name, "argb");
+	}
+
+	/**
+	 * Get an image stored next to a class, decoded as palette indices
+	 *
+	 * @param owner the class used to locate the resource
+	 * @param name the name of the resource, relative to the package of the owner
+	 */
+	public IndexedBitmap getIndexedBitmap(Class<?> owner, String name) {
+		return (IndexedBitmap) get(owner, name, "indexed");
+	}
+
+	private synchronized Object get(Class<?> owner, String name, String format) {
+		final String path = format + ":" + resourcePath(owner, name);
+		String key = keys.get(path);
+		Object value = key == null ? null : entries.get(key);
+		if (value != null) {
+			hits++;
+			return value;
+		}
+
+		final byte[] content = read(owner, name);
+		key = format + ":" + digest(content);
+		keys.put(path, key);
+		value = entries.get(key);
+		if (value != null) {
+			// Same content as another resource
+			hits++;
+			return value;
+		}
+
+		misses++;
+		final ImageData data = new ImageData(new ByteArrayInputStream(content));
+		value = "indexed".equals(format) ? IndexedBitmap.fromImageData(data) : Bitmap.fromImageData(data);
+		entries.put(key, value);
+		size += sizeOf(value);
+		evict(key);
+		return value;
+	}
+
+	private void evict(String keep) {
+		final Iterator<Map.Entry<String, Object>> iterator = entries.entrySet().iterator();
+		while (size > capacity && iterator.hasNext()) {
+			final Map.Entry<String, Object> entry = iterator.next();
+			if (entry.getKey().equals(keep)) {
+				continue;
+			}
+			size -= sizeOf(entry.getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	private static long sizeOf(Object value) {
+		if (value instanceof Bitmap) {
+			return 4L * ((Bitmap) value).pixels.length;
+		}
+		return ((IndexedBitmap) value).indices.length;
+	}
+
+	private static String resourcePath(Class<?> owner, String name) {
+		if (name.startsWith("/")) {
+			return name.substring(1);
+		}
+		final String className = owner.getName();
+		final int dot = className.lastIndexOf('.');
+		return dot < 0 ? name : className.substring(0, dot).replace('.', '/') + "/" + name;
+	}
+
+	private static byte[] read(Class<?> owner, String name) {
+		try (InputStream in = owner.getResourceAsStream(name)) {
+			if (in == null) {
+				throw new IllegalArgumentException("Resource not found: " + name);
+			}
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} catch (final IOException e) {
+			throw new IllegalArgumentException("Unable to read the resource " + name, e);
+		}
+	}
+
+	private static String digest(byte[] content) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-1").digest(content);
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			// Every JVM supports SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Forget every decoded image
+	 */
+	public synchronized void clear() {
+		keys.clear();
+		entries.clear();
+		size = 0;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the memory used by the decoded images, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d images, %d KB of %d KB, %d hits, %d misses, %d evictions", entries.size(), size >> 10, capacity >> 10, hits, misses, evictions);
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * A decoded image stored as a flat, row-major array of 0xAARRGGBB pixels, whatever the depth and the palette of the original file. Opaque pixels have an alpha of 255.
+ * <p>
+ * Decoding only relies on {@link ImageData}, so no display is needed.
+ */
+public class Bitmap {
+
+	public final int width;
+	public final int height;
+	public final int[] pixels;
+
+	public Bitmap(int width, int height) {
+		this(width, height, new int[width * height]);
+	}
+
+	public Bitmap(int width, int height, int[] pixels) {
+		if (pixels.length < width * height) {
+			throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+
+	public int getPixel(int x, int y) {
+		return pixels[y * width + x];
+	}
+
+	/**
+	 * Load an image stored next to a class, through the shared {@link AssetCache}: the image is only decoded once. The returned bitmap is shared and must not be modified.
+	 *
+	 * @param owner the class used to locate the resource
+	 * @param name the name of the resource, relative to the package of the owner
+	 * @return the decoded bitmap
+	 */
+	public static Bitmap load(Class<?> owner, String name) {
+		return AssetCache.getShared().getBitmap(owner, name);
+	}
+
+	/**
+	 * Convert an image data of any depth into a bitmap.
+	 *
+	 * @param data the image data
+	 * @return the converted bitmap
+	 */
+	public static Bitmap fromImageData(ImageData data) {
+		final int w = data.width;
+		final int h = data.height;
+		final int[] pixels = new int[w * h];
+		final int[] row = new int[w];
+		final byte[] alphas = data.alphaData == null ? null : new byte[w];
+		final PaletteData palette = data.palette;
+
+		int[] lookup = null;
+		if (!palette.isDirect) {
+			final RGB[] colors = palette.getRGBs();
+			lookup = new int[1 << Math.min(data.depth, 8)];
+			for (int i = 0; i < lookup.length && i < colors.length; i++) {
+				lookup[i] = colors[i].red << 16 | colors[i].green << 8 | colors[i].blue;
+			}
+		}
+
+		int index = 0;
+		for (int y = 0; y < h; y++) {
+			data.getPixels(0, y, w, row, 0);
+			if (alphas != null) {
+				data.getAlphas(0, y, w, alphas, 0);
+			}
+			for (int x = 0; x < w; x++) {
+				final int pixel = row[x];
+				final int rgb;
+				if (lookup != null) {
+					rgb = lookup[pixel];
+				} else {
+					rgb = channel(pixel, palette.redMask, palette.redShift) << 16 | channel(pixel, palette.greenMask, palette.greenShift) << 8 | channel(pixel, palette.blueMask, palette.blueShift);
+				}
+
+				int alpha = 0xFF;
+				if (alphas != null) {
+					alpha = alphas[x] & 0xFF;
+				} else if (pixel == data.transparentPixel) {
+					alpha = 0;
+				}
+				pixels[index++] = alpha << 24 | rgb;
+			}
+		}
+		return new Bitmap(w, h, pixels);
+	}
+
+	private static int channel(int pixel, int mask, int shift) {
+		final int value = pixel & mask;
+		return shift < 0 ? value >>> -shift : value << shift;
+	}
+}
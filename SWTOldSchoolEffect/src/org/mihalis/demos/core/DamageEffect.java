@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * An effect that only changes some regions of its frames from one frame to the next. It can render its frames incrementally: when the frame already holds the previous frame of the effect, only the changed regions are written and
+ * reported, and the hosts only convert and upload these regions.
+ */
+public interface DamageEffect extends Effect {
+
+	/**
+	 * Advance the animation by one frame and render it.
+	 *
+	 * @param argb the destination, width * height pixels
+	 * @param frameIndex the number of frames rendered before this one
+	 * @param full <code>true</code> if the content of argb is undefined and every pixel must be written, <code>false</code> if it holds the previous frame rendered by this effect
+	 * @param damage empty on entry, receives the regions that differ from the previous frame. It is <code>null</code> when full is <code>true</code>.
+	 */
+	void renderFrame(int[] argb, long frameIndex, boolean full, DirtyRegion damage);
+
+	/**
+	 * Render a whole frame
+	 */
+	@Override
+	default void renderFrame(int[] argb, long frameIndex) {
+		renderFrame(argb, frameIndex, true, null);
+	}
+}
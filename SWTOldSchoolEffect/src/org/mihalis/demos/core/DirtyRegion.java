@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * The regions of a frame that have changed, as a few rectangles. Overlapping or touching rectangles are merged, and when there are too many rectangles the two closest ones are merged into their bounding box, so a region is always
+ * cheap to store and to walk, at the cost of a few pixels that have not really changed.
+ */
+public final class DirtyRegion {
+
+	/**
+	 * Maximum number of rectangles of a region
+	 */
+	public static final int MAX_RECTANGLES = 8;
+
+	// Bounds of the rectangles, right and bottom excluded
+	private final int[] left = new int[MAX_RECTANGLES + 1];
+	private final int[] top = new int[MAX_RECTANGLES + 1];
+	private final int[] right = new int[MAX_RECTANGLES + 1];
+	private final int[] bottom = new int[MAX_RECTANGLES + 1];
+	private int count;
+
+	/**
+	 * Remove all the rectangles
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Add a rectangle. Empty rectangles are ignored.
+	 */
+	public void add(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		int l = x, t = y, r = x + width, b = y + height;
+
+		// Absorb every rectangle that overlaps or touches the new one
+		boolean merged;
+		do {
+			merged = false;
+			for (int i = 0; i < count; i++) {
+				if (left[i] <= r && l <= right[i] && top[i] <= b && t <= bottom[i]) {
+					l = Math.min(l, left[i]);
+					t = Math.min(t, top[i]);
+					r = Math.max(r, right[i]);
+					b = Math.max(b, bottom[i]);
+					remove(i);
+					merged = true;
+					break;
+				}
+			}
+		} while (merged);
+
+		left[count] = l;
+		top[count] = t;
+		right[count] = r;
+		bottom[count] = b;
+		count++;
+		if (count > MAX_RECTANGLES) {
+			mergeClosest();
+		}
+	}
+
+	/**
+	 * Add all the rectangles of another region
+	 */
+	public void add(DirtyRegion other) {
+		for (int i = 0; i < other.count; i++) {
+			add(other.left[i], other.top[i], other.right[i] - other.left[i], other.bottom[i] - other.top[i]);
+		}
+	}
+
+	/**
+	 * Replace the rectangles by the ones of another region
+	 */
+	public void set(DirtyRegion other) {
+		System.arraycopy(other.left, 0, left, 0, other.count);
+		System.arraycopy(other.top, 0, top, 0, other.count);
+		System.arraycopy(other.right, 0, right, 0, other.count);
+		System.arraycopy(other.bottom, 0, bottom, 0, other.count);
+		count = other.count;
+	}
+
+	private void remove(int index) {
+		count--;
+		left[index] = left[count];
+		top[index] = top[count];
+		right[index] = right[count];
+		bottom[index] = bottom[count];
+	}
+
+	/**
+	 * Merge the two rectangles whose bounding box adds the fewest pixels
+	 */
+	private void mergeClosest() {
+		int first = 0, second = 1;
+		long bestWaste = Long.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			for (int j = i + 1; j < count; j++) {
+				final long box = (long) (Math.max(right[i], right[j]) - Math.min(left[i], left[j])) * (Math.max(bottom[i], bottom[j]) - Math.min(top[i], top[j]));
+				final long waste = box - area(i) - area(j);
+				if (waste < bestWaste) {
+					bestWaste = waste;
+					first = i;
+					second = j;
+				}
+			}
+		}
+		final int l = Math.min(left[first], left[second]), t = Math.min(top[first], top[second]);
+		final int r = Math.max(right[first], right[second]), b = Math.max(bottom[first], bottom[second]);
+		remove(second);
+		remove(first);
+		add(l, t, r - l, b - t);
+	}
+
+	private long area(int index) {
+		return (long) (right[index] - left[index]) * (bottom[index] - top[index]);
+	}
+
+	/**
+	 * Clip the rectangles to a frame
+	 */
+	public void clip(int width, int height) {
+		for (int i = count - 1; i >= 0; i--) {
+			left[i] = Math.max(0, left[i]);
+			top[i] = Math.max(0, top[i]);
+			right[i] = Math.min(width, right[i]);
+			bottom[i] = Math.min(height, bottom[i]);
+			if (left[i] >= right[i] || top[i] >= bottom[i]) {
+				remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Copy the pixels of the region from one frame to another
+	 *
+	 * @param width the width of both frames
+	 */
+	public void copy(int[] src, int[] dst, int width) {
+		for (int i = 0; i < count; i++) {
+			final int length = right[i] - left[i];
+			for (int y = top[i]; y < bottom[i]; y++) {
+				final int offset = y * width + left[i];
+				System.arraycopy(src, offset, dst, offset, length);
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * @return the number of rectangles
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public int getX(int index) {
+		return left[index];
+	}
+
+	public int getY(int index) {
+		return top[index];
+	}
+
+	public int getWidth(int index) {
+		return right[index] - left[index];
+	}
+
+	public int getHeight(int index) {
+		return bottom[index] - top[index];
+	}
+
+	/**
+	 * @return the number of pixels of the region, counting twice the pixels of overlapping rectangles
+	 */
+	public long getArea() {
+		long area = 0;
+		for (int i = 0; i < count; i++) {
+			area += area(i);
+		}
+		return area;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("DirtyRegion[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(left[i]).append(',').append(top[i]).append(' ').append(getWidth(i)).append('x').append(getHeight(i));
+		}
+		return builder.append(']').toString();
+	}
+}
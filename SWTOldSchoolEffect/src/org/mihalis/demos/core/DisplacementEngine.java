@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import org.mihalis.demos.core.ParallelRenderer.BandKernel;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Filter;
+import org.mihalis.demos.core.sampler.Sampler;
+import org.mihalis.demos.core.sampler.Texture;
+
+/**
+ * Draws a texture through a {@link DisplacementMap}: each pixel of a rectangle of the frame shows the texel whose coordinates are read from the map, plus an offset that animates the whole texture. Tunnels, warps, lenses and ripples are all
+ * rendered this way, only their map and their texture differ.
+ * <p>
+ * The texture is read through a {@link Sampler}, whose edge mode and filter apply. The nearest texels of a repeated or clamped texture are read by dedicated loops, a power of two size only costing a mask; the other modes and the
+ * bilinear filter go through the sampler, which then reads the mip level matching the gradient of the map at each pixel. The rows are rendered in parallel bands.
+ */
+public class DisplacementEngine {
+
+	private static final int SHIFT = DisplacementMap.SUBTEXEL_BITS;
+
+	private final Sampler sampler;
+	private final int[] texture;
+	private final int textureWidth, textureHeight;
+	private final EdgeMode edgeMode;
+	// Masks and shift of a repeated texture whose size is a power of two, -1 otherwise
+	private final int uMask, vMask, rowShift;
+
+	private final ParallelRenderer renderer = new ParallelRenderer();
+	private final BandKernel<int[]> rowKernel = this::drawRows;
+
+	// The frame being rendered
+	private int frameWidth, x0, y0, width;
+	private int[] table;
+	private int mapWidth, mapHeight, mapX, mapY;
+	private int du, dv;
+	// A small repeated texture shifted by the offsets, or null
+	private int[] tile;
+	private boolean tiled;
+
+	/**
+	 * @param texture the texture, whose level 0 is read at each frame so that it can be animated as long as the filter is nearest
+	 * @param edgeMode what is drawn for the coordinates outside of the texture
+	 */
+	public DisplacementEngine(Texture texture, EdgeMode edgeMode) {
+		sampler = new Sampler(texture, edgeMode);
+		this.texture = texture.getPixels();
+		textureWidth = texture.getWidth();
+		textureHeight = texture.getHeight();
+		this.edgeMode = edgeMode;
+		if (edgeMode == EdgeMode.WRAP && texture.isPowerOfTwo()) {
+			uMask = textureWidth - 1;
+			vMask = textureHeight - 1;
+			rowShift = Integer.numberOfTrailingZeros(textureWidth);
+		} else {
+			uMask = vMask = rowShift = -1;
+		}
+	}
+
+	/**
+	 * @return the sampler of the texture, whose filter can be changed
+	 */
+	public Sampler getSampler() {
+		return sampler;
+	}
+
+	public ParallelRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Draw a whole frame of the size of the map
+	 *
+	 * @param du the offset added to the u coordinates, in texels
+	 * @param dv the offset added to the v coordinates, in texels
+	 */
+	public void render(int[] argb, DisplacementMap map, int du, int dv) {
+		render(argb, map.getWidth(), 0, 0, map.getWidth(), map.getHeight(), map, 0, 0, du, dv);
+	}
+
+	/**
+	 * Draw a rectangle of a frame
+	 *
+	 * @param argb the frame
+	 * @param frameWidth the width of the frame
+	 * @param x the left of the rectangle in the frame
+	 * @param y the top of the rectangle in the frame
+	 * @param width the width of the rectangle
+	 * @param height the height of the rectangle
+	 * @param map the map, which must cover the rectangle from (mapX, mapY)
+	 * @param mapX the column of the map drawn at x
+	 * @param mapY the row of the map drawn at y
+	 * @param du the offset added to the u coordinates, in texels
+	 * @param dv the offset added to the v coordinates, in texels
+	 */
+	public void render(int[] argb, int frameWidth, int x, int y, int width, int height, DisplacementMap map, int mapX, int mapY, int du, int dv) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (mapX < 0 || mapY < 0 || mapX + width > map.getWidth() || mapY + height > map.getHeight()) {
+			throw new IllegalArgumentException("The map does not cover the rectangle");
+		}
+		this.frameWidth = frameWidth;
+		x0 = x;
+		y0 = y;
+		this.width = width;
+		table = map.getTable();
+		mapWidth = map.getWidth();
+		mapHeight = map.getHeight();
+		this.mapX = mapX;
+		this.mapY = mapY;
+		// Repeated offsets are reduced so that most of the coordinates stay in the texture
+		this.du = edgeMode == EdgeMode.WRAP ? Math.floorMod(du, textureWidth) : du;
+		this.dv = edgeMode == EdgeMode.WRAP ? Math.floorMod(dv, textureHeight) : dv;
+		tiled = rowShift < 0 && edgeMode == EdgeMode.WRAP && textureWidth * textureHeight <= width * height / 16;
+		if (tiled) {
+			shiftTile();
+		}
+		renderer.render(argb, height, rowKernel);
+		table = null;
+	}
+
+	private void drawRows(int[] argb, int from, int to) {
+		for (int row = from; row < to; row++) {
+			final int offset = (y0 + row) * frameWidth + x0;
+			final int mapOffset = (mapY + row) * mapWidth + mapX;
+			if (sampler.getFilter() != Filter.NEAREST) {
+				drawSampled(argb, offset, mapOffset);
+			} else if (rowShift >= 0) {
+				drawWrapped(argb, offset, mapOffset);
+			} else if (tiled) {
+				drawTiled(argb, offset, mapOffset);
+			} else if (edgeMode == EdgeMode.WRAP) {
+				drawRepeated(argb, offset, mapOffset);
+			} else if (edgeMode == EdgeMode.CLAMP) {
+				drawNearest(argb, offset, mapOffset);
+			} else {
+				drawSampled(argb, offset, mapOffset);
+			}
+		}
+	}
+
+	/**
+	 * Nearest texels of a repeated texture whose size is a power of two
+	 */
+	private void drawWrapped(int[] argb, int offset, int mapOffset) {
+		final int[] table = this.table, texture = this.texture;
+		final int uMask = this.uMask, vMask = this.vMask, rowShift = this.rowShift, du = this.du, dv = this.dv;
+		final int end = offset + width;
+		int index = mapOffset;
+		for (int i = offset; i < end; i++) {
+			final int packed = table[index++];
+			final int v = (short) packed;
+			final int u = packed - v >> 16;
+			argb[i] = texture[((v >> SHIFT) + dv & vMask) << rowShift | (u >> SHIFT) + du & uMask];
+		}
+	}
+
+	/**
+	 * Copy the texture shifted by the offsets, so that the coordinates of the map which are in the texture need no modulo
+	 */
+	private void shiftTile() {
+		if (tile == null) {
+			tile = new int[textureWidth * textureHeight];
+		}
+		int index = 0;
+		for (int v = 0; v < textureHeight; v++) {
+			final int row = (v + dv) % textureHeight * textureWidth;
+			final int split = textureWidth - du;
+			System.arraycopy(texture, row + du, tile, index, split);
+			System.arraycopy(texture, row, tile, index + split, du);
+			index += textureWidth;
+		}
+	}
+
+	/**
+	 * Nearest texels of a small repeated texture, shifted in a tile
+	 */
+	private void drawTiled(int[] argb, int offset, int mapOffset) {
+		final int[] table = this.table, tile = this.tile;
+		final int textureWidth = this.textureWidth, textureHeight = this.textureHeight;
+		final int end = offset + width;
+		int index = mapOffset;
+		for (int i = offset; i < end; i++) {
+			final int packed = table[index++];
+			final int v = (short) packed;
+			final int column = packed - v >> 16 + SHIFT;
+			final int row = v >> SHIFT;
+			if ((column | row) >= 0 && column < textureWidth && row < textureHeight) {
+				argb[i] = tile[row * textureWidth + column];
+			} else {
+				argb[i] = texture[row(row + dv) + column(column + du)];
+			}
+		}
+	}
+
+	/**
+	 * Nearest texels of a repeated texture of any size, the reduced offsets keep most of the coordinates in the texture
+	 */
+	private void drawRepeated(int[] argb, int offset, int mapOffset) {
+		final int[] table = this.table, texture = this.texture;
+		final int textureWidth = this.textureWidth, textureHeight = this.textureHeight, du = this.du, dv = this.dv;
+		final int end = offset + width;
+		int index = mapOffset;
+		for (int i = offset; i < end; i++) {
+			final int packed = table[index++];
+			final int v = (short) packed;
+			// Without branches, which would be mispredicted as the coordinates go around the texture
+			int column = ((packed - v) >> 16 + SHIFT) + du - textureWidth;
+			column += column >> 31 & textureWidth;
+			int row = (v >> SHIFT) + dv - textureHeight;
+			row += row >> 31 & textureHeight;
+			if ((column | row) < 0 || column >= textureWidth || row >= textureHeight) {
+				column = Math.floorMod(column, textureWidth);
+				row = Math.floorMod(row, textureHeight);
+			}
+			argb[i] = texture[row * textureWidth + column];
+		}
+	}
+
+	private void drawNearest(int[] argb, int offset, int mapOffset) {
+		final int[] table = this.table, texture = this.texture;
+		final int end = offset + width;
+		int index = mapOffset;
+		for (int i = offset; i < end; i++) {
+			final int packed = table[index++];
+			final int v = (short) packed;
+			final int u = packed - v >> 16;
+			argb[i] = texture[row((v >> SHIFT) + dv) + column((u >> SHIFT) + du)];
+		}
+	}
+
+	/**
+	 * Any filter and edge mode, through the sampler. With mip levels, the level of each pixel is given by the distance between its texel and those of its neighbors to the right and below.
+	 */
+	private void drawSampled(int[] argb, int offset, int mapOffset) {
+		final int[] table = this.table;
+		final Sampler sampler = this.sampler;
+		final boolean mipmaps = sampler.isMipmaps();
+		final int maxLevel = mipmaps ? sampler.getTexture().getLevelCount() - 1 : 0;
+		// From 12.4 to 16.16 fixed point
+		final int toSampler = Sampler.SHIFT - SHIFT;
+		final int uOffset = du << SHIFT, vOffset = dv << SHIFT;
+		final int end = offset + width;
+		final int mapRow = mapOffset / mapWidth;
+		final int below = mapRow + 1 < mapHeight ? mapWidth : mapRow > 0 ? -mapWidth : 0;
+		int index = mapOffset;
+		for (int i = offset; i < end; i++, index++) {
+			final int packed = table[index];
+			final int u = DisplacementMap.getU(packed), v = DisplacementMap.getV(packed);
+			int level = 0;
+			if (mipmaps) {
+				final int column = index - mapRow * mapWidth;
+				final int right = table[column + 1 < mapWidth ? index + 1 : column > 0 ? index - 1 : index];
+				final int bottom = table[index + below];
+				final int stepU = Math.max(distance(u, DisplacementMap.getU(right), textureWidth), distance(u, DisplacementMap.getU(bottom), textureWidth));
+				final int stepV = Math.max(distance(v, DisplacementMap.getV(right), textureHeight), distance(v, DisplacementMap.getV(bottom), textureHeight));
+				// The level where the step is about one texel, as chosen by the sampler for its spans
+				final int texels = Math.max(stepU, stepV) >> SHIFT;
+				level = texels == 0 ? 0 : Math.min(31 - Integer.numberOfLeadingZeros(texels), maxLevel);
+			}
+			argb[i] = sampler.sample(level, u + uOffset << toSampler >> level, v + vOffset << toSampler >> level);
+		}
+	}
+
+	/**
+	 * @return the distance between two coordinates in sixteenths of texel, the shortest way around a repeated texture
+	 */
+	private int distance(int from, int to, int size) {
+		final int distance = Math.abs(to - from);
+		final int period = size << SHIFT;
+		if (edgeMode != EdgeMode.WRAP || distance <= period >> 1) {
+			return distance;
+		}
+		final int reduced = distance % period;
+		return Math.min(reduced, period - reduced);
+	}
+
+	/**
+	 * @return the column of a u coordinate in texels
+	 */
+	private int column(int u) {
+		if (uMask >= 0) {
+			return u & uMask;
+		}
+		if (edgeMode == EdgeMode.WRAP) {
+			return u >= 0 && u < textureWidth ? u : Math.floorMod(u, textureWidth);
+		}
+		return u < 0 ? 0 : u >= textureWidth ? textureWidth - 1 : u;
+	}
+
+	/**
+	 * @return the index of the first texel of the row of a v coordinate in texels
+	 */
+	private int row(int v) {
+		if (vMask >= 0) {
+			return (v & vMask) << rowShift;
+		}
+		if (edgeMode == EdgeMode.WRAP) {
+			return (v >= 0 && v < textureHeight ? v : Math.floorMod(v, textureHeight)) * textureWidth;
+		}
+		return (v < 0 ? 0 : v >= textureHeight ? textureHeight - 1 : v) * textureWidth;
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * A table giving, for each pixel of a rectangle of the screen, the coordinates of the texel to draw there. It is rendered by a {@link DisplacementEngine}, which adds an animated offset to these coordinates.
+ * <p>
+ * Both coordinates are packed in one int, as 12.4 fixed point numbers: <code>(u &lt;&lt; 16) + v</code>, u and v being signed. The fractions of texel are only used by bilinear filtering. Coordinates must stay between -2048 and 2047.
+ */
+public final class DisplacementMap {
+
+	public static final int SUBTEXEL_BITS = 4;
+	public static final int SUBTEXELS = 1 << SUBTEXEL_BITS;
+
+	private static final int LIMIT = 1 << 15 - SUBTEXEL_BITS;
+
+	private final int width, height;
+	private final int[] table;
+
+	public DisplacementMap(int width, int height) {
+		this(width, height, new int[width * height]);
+	}
+
+	/**
+	 * @param table the packed coordinates of the pixels, row by row
+	 */
+	public DisplacementMap(int width, int height, int[] table) {
+		if (table.length != width * height) {
+			throw new IllegalArgumentException("Invalid table of " + table.length + " entries for " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.table = table;
+	}
+
+	/**
+	 * @return the packed coordinates of a texel
+	 */
+	public static int pack(int u, int v) {
+		check(u, v);
+		return (u << SUBTEXEL_BITS << 16) + (v << SUBTEXEL_BITS);
+	}
+
+	/**
+	 * @return the packed coordinates of a point of the texture, rounded down to a sixteenth of texel
+	 */
+	public static int pack(double u, double v) {
+		check(u, v);
+		return ((int) Math.floor(u * SUBTEXELS) << 16) + (int) Math.floor(v * SUBTEXELS);
+	}
+
+	private static void check(double u, double v) {
+		if (u < -LIMIT || u >= LIMIT || v < -LIMIT || v >= LIMIT) {
+			throw new IllegalArgumentException("Coordinates out of range " + u + "," + v);
+		}
+	}
+
+	/**
+	 * @return the u coordinate of packed coordinates, in sixteenths of texel
+	 */
+	public static int getU(int packed) {
+		return packed - (short) packed >> 16;
+	}
+
+	/**
+	 * @return the v coordinate of packed coordinates, in sixteenths of texel
+	 */
+	public static int getV(int packed) {
+		return (short) packed;
+	}
+
+	public void set(int x, int y, int packed) {
+		table[y * width + x] = packed;
+	}
+
+	public int get(int x, int y) {
+		return table[y * width + x];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the packed coordinates, row by row
+	 */
+	public int[] getTable() {
+		return table;
+	}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * An old school effect, independent of any windowing toolkit.
+ * <p>
+ * An effect renders its frames into a flat, row-major array of packed 0xAARRGGBB pixels (the alpha byte is ignored by the hosts), so the same kernel can be shown in a SWT window, rendered offscreen or benchmarked.
+ */
+public interface Effect {
+
+	/**
+	 * Allocate the buffers, tables and assets for an output of the given size.
+	 *
+	 * @param width the width of the frames, in pixels
+	 * @param height the height of the frames, in pixels
+	 */
+	void init(int width, int height);
+
+	/**
+	 * Advance the animation by one frame and render it.
+	 *
+	 * @param argb the destination, width * height pixels. Its content on entry is undefined, so every pixel must be written.
+	 * @param frameIndex the number of frames rendered before this one
+	 */
+	void renderFrame(int[] argb, long frameIndex);
+
+	/**
+	 * Prepare the tables needed at a new size before {@link #resize(int, int)} is called. It runs on a background thread while the effect keeps rendering at the previous size, so it must not change the state used by the rendering: it should
+	 * only warm the {@link TableCache}. Does nothing by default.
+	 *
+	 * @param width the upcoming width of the frames
+	 * @param height the upcoming height of the frames
+	 */
+	default void prepare(int width, int height) {
+	}
+
+	/**
+	 * Called when the output size changes after {@link #init(int, int)}. By default the effect is initialised again.
+	 *
+	 * @param width the new width of the frames
+	 * @param height the new height of the frames
+	 */
+	default void resize(int width, int height) {
+		init(width, height);
+	}
+
+	/**
+	 * Release the resources held by this effect.
+	 */
+	default void dispose() {
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small and fast pseudo-random generator (xorshift64*) to replace {@link Math#random()} in the rendering loops.
+ * <p>
+ * {@link Math#random()} shares one generator between all the threads, whose seed is updated with a compare-and-set at each call. A FastRandom is not thread-safe instead: each effect owns one, used by its rendering thread only, and
+ * {@link #current()} gives one to each thread for the code that has none at hand.
+ * <p>
+ * Generators created without a seed take the default seed, so that the frames of an effect can be reproduced: it is read from <code>-Ddemos.seed=&lt;n&gt;</code> or set with {@link #setDefaultSeed(long)}. Without any, each generator gets
+ * a different seed.
+ */
+public final class FastRandom {
+
+	private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+	private static volatile Long defaultSeed = Long.getLong("demos.seed");
+	private static final ThreadLocal<FastRandom> CURRENT = ThreadLocal.withInitial(() -> new FastRandom(SEEDS.getAndAdd(0x9E3779B97F4A7C15L)));
+
+	private long state;
+
+	/**
+	 * Create a generator with the default seed, or a unique one if there is no default seed
+	 */
+	public FastRandom() {
+		final Long seed = defaultSeed;
+		setSeed(seed != null ? seed : SEEDS.getAndAdd(0x9E3779B97F4A7C15L));
+	}
+
+	public FastRandom(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * @return the generator of the calling thread
+	 */
+	public static FastRandom current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Set the seed of the generators created from now on without a seed
+	 */
+	public static void setDefaultSeed(long seed) {
+		defaultSeed = seed;
+	}
+
+	/**
+	 * Give a unique seed to the generators created from now on without a seed
+	 */
+	public static void clearDefaultSeed() {
+		defaultSeed = null;
+	}
+
+	/**
+	 * @return the default seed, or <code>null</code> if there is none
+	 */
+	public static Long getDefaultSeed() {
+		return defaultSeed;
+	}
+
+	/**
+	 * Restart the sequence. Two generators with the same seed give the same numbers.
+	 */
+	public void setSeed(long seed) {
+		// SplitMix64 finalizer: close seeds give unrelated sequences, and the state is never 0
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		z ^= z >>> 31;
+		state = z != 0 ? z : 0x9E3779B97F4A7C15L;
+	}
+
+	public long nextLong() {
+		long x = state;
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state = x;
+		return x * 0x2545F4914F6CDD1DL;
+	}
+
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	/**
+	 * @return a number between 0 included and bound excluded, bound being positive
+	 */
+	public int nextInt(int bound) {
+		// The high 32 bits scaled to the bound, without any division
+		return (int) ((nextLong() >>> 32) * bound >>> 32);
+	}
+
+	/**
+	 * @return a number between origin included and bound excluded
+	 */
+	public int nextInt(int origin, int bound) {
+		return origin + nextInt(bound - origin);
+	}
+
+	/**
+	 * @return a number between 0 included and 1 excluded, like {@link Math#random()}
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Fill a range of an array with numbers between origin included and bound excluded, such as a row of noise
+	 */
+	public void nextInts(int[] dst, int offset, int length, int origin, int bound) {
+		final long range = bound - origin;
+		long x = state;
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			x ^= x >>> 12;
+			x ^= x << 25;
+			x ^= x >>> 27;
+			dst[i] = origin + (int) ((x * 0x2545F4914F6CDD1DL >>> 32) * range >>> 32);
+		}
+		state = x;
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fixed-point trigonometric tables shared by the effects.
+ * <p>
+ * Numbers are 16.16 fixed point: {@link #ONE} stands for 1. Angles are integers, {@link #ANGLES} of them making a full turn, so that any angle, negative or larger than a turn, is brought back into the table with a mask instead of a test or a
+ * modulo.
+ * <p>
+ * The tables are built once per process. The scaled tables returned by {@link #sinTable(int, int)} and {@link #cosTable(int, int)} are shared between all the effects asking for the same size and amplitude: they must not be modified.
+ */
+public final class FixedMath {
+
+	public static final int SHIFT = 16;
+	public static final int ONE = 1 << SHIFT;
+
+	public static final int ANGLE_BITS = 12;
+	public static final int ANGLES = 1 << ANGLE_BITS;
+	public static final int ANGLE_MASK = ANGLES - 1;
+
+	private static final Map<Long, int[]> TABLES = new ConcurrentHashMap<>();
+
+	private static final int[] SIN = sinTable(ANGLES, ONE);
+
+	private FixedMath() {
+	}
+
+	/**
+	 * @return the sine of an angle, in 16.16 fixed point
+	 */
+	public static int sin(int angle) {
+		return SIN[angle & ANGLE_MASK];
+	}
+
+	/**
+	 * @return the cosine of an angle, in 16.16 fixed point
+	 */
+	public static int cos(int angle) {
+		return SIN[angle + (ANGLES >> 2) & ANGLE_MASK];
+	}
+
+	/**
+	 * A sine table of <code>size</code> entries over a full turn: <code>table[i] = (int) (sin(2 * PI * i / size) * amplitude)</code>. When the size is a power of two, the table is indexed with <code>i &amp; (size - 1)</code>.
+	 *
+	 * @return the shared table, which must not be modified
+	 */
+	public static int[] sinTable(int size, int amplitude) {
+		return table(size, amplitude, false);
+	}
+
+	/**
+	 * A cosine table of <code>size</code> entries over a full turn: <code>table[i] = (int) (cos(2 * PI * i / size) * amplitude)</code>
+	 *
+	 * @return the shared table, which must not be modified
+	 */
+	public static int[] cosTable(int size, int amplitude) {
+		return table(size, amplitude, true);
+	}
+
+	private static int[] table(int size, int amplitude, boolean cosine) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Invalid table size " + size);
+		}
+		final long key = (long) size << 33 | (cosine ? 1L << 32 : 0) | amplitude & 0xFFFFFFFFL;
+		return TABLES.computeIfAbsent(key, k -> {
+			final int[] table = new int[size];
+			for (int i = 0; i < size; i++) {
+				final double angle = 2 * Math.PI * i / size;
+				table[i] = (int) ((cosine ? Math.cos(angle) : Math.sin(angle)) * amplitude);
+			}
+			return table;
+		});
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records how long each phase of a frame takes, from the effect kernel to the drawing on screen, and how many bytes the kernel allocates per frame.
+ * <p>
+ * Each phase is recorded by a single thread (the kernel on the render thread, the other phases on the UI thread), so no synchronisation is needed. Typical use:
+ *
+ * <pre>
+ * final long start = profiler.begin();
+ * ...
+ * profiler.end(Phase.KERNEL, start);
+ * </pre>
+ */
+public class FrameProfiler {
+
+	/**
+	 * The phases of a frame
+	 */
+	public enum Phase {
+		/** The effect renders its int[] frame */
+		KERNEL("kernel"),
+		/** The frame is converted into the image data */
+		CONVERT("convert"),
+		/** A native image is created from the image data */
+		UPLOAD("upload"),
+		/** The native image is drawn on the canvas */
+		DRAW("draw");
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private final Histogram[] times = new Histogram[Phase.values().length];
+	private final Histogram allocations = new Histogram();
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	public FrameProfiler() {
+		for (int i = 0; i < times.length; i++) {
+			times[i] = new Histogram();
+		}
+		threadBean = createThreadBean();
+	}
+
+	private static com.sun.management.ThreadMXBean createThreadBean() {
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		try {
+			if (!sunBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+			return sunBean;
+		} catch (final UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the start time of a phase
+	 */
+	public long begin() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the end of a phase
+	 *
+	 * @param start the value returned by {@link #begin()}
+	 */
+	public void end(Phase phase, long start) {
+		times[phase.ordinal()].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+	 */
+	public long beginAllocation() {
+		return threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Record the bytes allocated by the current thread since {@link #beginAllocation()}
+	 */
+	public void endAllocation(long start) {
+		if (start >= 0) {
+			allocations.record(threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start);
+		}
+	}
+
+	public boolean isAllocationSupported() {
+		return threadBean != null;
+	}
+
+	public Histogram getHistogram(Phase phase) {
+		return times[phase.ordinal()];
+	}
+
+	/**
+	 * @return the bytes allocated per frame by the kernel
+	 */
+	public Histogram getAllocations() {
+		return allocations;
+	}
+
+	/**
+	 * @return one line per phase with its percentiles in milliseconds, then the allocation per frame
+	 */
+	public List<String> getSummary() {
+		final List<String> lines = new ArrayList<>();
+		for (final Phase phase : Phase.values()) {
+			final Histogram histogram = getHistogram(phase);
+			lines.add(String.format("%-8s p50 %7.3f  p95 %7.3f  p99 %7.3f  max %7.3f ms", phase.getLabel(), histogram.getPercentile(50) / 1e6, histogram.getPercentile(95) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+		}
+		if (threadBean != null) {
+			lines.add(String.format("%-8s p50 %7d  max %7d bytes/frame", "alloc", allocations.getPercentile(50), allocations.getMax()));
+		}
+		return lines;
+	}
+
+	/**
+	 * Write the histograms as CSV, one row per phase
+	 */
+	public void writeCsv(File file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			out.println("phase,unit,count,mean,p50,p95,p99,max");
+			for (final Phase phase : Phase.values()) {
+				writeCsvRow(out, phase.getLabel(), "ns", getHistogram(phase));
+			}
+			if (threadBean != null) {
+				writeCsvRow(out, "alloc", "bytes", allocations);
+			}
+		}
+	}
+
+	private static void writeCsvRow(PrintWriter out, String name, String unit, Histogram histogram) {
+		out.println(String.format(Locale.ROOT, "%s,%s,%d,%.0f,%d,%d,%d,%d", name, unit, histogram.getCount(), histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(95), histogram.getPercentile(99), histogram.getMax()));
+	}
+}
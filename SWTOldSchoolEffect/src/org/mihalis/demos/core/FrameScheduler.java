@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * Fixed timestep scheduling: the simulation advances by steps of a constant duration, whatever the time spent rendering.
+ * <p>
+ * Each call to {@link #advance(long)} returns the number of steps that are due since the previous call. When it is more than one, the renders in between are skipped. When it is more than the maximum catch-up, the extra steps are dropped, so a
+ * machine that is much too slow does not spiral into running only steps: the animation then slows down, and the dropped steps are counted.
+ */
+public class FrameScheduler {
+
+	private final long stepNanos;
+	private int maxCatchUp;
+
+	private long lastTime;
+	private long accumulator;
+	private boolean started;
+
+	private long steps, renders, skippedRenders, droppedSteps;
+
+	/**
+	 * @param stepNanos the duration of a simulation step, in nanoseconds
+	 * @param maxCatchUp the maximum number of steps run before a render
+	 */
+	public FrameScheduler(long stepNanos, int maxCatchUp) {
+		if (stepNanos <= 0) {
+			throw new IllegalArgumentException("Invalid step duration " + stepNanos);
+		}
+		this.stepNanos = stepNanos;
+		setMaxCatchUp(maxCatchUp);
+	}
+
+	/**
+	 * Start counting time from now. Called by the first {@link #advance(long)} if needed.
+	 */
+	public void reset(long now) {
+		lastTime = now;
+		accumulator = 0;
+		started = true;
+	}
+
+	/**
+	 * Compute the number of steps due at the given time
+	 *
+	 * @param now the current time, from {@link System#nanoTime()}
+	 * @return the number of steps to run before the next render, between 0 and the maximum catch-up
+	 */
+	public int advance(long now) {
+		if (!started) {
+			reset(now - stepNanos);
+		}
+		accumulator += now - lastTime;
+		lastTime = now;
+
+		long due = accumulator / stepNanos;
+		accumulator -= due * stepNanos;
+		if (due > maxCatchUp) {
+			droppedSteps += due - maxCatchUp;
+			due = maxCatchUp;
+		}
+		if (due > 0) {
+			steps += due;
+			renders++;
+			skippedRenders += due - 1;
+		}
+		return (int) due;
+	}
+
+	/**
+	 * @return the time at which the next step is due
+	 */
+	public long getNextStepTime() {
+		return lastTime + stepNanos - accumulator;
+	}
+
+	public long getStepNanos() {
+		return stepNanos;
+	}
+
+	public int getMaxCatchUp() {
+		return maxCatchUp;
+	}
+
+	/**
+	 * @param maxCatchUp the maximum number of steps run before a render, at least 1
+	 */
+	public void setMaxCatchUp(int maxCatchUp) {
+		if (maxCatchUp < 1) {
+			throw new IllegalArgumentException("Invalid maximum catch-up " + maxCatchUp);
+		}
+		this.maxCatchUp = maxCatchUp;
+	}
+
+	/**
+	 * @return the number of steps run so far
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the number of renders so far
+	 */
+	public long getRenders() {
+		return renders;
+	}
+
+	/**
+	 * @return the number of steps which were run without being rendered
+	 */
+	public long getSkippedRenders() {
+		return skippedRenders;
+	}
+
+	/**
+	 * @return the number of steps which were due but dropped because the maximum catch-up was reached
+	 */
+	public long getDroppedSteps() {
+		return droppedSteps;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d steps of %.1f ms, %d renders, %d skipped renders, %d dropped steps", steps, stepNanos / 1e6, renders, skippedRenders, droppedSteps);
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.ImageLoader;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * Drives an {@link Effect} into an in-memory frame, without any display. It can be used from code, or from the command line to render a given number of frames and optionally dump them:
+ *
+ * <pre>
+ * java org.mihalis.demos.core.HeadlessRunner org.mihalis.demos.tunnel.Tunnel3 -size 640x480 -frames 100 -png out -every 10
+ * </pre>
+ *
+ * Raw dumps contain the frames one after the other, each pixel being a big-endian 0xAARRGGBB int.
+ */
+public class HeadlessRunner {
+
+	private static final PaletteData PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+
+	private final Effect effect;
+	private final int width, height;
+	private final int[] frame;
+	private long frameIndex;
+
+	/**
+	 * Create a runner and initialize the effect at the given resolution
+	 */
+	public HeadlessRunner(Effect effect, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+		}
+		this.effect = effect;
+		this.width = width;
+		this.height = height;
+		frame = new int[width * height];
+		effect.init(width, height);
+	}
+
+	/**
+	 * Render the next frame
+	 *
+	 * @return the frame buffer, which is reused by the next call
+	 */
+	public int[] renderFrame() {
+		effect.renderFrame(frame, frameIndex++);
+		return frame;
+	}
+
+	/**
+	 * Render several frames in a row
+	 *
+	 * @return the frame buffer holding the last frame
+	 */
+	public int[] renderFrames(int count) {
+		for (int i = 0; i < count; i++) {
+			effect.renderFrame(frame, frameIndex++);
+		}
+		return frame;
+	}
+
+	public int[] getFrame() {
+		return frame;
+	}
+
+	public long getFrameIndex() {
+		return frameIndex;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public Effect getEffect() {
+		return effect;
+	}
+
+	public void dispose() {
+		effect.dispose();
+	}
+
+	/**
+	 * Create an effect from the name of its class, which must have a public constructor without argument
+	 */
+	public static Effect createEffect(String className) {
+		try {
+			return (Effect) Class.forName(className).getConstructor().newInstance();
+		} catch (final ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("Unable to create the effect " + className, e);
+		}
+	}
+
+	/**
+	 * Save a frame as a PNG file
+	 */
+	public static void writePng(int[] argb, int width, int height, File file) {
+		final ImageData imageData = new ImageData(width, height, 24, PALETTE);
+		imageData.setPixels(0, 0, width * height, argb, 0);
+		final ImageLoader loader = new ImageLoader();
+		loader.data = new ImageData[] { imageData };
+		loader.save(file.getPath(), SWT.IMAGE_PNG);
+	}
+
+	/**
+	 * Append a frame to a raw dump
+	 */
+	public static void writeRaw(int[] argb, int width, int height, DataOutputStream out) throws IOException {
+		for (int i = 0; i < width * height; i++) {
+			out.writeInt(argb[i]);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: HeadlessRunner <effect class> [-size <width>x<height>] [-frames <count>] [-png <directory>] [-raw <file>] [-every <n>] [-seed <n>]");
+		System.err.println("  -size    resolution of the frames, 320x240 by default");
+		System.err.println("  -frames  number of frames to render, 100 by default");
+		System.err.println("  -png     write frames as PNG files in the given directory");
+		System.err.println("  -raw     write frames to the given raw ARGB file, replacing it");
+		System.err.println("  -every   only dump one frame out of n, 1 by default");
+		System.err.println("  -seed    seed of the random generators, to render the same frames at each run");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			usage();
+		}
+
+		final String className = args[0];
+		int width = 320, height = 240, frames = 100, every = 1;
+		File pngDirectory = null, rawFile = null;
+
+		try {
+			for (int i = 1; i < args.length; i++) {
+				final String option = args[i];
+				if (i + 1 >= args.length) {
+					usage();
+				}
+				final String value = args[++i];
+				switch (option) {
+					case "-size":
+						final int x = value.indexOf('x');
+						width = Integer.parseInt(value.substring(0, x));
+						height = Integer.parseInt(value.substring(x + 1));
+						break;
+					case "-frames":
+						frames = Integer.parseInt(value);
+						break;
+					case "-png":
+						pngDirectory = new File(value);
+						break;
+					case "-raw":
+						rawFile = new File(value);
+						break;
+					case "-every":
+						every = Math.max(1, Integer.parseInt(value));
+						break;
+					case "-seed":
+						FastRandom.setDefaultSeed(Long.parseLong(value));
+						break;
+					default:
+						usage();
+				}
+			}
+		} catch (final NumberFormatException | StringIndexOutOfBoundsException e) {
+			usage();
+		}
+
+		if (pngDirectory != null && !pngDirectory.isDirectory() && !pngDirectory.mkdirs()) {
+			throw new IOException("Unable to create the directory " + pngDirectory);
+		}
+
+		final HeadlessRunner runner = new HeadlessRunner(createEffect(className), width, height);
+		final String baseName = className.substring(className.lastIndexOf('.') + 1);
+		DataOutputStream raw = null;
+		if (rawFile != null) {
+			final OutputStream out = new FileOutputStream(rawFile);
+			raw = new DataOutputStream(new BufferedOutputStream(out));
+		}
+
+		long renderTime = 0;
+		try {
+			for (int i = 0; i < frames; i++) {
+				final long start = System.nanoTime();
+				final int[] frame = runner.renderFrame();
+				renderTime += System.nanoTime() - start;
+
+				if (i % every != 0) {
+					continue;
+				}
+				if (pngDirectory != null) {
+					writePng(frame, width, height, new File(pngDirectory, String.format("%s_%05d.png", baseName, i)));
+				}
+				if (raw != null) {
+					writeRaw(frame, width, height, raw);
+				}
+			}
+		} finally {
+			if (raw != null) {
+				raw.close();
+			}
+			runner.dispose();
+		}
+
+		System.out.println(String.format("%s: %d frames at %dx%d, %.3f ms/frame", baseName, frames, width, height, renderTime / 1e6 / Math.max(1, frames)));
+	}
+}
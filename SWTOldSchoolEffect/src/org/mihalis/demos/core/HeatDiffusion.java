@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import org.mihalis.demos.core.ParallelRenderer.BandKernel;
+
+/**
+ * A grid of heat values between 0 and 255, which spreads and cools at each step: the new heat of a cell is a function of the sum of the heats of some of its neighbors. Fires, flames and blurs are all made this way, only their
+ * neighbors and their cooling differ.
+ * <p>
+ * The cells are flat bytes, row by row, so that they can be used directly as the color indices of a palette. Each step reads the current grid and writes the next one, so the rows are computed in parallel bands. Only the cells near the borders, whose neighbors may be outside of the grid, look for their neighbors one at
+ * a time, the others are computed by unrolled loops without any modulo.
+ */
+public class HeatDiffusion {
+
+	/**
+	 * What the neighbors outside of the grid are
+	 */
+	public enum Border {
+		/** Cold cells */
+		ZERO,
+		/** The nearest cell of the grid */
+		CLAMP,
+		/** The cell on the opposite side of the grid */
+		WRAP
+	}
+
+	/**
+	 * The neighbors summed for each cell, and how their sum becomes the new heat of the cell: <code>max(0, sum * numerator / denominator - cooling)</code>
+	 */
+	public static final class Kernel {
+
+		private final int[] dx, dy;
+		private final int cooling;
+		// The division as an exact multiplication and shift, for the possible sums
+		private final int multiplier, shift;
+		private final int minDx, maxDx, minDy, maxDy;
+		// The neighbors are the 3x3 square around the cell, without the cell itself
+		private final boolean square;
+
+		/**
+		 * @param dx the columns of the neighbors, relative to the cell
+		 * @param dy the rows of the neighbors, relative to the cell
+		 * @param numerator the numerator of the fraction of the sum kept by the cell
+		 * @param denominator the denominator of the fraction, the sum times the fraction must stay below 256
+		 * @param cooling the heat lost by each cell at each step
+		 */
+		public Kernel(int[] dx, int[] dy, int numerator, int denominator, int cooling) {
+			if (dx.length != dy.length || dx.length == 0) {
+				throw new IllegalArgumentException("The kernel needs as many columns as rows of neighbors");
+			}
+			final int maxSum = dx.length * 255;
+			if (numerator <= 0 || denominator <= 0 || maxSum * numerator / denominator > 255) {
+				throw new IllegalArgumentException("Invalid fraction " + numerator + "/" + denominator + " for " + dx.length + " neighbors");
+			}
+			this.dx = dx.clone();
+			this.dy = dy.clone();
+			this.cooling = cooling;
+
+			int multiplier = 0, shift = 0;
+			for (int s = 0; s < 31 && multiplier == 0; s++) {
+				final long m = (((long) numerator << s) + denominator - 1) / denominator;
+				if (maxSum * m >= Integer.MAX_VALUE) {
+					break;
+				}
+				boolean exact = true;
+				for (int sum = 0; sum <= maxSum && exact; sum++) {
+					exact = (sum * m >> s) == sum * numerator / denominator;
+				}
+				if (exact) {
+					multiplier = (int) m;
+					shift = s;
+				}
+			}
+			if (multiplier == 0) {
+				throw new IllegalArgumentException("No exact multiplication for " + numerator + "/" + denominator);
+			}
+			this.multiplier = multiplier;
+			this.shift = shift;
+
+			int minDx = 0, maxDx = 0, minDy = 0, maxDy = 0, taps = 0;
+			for (int i = 0; i < dx.length; i++) {
+				minDx = Math.min(minDx, dx[i]);
+				maxDx = Math.max(maxDx, dx[i]);
+				minDy = Math.min(minDy, dy[i]);
+				maxDy = Math.max(maxDy, dy[i]);
+				taps |= 1 << (dy[i] + 1) * 3 + dx[i] + 1;
+			}
+			this.minDx = minDx;
+			this.maxDx = maxDx;
+			this.minDy = minDy;
+			this.maxDy = maxDy;
+			square = dx.length == 8 && minDx == -1 && maxDx == 1 && minDy == -1 && maxDy == 1 && taps == 0x1EF;
+		}
+
+		private int heat(int sum) {
+			return Math.max(0, (sum * multiplier >> shift) - cooling);
+		}
+	}
+
+	private final int width, height;
+	private final Kernel kernel;
+	private final Border border;
+	private byte[] cells, next;
+	// The offsets of the neighbors in the cells, relative to the cell
+	private final int[] neighbors;
+
+	// The rectangle of the cells which are computed, the others are kept
+	private int x0, y0, x1, y1;
+
+	private final ParallelRenderer renderer = new ParallelRenderer();
+	private final BandKernel<byte[]> rowKernel = this::diffuseRows;
+	// The sums of the columns of the square kernel, for the band of each thread
+	private final ThreadLocal<int[]> columns;
+
+	public HeatDiffusion(int width, int height, Kernel kernel, Border border) {
+		this.width = width;
+		this.height = height;
+		this.kernel = kernel;
+		this.border = border;
+		cells = new byte[width * height];
+		next = new byte[width * height];
+		neighbors = new int[kernel.dx.length];
+		for (int i = 0; i < neighbors.length; i++) {
+			neighbors[i] = kernel.dy[i] * width + kernel.dx[i];
+		}
+		x1 = width;
+		y1 = height;
+		columns = ThreadLocal.withInitial(() -> new int[width]);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the current heats, row by row. They can be changed between two steps, but the array is replaced at each step.
+	 */
+	public byte[] getCells() {
+		return cells;
+	}
+
+	public int get(int x, int y) {
+		return cells[y * width + x] & 0xFF;
+	}
+
+	public void set(int x, int y, int heat) {
+		cells[y * width + x] = (byte) heat;
+	}
+
+	/**
+	 * Only compute the cells of a rectangle, the others keep their heat. By default, all the cells are computed.
+	 */
+	public void setRegion(int x, int y, int regionWidth, int regionHeight) {
+		x0 = Math.max(0, x);
+		y0 = Math.max(0, y);
+		x1 = Math.min(width, x + regionWidth);
+		y1 = Math.min(height, y + regionHeight);
+	}
+
+	public ParallelRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Spread the heat once
+	 */
+	public void step() {
+		renderer.render(next, height, rowKernel);
+		final byte[] swap = cells;
+		cells = next;
+		next = swap;
+	}
+
+	private void diffuseRows(byte[] next, int from, int to) {
+		// Whether the previous row of the band was computed by the inner loops
+		boolean previous = false;
+		for (int y = from; y < to; y++) {
+			final int row = y * width;
+			if (y < y0 || y >= y1 || x0 >= x1) {
+				System.arraycopy(cells, row, next, row, width);
+				previous = false;
+				continue;
+			}
+			// The kept cells of the row
+			System.arraycopy(cells, row, next, row, x0);
+			System.arraycopy(cells, row + x1, next, row + x1, width - x1);
+
+			// The neighbors of the inner cells are all in the grid
+			int innerFrom = Math.max(x0, -kernel.minDx), innerTo = Math.min(x1, width - kernel.maxDx);
+			if (y + kernel.minDy < 0 || y + kernel.maxDy >= height || innerFrom >= innerTo) {
+				innerFrom = innerTo = x1;
+			}
+			for (int x = x0; x < innerFrom; x++) {
+				next[row + x] = diffuseBorder(x, y);
+			}
+			if (innerFrom < innerTo) {
+				diffuseInner(next, y, innerFrom, innerTo, previous);
+			}
+			previous = innerFrom < innerTo;
+			for (int x = Math.max(innerTo, x0); x < x1; x++) {
+				next[row + x] = diffuseBorder(x, y);
+			}
+		}
+	}
+
+	/**
+	 * The cells of a row whose neighbors are all in the grid. The usual kernels of four or eight neighbors are computed by unrolled loops, each in its own method so that it is compiled alone. The cooled heats are clamped in the
+	 * same loop, by a comparison which is well predicted as most cells are cold.
+	 *
+	 * @param previous whether the previous row was computed by this method, with the same cells
+	 */
+	private void diffuseInner(byte[] next, int y, int from, int to, boolean previous) {
+		if (kernel.square) {
+			diffuseSquare(cells, next, y * width, from, to, previous);
+		} else if (neighbors.length == 4) {
+			diffuse4(cells, next, y * width, from, to);
+		} else if (neighbors.length == 8) {
+			diffuse8(cells, next, y * width, from, to);
+		} else {
+			diffuseAny(cells, next, y * width, from, to);
+		}
+	}
+
+	/**
+	 * The eight neighbors of a cell are the three columns of the square around it, minus the cell: each column of the three rows is summed once, then shared by three cells, which is much cheaper than eight loads of bytes. The sums
+	 * of the previous row only lose its upper row and gain the lower row of this one.
+	 */
+	private void diffuseSquare(byte[] cells, byte[] next, int row, int from, int to, boolean previous) {
+		final int multiplier = kernel.multiplier, shift = kernel.shift, cooling = kernel.cooling;
+		final int[] columns = this.columns.get();
+		final int above = row - width, below = row + width;
+		if (previous) {
+			final int gone = above - width;
+			for (int x = from - 1; x <= to; x++) {
+				columns[x] += (cells[below + x] & 0xFF) - (cells[gone + x] & 0xFF);
+			}
+		} else {
+			for (int x = from - 1; x <= to; x++) {
+				columns[x] = (cells[above + x] & 0xFF) + (cells[row + x] & 0xFF) + (cells[below + x] & 0xFF);
+			}
+		}
+		for (int x = from; x < to; x++) {
+			final int heat = ((columns[x - 1] + columns[x] + columns[x + 1] - (cells[row + x] & 0xFF)) * multiplier >> shift) - cooling;
+			next[row + x] = (byte) (heat > 0 ? heat : 0);
+		}
+	}
+
+	private void diffuse4(byte[] cells, byte[] next, int row, int from, int to) {
+		final int multiplier = kernel.multiplier, shift = kernel.shift, cooling = kernel.cooling;
+		final int n0 = row + neighbors[0], n1 = row + neighbors[1], n2 = row + neighbors[2], n3 = row + neighbors[3];
+		if (cooling == 0) {
+			// Nothing to clamp
+			for (int x = from; x < to; x++) {
+				next[row + x] = (byte) (((cells[n0 + x] & 0xFF) + (cells[n1 + x] & 0xFF) + (cells[n2 + x] & 0xFF) + (cells[n3 + x] & 0xFF)) * multiplier >> shift);
+			}
+			return;
+		}
+		for (int x = from; x < to; x++) {
+			final int heat = (((cells[n0 + x] & 0xFF) + (cells[n1 + x] & 0xFF) + (cells[n2 + x] & 0xFF) + (cells[n3 + x] & 0xFF)) * multiplier >> shift) - cooling;
+			next[row + x] = (byte) (heat > 0 ? heat : 0);
+		}
+	}
+
+	private void diffuse8(byte[] cells, byte[] next, int row, int from, int to) {
+		final int multiplier = kernel.multiplier, shift = kernel.shift, cooling = kernel.cooling;
+		final int n0 = row + neighbors[0], n1 = row + neighbors[1], n2 = row + neighbors[2], n3 = row + neighbors[3];
+		final int n4 = row + neighbors[4], n5 = row + neighbors[5], n6 = row + neighbors[6], n7 = row + neighbors[7];
+		for (int x = from; x < to; x++) {
+			final int sum = (cells[n0 + x] & 0xFF) + (cells[n1 + x] & 0xFF) + (cells[n2 + x] & 0xFF) + (cells[n3 + x] & 0xFF) + (cells[n4 + x] & 0xFF) + (cells[n5 + x] & 0xFF) + (cells[n6 + x] & 0xFF) + (cells[n7 + x] & 0xFF);
+			final int heat = (sum * multiplier >> shift) - cooling;
+			next[row + x] = (byte) (heat > 0 ? heat : 0);
+		}
+	}
+
+	private void diffuseAny(byte[] cells, byte[] next, int row, int from, int to) {
+		final int[] neighbors = this.neighbors;
+		for (int x = from; x < to; x++) {
+			final int cell = row + x;
+			int sum = 0;
+			for (int i = 0; i < neighbors.length; i++) {
+				sum += cells[cell + neighbors[i]] & 0xFF;
+			}
+			next[cell] = (byte) kernel.heat(sum);
+		}
+	}
+
+	private byte diffuseBorder(int x, int y) {
+		final int[] dx = kernel.dx, dy = kernel.dy;
+		int sum = 0;
+		for (int i = 0; i < dx.length; i++) {
+			final int column = map(x + dx[i], width), row = map(y + dy[i], height);
+			if (column >= 0 && row >= 0) {
+				sum += cells[row * width + column] & 0xFF;
+			}
+		}
+		return (byte) kernel.heat(sum);
+	}
+
+	/**
+	 * @return a coordinate moved into the grid by the border, or -1 for a cold cell outside of it
+	 */
+	private int map(int coordinate, int size) {
+		if (coordinate >= 0 && coordinate < size) {
+			return coordinate;
+		}
+		switch (border) {
+			case WRAP:
+				return Math.floorMod(coordinate, size);
+			case CLAMP:
+				return coordinate < 0 ? 0 : size - 1;
+			default:
+				return -1;
+		}
+	}
+}
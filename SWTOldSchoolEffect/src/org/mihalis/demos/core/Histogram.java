@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of positive long values, such as durations in nanoseconds, with a constant memory footprint and no allocation when recording.
+ * <p>
+ * Values below 16 are counted exactly. Above, each power of two is split into 16 buckets, so a percentile is accurate to about 3%. A histogram must only be recorded from a single thread; reading it from another thread gives a slightly stale
+ * but usable view.
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+	private long count, total, max;
+
+	/**
+	 * Count a value. Negative values are counted as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[indexOf(value)]++;
+		count++;
+		total += value;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> exponent - SUB_BITS) & SUB_COUNT - 1;
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	private static long valueOf(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		final int shift = index / SUB_COUNT - 1;
+		final long low = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+		// Middle of the bucket
+		return low + ((1L << shift) >> 1);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value below which the given percentage of the values fall, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(valueOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+}
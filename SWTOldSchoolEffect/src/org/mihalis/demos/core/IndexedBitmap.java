@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * A decoded image with a palette of at most 256 colors, stored as a flat, row-major array of unsigned byte indices, such as a height map.
+ */
+public class IndexedBitmap {
+
+	public final int width;
+	public final int height;
+	public final byte[] indices;
+	public final int[] palette;
+
+	public IndexedBitmap(int width, int height, byte[] indices, int[] palette) {
+		if (indices.length < width * height) {
+			throw new IllegalArgumentException("Index array too small for " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.indices = indices;
+		this.palette = palette;
+	}
+
+	public int getIndex(int x, int y) {
+		return indices[y * width + x] & 0xFF;
+	}
+
+	/**
+	 * Load an indexed image stored next to a class, through the shared {@link AssetCache}. The returned bitmap is shared and must not be modified.
+	 *
+	 * @param owner the class used to locate the resource
+	 * @param name the name of the resource, relative to the package of the owner
+	 * @return the decoded bitmap
+	 */
+	public static IndexedBitmap load(Class<?> owner, String name) {
+		return AssetCache.getShared().getIndexedBitmap(owner, name);
+	}
+
+	/**
+	 * Convert an image data with an indexed palette of at most 8 bits into an indexed bitmap.
+	 *
+	 * @param data the image data
+	 * @return the converted bitmap
+	 */
+	public static IndexedBitmap fromImageData(ImageData data) {
+		if (data.palette.isDirect || data.depth > 8) {
+			throw new IllegalArgumentException("Not an indexed image of at most 8 bits: depth " + data.depth);
+		}
+		final int w = data.width;
+		final int h = data.height;
+		final byte[] indices = new byte[w * h];
+		final int[] row = new int[w];
+		for (int y = 0; y < h; y++) {
+			data.getPixels(0, y, w, row, 0);
+			for (int x = 0; x < w; x++) {
+				indices[y * w + x] = (byte) row[x];
+			}
+		}
+
+		final RGB[] colors = data.palette.getRGBs();
+		final int[] palette = new int[256];
+		for (int i = 0; i < palette.length && i < colors.length; i++) {
+			palette[i] = colors[i].red << 16 | colors[i].green << 8 | colors[i].blue;
+		}
+		return new IndexedBitmap(w, h, indices, palette);
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * An effect that computes 8-bit palette indices rather than colors.
+ * <p>
+ * A host that supports indexed frames calls {@link #renderIndices(byte[], long)} and applies the palette once, when the frame is presented, which moves a quarter of the bytes of a color frame. The other hosts call
+ * {@link #renderFrame(int[], long)}, which expands the indices itself. The palette may change from one frame to the next, which animates the effect for free (palette cycling).
+ */
+public interface IndexedEffect extends Effect {
+
+	/**
+	 * Advance the animation by one frame and render its palette indices. A {@link SteppedEffect} only renders its current state, its steps being run by the host before.
+	 *
+	 * @param indices the destination, width * height unsigned bytes. Its content on entry is undefined, so every index must be written.
+	 * @param frameIndex the number of frames rendered before this one
+	 */
+	void renderIndices(byte[] indices, long frameIndex);
+
+	/**
+	 * @return the 256 0xAARRGGBB colors of the frame rendered last. The array may be reused, copy it to keep it.
+	 */
+	int[] getPalette();
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * An effect that reacts to the mouse or to the keyboard. Coordinates are expressed in frame pixels and key codes are the toolkit independent constants declared below.
+ */
+public interface InteractiveEffect extends Effect {
+
+	int KEY_UP = 1;
+	int KEY_DOWN = 2;
+	int KEY_LEFT = 3;
+	int KEY_RIGHT = 4;
+	int KEY_PAGE_UP = 5;
+	int KEY_PAGE_DOWN = 6;
+	int KEY_HOME = 7;
+
+	default void mouseMove(int x, int y) {
+	}
+
+	default void mouseUp(int x, int y, int button) {
+	}
+
+	default void keyPressed(int keyCode) {
+	}
+
+	default void keyReleased(int keyCode) {
+	}
+}
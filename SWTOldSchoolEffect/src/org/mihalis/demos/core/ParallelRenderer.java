@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a frame in bands of rows and renders them in parallel on a {@link ForkJoinPool}. Idle workers steal the remaining bands, so uneven bands (the inside of a Mandelbrot set, for instance) are balanced.
+ * <p>
+ * The tasks are allocated once per number of rows and reused by the following frames. The kernel must only write the rows of its band and only read state that does not change during the frame: update the animation before calling
+ * {@link #render(Object, int, BandKernel)}.
+ * <p>
+ * The system property <code>demos.parallel=false</code> makes every renderer serial, to compare both paths, and <code>demos.parallel.band</code> changes the default band height.
+ */
+public class ParallelRenderer {
+
+	/**
+	 * Renders a band of rows
+	 *
+	 * @param <T> the type of the frame, int[] for colors or byte[] for palette indices
+	 */
+	@FunctionalInterface
+	public interface BandKernel<T> {
+
+		/**
+		 * @param frame the frame
+		 * @param from the first row of the band
+		 * @param to the row after the last one of the band
+		 */
+		void renderBand(T frame, int from, int to);
+	}
+
+	/**
+	 * Default number of rows per band
+	 */
+	public static final int DEFAULT_BAND_HEIGHT = 16;
+
+	private static final boolean PARALLEL = !"false".equals(System.getProperty("demos.parallel"));
+
+	private final ForkJoinPool pool;
+	private final Root root = new Root();
+	private int bandHeight;
+	private boolean parallel = PARALLEL;
+	private Band[] bands = new Band[0];
+	private int rows = -1;
+
+	// The frame being rendered
+	private Object frame;
+	private BandKernel<Object> kernel;
+
+	/**
+	 * Render on the common pool, with the default band height
+	 */
+	public ParallelRenderer() {
+		this(ForkJoinPool.commonPool(), Integer.getInteger("demos.parallel.band", DEFAULT_BAND_HEIGHT));
+	}
+
+	public ParallelRenderer(ForkJoinPool pool, int bandHeight) {
+		this.pool = pool;
+		setBandHeight(bandHeight);
+	}
+
+	/**
+	 * Render the rows 0 to <code>rows</code>, band by band. The call returns once all the bands are rendered.
+	 *
+	 * @param frame the frame, passed to the kernel
+	 * @param rows the number of rows the kernel iterates on, usually the height of the frame
+	 * @param kernel renders the bands
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void render(T frame, int rows, BandKernel<T> kernel) {
+		if (!parallel || rows <= bandHeight || pool.getParallelism() < 2) {
+			kernel.renderBand(frame, 0, rows);
+			return;
+		}
+		if (rows != this.rows) {
+			createBands(rows);
+		}
+		this.frame = frame;
+		this.kernel = (BandKernel<Object>) kernel;
+		try {
+			for (final Band band : bands) {
+				band.reinitialize();
+			}
+			root.reinitialize();
+			pool.invoke(root);
+		} finally {
+			this.frame = null;
+			this.kernel = null;
+		}
+	}
+
+	private void createBands(int rows) {
+		bands = new Band[(rows + bandHeight - 1) / bandHeight];
+		for (int i = 0; i < bands.length; i++) {
+			final int from = i * bandHeight;
+			bands[i] = new Band(from, Math.min(rows, from + bandHeight));
+		}
+		this.rows = rows;
+	}
+
+	public int getBandHeight() {
+		return bandHeight;
+	}
+
+	public void setBandHeight(int bandHeight) {
+		if (bandHeight < 1) {
+			throw new IllegalArgumentException("Invalid band height " + bandHeight);
+		}
+		this.bandHeight = bandHeight;
+		rows = -1;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * @param parallel <code>false</code> to render every band on the calling thread
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	private final class Root extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			ForkJoinTask.invokeAll(bands);
+		}
+	}
+
+	private final class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		Band(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			kernel.renderBand(frame, from, to);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * A fixed number of particles stored as primitive arrays, one per property, instead of one object per particle: the live particles are always the first ones of the arrays, so that they are moved by loops the JIT compiles to
+ * vector instructions, and neither spawning nor killing a particle allocates anything.
+ * <p>
+ * Killing a particle moves the last live particle into its slot, so a loop killing particles must not advance after a kill.
+ * <p>
+ * The particles are drawn all at once too: {@link #project} kills the dead particles and those out of the frame, and computes the pixels of the others, which {@link #plot} fills with the color of their particle.
+ */
+public class ParticleSystem {
+
+	public final float[] x, y, z;
+	public final float[] vx, vy, vz;
+	public final int[] color;
+	// The number of steps left, decremented at each move
+	public final int[] life;
+
+	private final int capacity;
+	private int count;
+	private float ax, ay, az;
+
+	// The offsets in the frame of the live particles, computed by the last projection
+	private final int[] offsets;
+	// The rectangle of the frame where the particles live, the whole frame until a clip is set
+	private boolean clipped;
+	private int clipX, clipY, clipWidth, clipHeight;
+
+	public ParticleSystem(int capacity) {
+		this.capacity = capacity;
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		vx = new float[capacity];
+		vy = new float[capacity];
+		vz = new float[capacity];
+		color = new int[capacity];
+		life = new int[capacity];
+		offsets = new int[capacity];
+	}
+
+	/**
+	 * @return the number of particles of an effect, which can be changed with <code>-Ddemos.particles=&lt;n&gt;</code>
+	 */
+	public static int getCapacity(int defaultCapacity) {
+		return Math.max(1, Integer.getInteger("demos.particles", defaultCapacity));
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of live particles, which are the first ones of the arrays
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * The acceleration added to the velocity of every particle at each move, such as the gravity
+	 */
+	public void setAcceleration(float ax, float ay, float az) {
+		this.ax = ax;
+		this.ay = ay;
+		this.az = az;
+	}
+
+	/**
+	 * @return the index of a new particle whose properties are all 0, or -1 when all the particles are alive
+	 */
+	public int spawn() {
+		if (count == capacity) {
+			return -1;
+		}
+		final int i = count++;
+		x[i] = y[i] = z[i] = 0;
+		vx[i] = vy[i] = vz[i] = 0;
+		color[i] = life[i] = 0;
+		return i;
+	}
+
+	/**
+	 * Kill a live particle, the last live particle takes its index
+	 */
+	public void kill(int i) {
+		final int last = --count;
+		x[i] = x[last];
+		y[i] = y[last];
+		z[i] = z[last];
+		vx[i] = vx[last];
+		vy[i] = vy[last];
+		vz[i] = vz[last];
+		color[i] = color[last];
+		life[i] = life[last];
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Kill the particles projected out of a rectangle of the frame, instead of those out of the frame. An empty rectangle kills all the particles.
+	 */
+	public void setClip(int x, int y, int width, int height) {
+		clipped = true;
+		clipX = x;
+		clipY = y;
+		clipWidth = width;
+		clipHeight = height;
+	}
+
+	/**
+	 * Project the live particles onto a frame, at <code>(x, y)</code> plus the center, divided by <code>z</code> before for a perspective. The particles whose life is below 0, which are behind the viewer or out of the clip are
+	 * killed, so the caller can spawn new ones.
+	 *
+	 * @return the number of particles left, whose offsets in the frame are the first ones of {@link #getOffsets()}
+	 */
+	public int project(int width, int height, float centerX, float centerY, boolean perspective) {
+		final int left = clipped ? Math.max(0, clipX) : 0, top = clipped ? Math.max(0, clipY) : 0;
+		final int right = clipped ? Math.min(width, clipX + Math.max(0, clipWidth)) : width, bottom = clipped ? Math.min(height, clipY + Math.max(0, clipHeight)) : height;
+		final float[] x = this.x, y = this.y, z = this.z;
+		final int[] life = this.life, offsets = this.offsets;
+		for (int i = 0; i < count;) {
+			float px = x[i], py = y[i];
+			if (perspective) {
+				if (z[i] <= 0) {
+					kill(i);
+					continue;
+				}
+				px /= z[i];
+				py /= z[i];
+			}
+			final int column = (int) (px + centerX), row = (int) (py + centerY);
+			if (life[i] < 0 || column < left || column >= right || row < top || row >= bottom) {
+				kill(i);
+				continue;
+			}
+			offsets[i] = row * width + column;
+			i++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the offsets in the frame of the live particles, computed by the last projection
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * Project the live particles onto a frame, then draw each of them as one pixel of its color
+	 *
+	 * @return the number of particles left
+	 * @see #project(int, int, float, float, boolean)
+	 */
+	public int plot(int[] frame, int width, int height, float centerX, float centerY, boolean perspective) {
+		final int n = project(width, height, centerX, centerY, perspective);
+		final int[] offsets = this.offsets, color = this.color;
+		for (int i = 0; i < n; i++) {
+			frame[offsets[i]] = color[i];
+		}
+		return n;
+	}
+
+	/**
+	 * Move all the live particles by their velocity, then accelerate them and decrement their life
+	 */
+	public void move() {
+		final int n = count;
+		add(x, vx, n);
+		add(y, vy, n);
+		add(z, vz, n);
+		if (ax != 0) {
+			add(vx, ax, n);
+		}
+		if (ay != 0) {
+			add(vy, ay, n);
+		}
+		if (az != 0) {
+			add(vz, az, n);
+		}
+		final int[] life = this.life;
+		for (int i = 0; i < n; i++) {
+			life[i]--;
+		}
+	}
+
+	private static void add(float[] values, float[] deltas, int n) {
+		for (int i = 0; i < n; i++) {
+			values[i] += deltas[i];
+		}
+	}
+
+	private static void add(float[] values, float delta, int n) {
+		for (int i = 0; i < n; i++) {
+			values[i] += delta;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * Bulk pixel operations: palette expansion, blending of two rows of colors and bilinear filtering.
+ * <p>
+ * Two implementations are available. The scalar one splits each color into its four channels. The packed one works on two channels at once, red and blue in one int, alpha and green in another, which halves the number of multiplications
+ * (a poor man's SIMD that works on any Java version). Both give exactly the same results. The packed implementation is the default, <code>-Ddemos.pixelops=scalar</code> selects the scalar one.
+ * <p>
+ * Weights are integers between 0 and 256, 256 standing for 1.
+ */
+public abstract class PixelOps {
+
+	private static final PixelOps SCALAR = new Scalar();
+	private static final PixelOps PACKED = new Packed();
+	private static final PixelOps DEFAULT = "scalar".equals(System.getProperty("demos.pixelops")) ? SCALAR : PACKED;
+
+	/**
+	 * @return the implementation selected for this JVM
+	 */
+	public static PixelOps get() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return the implementation with the given name, "scalar" or "packed"
+	 */
+	public static PixelOps get(String name) {
+		switch (name) {
+			case "scalar":
+				return SCALAR;
+			case "packed":
+				return PACKED;
+			default:
+				throw new IllegalArgumentException("Unknown pixel operations " + name);
+		}
+	}
+
+	public abstract String getName();
+
+	/**
+	 * Replace palette indices by their colors: <code>argb[i] = palette[indices[i]]</code>. Both arrays can be the same.
+	 */
+	public void expand(int[] palette, int[] indices, int[] argb, int offset, int length) {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			argb[i] = palette[indices[i]];
+		}
+	}
+
+	/**
+	 * Replace palette indices stored as unsigned bytes by their colors: <code>argb[i] = palette[indices[i] &amp; 0xFF]</code>
+	 */
+	public void expand(int[] palette, byte[] indices, int[] argb, int offset, int length) {
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			argb[i] = palette[indices[i] & 0xFF];
+		}
+	}
+
+	/**
+	 * Blend two rows of colors: <code>dst[i] = from[i] * (256 - t) / 256 + to[i] * t / 256</code>, channel by channel
+	 *
+	 * @param t the weight of the second color, between 0 and 256
+	 */
+	public abstract void mix(int[] from, int[] to, int t, int[] dst, int offset, int length);
+
+	/**
+	 * Bilinear filtering of a row of pixels, given their four neighbours and their position between them
+	 *
+	 * @param xWeights the horizontal position of each pixel between its west and east neighbours, between 0 and 256
+	 * @param yWeights the vertical position of each pixel between its north and south neighbours, between 0 and 256
+	 */
+	public abstract void bilinear(int[] nw, int[] ne, int[] sw, int[] se, int[] xWeights, int[] yWeights, int[] dst, int length);
+
+	/**
+	 * Blend two colors, both pairs of channels at once
+	 *
+	 * @param t the weight of the second color, between 0 and 256
+	 */
+	public static int mixPixel(int from, int to, int t) {
+		final int s = 256 - t;
+		final int rb = (from & 0xFF00FF) * s + (to & 0xFF00FF) * t >>> 8 & 0xFF00FF;
+		final int ag = (from >>> 8 & 0xFF00FF) * s + (to >>> 8 & 0xFF00FF) * t & 0xFF00FF00;
+		return ag | rb;
+	}
+
+	/**
+	 * Bilinear filtering of a pixel, both pairs of channels at once
+	 */
+	public static int bilinearPixel(int nw, int ne, int sw, int se, int xWeight, int yWeight) {
+		return mixPixel(mixPixel(nw, ne, xWeight), mixPixel(sw, se, xWeight), yWeight);
+	}
+
+	private static final class Scalar extends PixelOps {
+
+		@Override
+		public String getName() {
+			return "scalar";
+		}
+
+		private static int mix(int from, int to, int t) {
+			final int s = 256 - t;
+			final int a = (from >>> 24) * s + (to >>> 24) * t >> 8;
+			final int r = (from >> 16 & 0xFF) * s + (to >> 16 & 0xFF) * t >> 8;
+			final int g = (from >> 8 & 0xFF) * s + (to >> 8 & 0xFF) * t >> 8;
+			final int b = (from & 0xFF) * s + (to & 0xFF) * t >> 8;
+			return a << 24 | r << 16 | g << 8 | b;
+		}
+
+		@Override
+		public void mix(int[] from, int[] to, int t, int[] dst, int offset, int length) {
+			final int end = offset + length;
+			for (int i = offset; i < end; i++) {
+				dst[i] = mix(from[i], to[i], t);
+			}
+		}
+
+		@Override
+		public void bilinear(int[] nw, int[] ne, int[] sw, int[] se, int[] xWeights, int[] yWeights, int[] dst, int length) {
+			for (int i = 0; i < length; i++) {
+				final int x = xWeights[i];
+				dst[i] = mix(mix(nw[i], ne[i], x), mix(sw[i], se[i], x), yWeights[i]);
+			}
+		}
+	}
+
+	private static final class Packed extends PixelOps {
+
+		@Override
+		public String getName() {
+			return "packed";
+		}
+
+		@Override
+		public void mix(int[] from, int[] to, int t, int[] dst, int offset, int length) {
+			final int s = 256 - t;
+			final int end = offset + length;
+			for (int i = offset; i < end; i++) {
+				final int c1 = from[i], c2 = to[i];
+				final int rb = (c1 & 0xFF00FF) * s + (c2 & 0xFF00FF) * t >>> 8 & 0xFF00FF;
+				final int ag = (c1 >>> 8 & 0xFF00FF) * s + (c2 >>> 8 & 0xFF00FF) * t & 0xFF00FF00;
+				dst[i] = ag | rb;
+			}
+		}
+
+		@Override
+		public void bilinear(int[] nw, int[] ne, int[] sw, int[] se, int[] xWeights, int[] yWeights, int[] dst, int length) {
+			for (int i = 0; i < length; i++) {
+				dst[i] = bilinearPixel(nw[i], ne[i], sw[i], se[i], xWeights[i], yWeights[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.Arrays;
+
+/**
+ * Software replacements for the few GC primitives used by the effects. Every method works on a row-major 0xAARRGGBB frame of <code>width * height</code> pixels and clips against its bounds.
+ */
+public final class Raster {
+
+	private Raster() {
+	}
+
+	public static void fill(int[] argb, int width, int height, int color) {
+		Arrays.fill(argb, 0, width * height, color);
+	}
+
+	public static void plot(int[] argb, int width, int height, int x, int y, int color) {
+		if (x >= 0 && x < width && y >= 0 && y < height) {
+			argb[y * width + x] = color;
+		}
+	}
+
+	public static void plot(byte[] indices, int width, int height, int x, int y, int index) {
+		if (x >= 0 && x < width && y >= 0 && y < height) {
+			indices[y * width + x] = (byte) index;
+		}
+	}
+
+	public static void fillRect(int[] argb, int width, int height, int x, int y, int w, int h, int color) {
+		final int x0 = Math.max(0, x);
+		final int y0 = Math.max(0, y);
+		final int x1 = Math.min(width, x + w);
+		final int y1 = Math.min(height, y + h);
+		if (x0 >= x1) {
+			return;
+		}
+		for (int j = y0; j < y1; j++) {
+			Arrays.fill(argb, j * width + x0, j * width + x1, color);
+		}
+	}
+
+	/**
+	 * Blend a rectangle of a single color over the frame.
+	 *
+	 * @param alpha the opacity of the color, from 0 (transparent) to 255 (opaque)
+	 */
+	public static void blendRect(int[] argb, int width, int height, int x, int y, int w, int h, int color, int alpha) {
+		if (alpha <= 0) {
+			return;
+		}
+		if (alpha >= 255) {
+			fillRect(argb, width, height, x, y, w, h, color);
+			return;
+		}
+		final int x0 = Math.max(0, x);
+		final int y0 = Math.max(0, y);
+		final int x1 = Math.min(width, x + w);
+		final int y1 = Math.min(height, y + h);
+		final int inv = 255 - alpha;
+		final int cr = (color >> 16 & 0xFF) * alpha;
+		final int cg = (color >> 8 & 0xFF) * alpha;
+		final int cb = (color & 0xFF) * alpha;
+		for (int j = y0; j < y1; j++) {
+			int index = j * width + x0;
+			for (int i = x0; i < x1; i++) {
+				final int p = argb[index];
+				final int r = ((p >> 16 & 0xFF) * inv + cr) / 255;
+				final int g = ((p >> 8 & 0xFF) * inv + cg) / 255;
+				final int b = ((p & 0xFF) * inv + cb) / 255;
+				argb[index++] = r << 16 | g << 8 | b;
+			}
+		}
+	}
+
+	/**
+	 * Fill a polygon with the even-odd rule. A pixel is painted when its center lies inside the polygon.
+	 *
+	 * @param points the vertices, as x0, y0, x1, y1...
+	 */
+	public static void fillPolygon(int[] argb, int width, int height, int[] points, int color) {
+		final int count = points.length >> 1;
+		if (count < 3) {
+			return;
+		}
+		int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			minY = Math.min(minY, points[2 * i + 1]);
+			maxY = Math.max(maxY, points[2 * i + 1]);
+		}
+		minY = Math.max(minY, 0);
+		maxY = Math.min(maxY, height - 1);
+
+		final float[] crossings = new float[count];
+		for (int y = minY; y <= maxY; y++) {
+			final float cy = y + 0.5f;
+			int n = 0;
+			for (int i = 0; i < count; i++) {
+				final int j = (i + 1) % count;
+				final float ax = points[2 * i], ay = points[2 * i + 1];
+				final float bx = points[2 * j], by = points[2 * j + 1];
+				if (ay <= cy && cy < by || by <= cy && cy < ay) {
+					crossings[n++] = ax + (cy - ay) * (bx - ax) / (by - ay);
+				}
+			}
+			Arrays.sort(crossings, 0, n);
+			final int line = y * width;
+			for (int k = 0; k + 1 < n; k += 2) {
+				final int x0 = Math.max(0, (int) Math.ceil(crossings[k] - 0.5f));
+				final int x1 = Math.min(width, (int) Math.ceil(crossings[k + 1] - 0.5f));
+				if (x0 < x1) {
+					Arrays.fill(argb, line + x0, line + x1, color);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw a bitmap at the given position. Fully transparent pixels of the bitmap are skipped, the others are copied.
+	 */
+	public static void drawBitmap(int[] argb, int width, int height, Bitmap bitmap, int x, int y) {
+		final int x0 = Math.max(0, x);
+		final int y0 = Math.max(0, y);
+		final int x1 = Math.min(width, x + bitmap.width);
+		final int y1 = Math.min(height, y + bitmap.height);
+		for (int j = y0; j < y1; j++) {
+			int src = (j - y) * bitmap.width + x0 - x;
+			int dst = j * width + x0;
+			for (int i = x0; i < x1; i++) {
+				final int pixel = bitmap.pixels[src++];
+				if (pixel >>> 24 != 0) {
+					argb[dst] = pixel;
+				}
+				dst++;
+			}
+		}
+	}
+}
@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mihalis.demos.core.TripleBuffer.DAMAGE_HISTORY;
+
+import org.mihalis.demos.core.FrameProfiler.Phase;
+import org.mihalis.demos.core.TripleBuffer.Frame;
+
+/**
+ * Runs an effect on its own thread. The effect is only ever called from that thread: its frames are handed over through a {@link TripleBuffer}, and everything else (resize, input) is posted as a task that runs before the next frame.
+ * <p>
+ * With a positive interval, the effect runs at a fixed timestep of one interval, driven by a {@link FrameScheduler}. A {@link SteppedEffect} that falls behind is stepped several times and rendered once, up to the maximum catch-up; any other
+ * effect is rendered once per step and just drops the steps it is late for. Without interval, a frame is only rendered after a task has been posted, for instance a resize.
+ * <p>
+ * Resizes are debounced: while the size keeps changing, the effect keeps rendering at the previous size. Once it has been stable for the resize delay, {@link Effect#prepare(int, int)} builds the tables of the new size on a background thread,
+ * then the resize itself is posted to the render thread. If the preparation fails, its exception is thrown on the render thread, which stops as when the effect fails to render.
+ * <p>
+ * With a {@link ResolutionScaler}, the effect renders at a reduced size when it is too slow, and its frames are upscaled to the output size before being published. When the scale changes, the effect is prepared and resized the same
+ * way, and keeps rendering at the previous scale meanwhile.
+ * <p>
+ * A {@link DamageEffect} is rendered incrementally: the regions changed since the frame held by the back buffer are first copied from the latest published frame, then the effect only writes the regions it changes. The published frames
+ * carry their damage, so the host only has to convert and upload these regions.
+ */
+public class RenderLoop {
+
+	/**
+	 * Default maximum number of steps run before a render
+	 */
+	public static final int DEFAULT_MAX_CATCH_UP = 5;
+
+	/**
+	 * Default time the size must be stable before the effect is resized, in milliseconds
+	 */
+	public static final int DEFAULT_RESIZE_DELAY = 50;
+
+	// Shared by all the loops, it only runs Effect.prepare
+	private static final ScheduledExecutorService PREPARER = Executors.newSingleThreadScheduledExecutor(task -> {
+		final Thread thread = new Thread(task, "Prepare");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Effect effect;
+	private final int interval;
+	private final FrameScheduler scheduler;
+	private final TripleBuffer buffer = new TripleBuffer();
+	private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+	private Runnable frameListener;
+	private FrameProfiler profiler;
+	private ResolutionScaler scaler;
+	private boolean indexed = true;
+	private int resizeDelay = DEFAULT_RESIZE_DELAY;
+	private final AtomicInteger resizeGeneration = new AtomicInteger();
+	private Future<?> pendingResize;
+	private Thread thread;
+	private volatile boolean running;
+
+	// Only accessed from the render thread
+	private int width, height;
+	private int effectWidth, effectHeight;
+	private int[] scaledPixels = new int[0];
+	private byte[] scaledIndices = new byte[0];
+
+	// Damage of the latest frames of a DamageEffect, the latest first, and the number of consecutive frames whose damage is known
+	private final DirtyRegion[] recentDamage = new DirtyRegion[DAMAGE_HISTORY];
+	private int damageDepth;
+	private long resetIndex;
+	private Frame lastPublished;
+	private boolean renderRequested;
+	private long frameIndex;
+
+	/**
+	 * @param effect the effect to run
+	 * @param interval the duration of a simulation step in milliseconds
+	 */
+	public RenderLoop(Effect effect, int interval) {
+		this.effect = effect;
+		this.interval = interval;
+		scheduler = interval > 0 ? new FrameScheduler(TimeUnit.MILLISECONDS.toNanos(interval), effect instanceof SteppedEffect ? DEFAULT_MAX_CATCH_UP : 1) : null;
+		for (int i = 0; i < recentDamage.length; i++) {
+			recentDamage[i] = new DirtyRegion();
+		}
+	}
+
+	/**
+	 * Change the maximum number of steps run before a render when the effect is late. Only a {@link SteppedEffect} can catch up, other effects always drop the late steps. Call it before {@link #start(String, int, int)}.
+	 */
+	public void setMaxCatchUp(int maxCatchUp) {
+		if (scheduler != null && effect instanceof SteppedEffect) {
+			scheduler.setMaxCatchUp(maxCatchUp);
+		}
+	}
+
+	/**
+	 * @param frameListener called from the render thread each time a frame has been published
+	 */
+	public void setFrameListener(Runnable frameListener) {
+		this.frameListener = frameListener;
+	}
+
+	/**
+	 * @param profiler records the time and the allocations of the effect for each frame, or <code>null</code>. Call it before {@link #start(String, int, int)}.
+	 */
+	public void setProfiler(FrameProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @param indexed <code>true</code> (the default) to publish the palette indices of an {@link IndexedEffect} instead of expanding them into colors. Call it before {@link #start(String, int, int)}.
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+
+	/**
+	 * @param scaler adapts the size the effect renders at to its render time, or <code>null</code>. Call it before {@link #start(String, int, int)}.
+	 */
+	public void setResolutionScaler(ResolutionScaler scaler) {
+		this.scaler = scaler;
+	}
+
+	/**
+	 * @param resizeDelay the time the size must be stable before the effect is resized, in milliseconds. If it is not positive, the effect is resized before the next frame and without preparation.
+	 */
+	public void setResizeDelay(int resizeDelay) {
+		this.resizeDelay = resizeDelay;
+	}
+
+	/**
+	 * Start the render thread. The effect is initialized on that thread at the given size.
+	 */
+	public void start(String name, int width, int height) {
+		if (thread != null) {
+			throw new IllegalStateException("Render loop already started");
+		}
+		post(() -> {
+			this.width = width;
+			this.height = height;
+			effectWidth = scaleWidth(width);
+			effectHeight = scaleHeight(height);
+			effect.init(effectWidth, effectHeight);
+			resetIndex = frameIndex;
+		});
+		running = true;
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Resize the frames. Once the size has been stable for the resize delay, the effect is prepared in the background, then resized on the render thread. Only call it from a single thread.
+	 */
+	public void resize(int width, int height) {
+		final int generation = resizeGeneration.incrementAndGet();
+		if (pendingResize != null) {
+			pendingResize.cancel(false);
+			pendingResize = null;
+		}
+		if (resizeDelay <= 0) {
+			postResize(width, height);
+			return;
+		}
+		pendingResize = PREPARER.schedule(() -> prepare(generation, scaleWidth(width), scaleHeight(height), () -> postResize(width, height)), resizeDelay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Prepare the effect for a size on the preparing thread, then post the resize, unless the size has changed meanwhile
+	 */
+	private void prepare(int generation, int newWidth, int newHeight, Runnable resize) {
+		if (generation != resizeGeneration.get()) {
+			return;
+		}
+		try {
+			effect.prepare(newWidth, newHeight);
+		} catch (final RuntimeException e) {
+			post(() -> {
+				throw e;
+			});
+			return;
+		}
+		if (generation == resizeGeneration.get()) {
+			resize.run();
+		}
+	}
+
+	/**
+	 * The scaler has changed the scale: resize the effect as for a new size, without blocking the render thread while the tables are built
+	 */
+	private void rescale() {
+		if (resizeDelay <= 0) {
+			resizeEffect();
+			return;
+		}
+		final int generation = resizeGeneration.get();
+		final int newWidth = scaleWidth(width), newHeight = scaleHeight(height);
+		PREPARER.execute(() -> prepare(generation, newWidth, newHeight, () -> post(this::resizeEffect)));
+	}
+
+	private void postResize(int width, int height) {
+		post(() -> {
+			if (width != this.width || height != this.height) {
+				this.width = width;
+				this.height = height;
+				resetIndex = frameIndex;
+				resizeEffect();
+			}
+		});
+	}
+
+	private int scaleWidth(int width) {
+		return scaler != null ? scaler.scale(width) : width;
+	}
+
+	private int scaleHeight(int height) {
+		return scaler != null ? scaler.scale(height) : height;
+	}
+
+	private void resizeEffect() {
+		final int newWidth = scaleWidth(width), newHeight = scaleHeight(height);
+		if (newWidth != effectWidth || newHeight != effectHeight) {
+			effectWidth = newWidth;
+			effectHeight = newHeight;
+			effect.resize(newWidth, newHeight);
+			resetIndex = frameIndex;
+		}
+	}
+
+	/**
+	 * Convert a horizontal position in the output frames into a position in the frames of the effect, which differ when the resolution is scaled. Only call it from the render thread, for instance in a posted task.
+	 */
+	public int toEffectX(int x) {
+		return width == effectWidth ? x : x * effectWidth / width;
+	}
+
+	/**
+	 * Convert a vertical position in the output frames into a position in the frames of the effect. Only call it from the render thread.
+	 */
+	public int toEffectY(int y) {
+		return height == effectHeight ? y : y * effectHeight / height;
+	}
+
+	/**
+	 * Run a task on the render thread, before the next frame. Can be called from any thread.
+	 */
+	public void post(Runnable task) {
+		tasks.add(task);
+	}
+
+	/**
+	 * Take the latest rendered frame. Only call it from a single consumer thread.
+	 *
+	 * @return the latest frame, or <code>null</code> if no frame has been rendered since the previous call
+	 */
+	public Frame acquireFrame() {
+		return buffer.acquire();
+	}
+
+	/**
+	 * Stop the render thread, wait for it and dispose the effect
+	 */
+	public void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		resizeGeneration.incrementAndGet();
+		if (pendingResize != null) {
+			pendingResize.cancel(false);
+			pendingResize = null;
+		}
+		post(() -> {
+		});
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	public Effect getEffect() {
+		return effect;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the resolution scaler, or <code>null</code>
+	 */
+	public ResolutionScaler getResolutionScaler() {
+		return scaler;
+	}
+
+	/**
+	 * @return the scheduler with the step, skip and drop counters, or <code>null</code> without interval. Its counters are only consistent once the loop is stopped.
+	 */
+	public FrameScheduler getScheduler() {
+		return scheduler;
+	}
+
+	private void run() {
+		try {
+			if (scheduler != null) {
+				scheduler.reset(System.nanoTime());
+			}
+			while (running) {
+				int steps = 0;
+				if (scheduler != null) {
+					runTasksUntil(scheduler.getNextStepTime());
+					runPendingTasks();
+					steps = scheduler.advance(System.nanoTime());
+					renderRequested = steps > 0;
+				} else {
+					runTask(tasks.take());
+					runPendingTasks();
+				}
+
+				if (running && renderRequested && width > 0 && height > 0) {
+					if (effect instanceof SteppedEffect) {
+						final SteppedEffect stepped = (SteppedEffect) effect;
+						for (int i = 0; i < steps; i++) {
+							stepped.step();
+						}
+					}
+					renderFrame();
+				}
+			}
+		} catch (final InterruptedException e) {
+			// Stop
+		} finally {
+			effect.dispose();
+		}
+	}
+
+	private void runTasksUntil(long deadline) throws InterruptedException {
+		long remaining;
+		while (running && (remaining = deadline - System.nanoTime()) > 0) {
+			final Runnable task = tasks.poll(remaining, TimeUnit.NANOSECONDS);
+			if (task != null) {
+				task.run();
+			}
+		}
+	}
+
+	private void runPendingTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			runTask(task);
+		}
+	}
+
+	private void runTask(Runnable task) {
+		task.run();
+		renderRequested = true;
+	}
+
+	private void renderFrame() {
+		final Frame frame = buffer.getBackFrame();
+		final long previousIndex = frame.index;
+		final boolean previousValid = previousIndex >= resetIndex && !frame.indexed && frame.width == width && frame.height == height;
+		frame.index = frameIndex;
+		final long start = profiler != null ? profiler.begin() : 0;
+		final long allocationStart = profiler != null ? profiler.beginAllocation() : 0;
+		final long scalerStart = scaler != null ? System.nanoTime() : 0;
+		final boolean scaled = effectWidth != width || effectHeight != height;
+		if (indexed && effect instanceof IndexedEffect) {
+			final IndexedEffect indexedEffect = (IndexedEffect) effect;
+			frame.ensureIndexedSize(width, height);
+			if (scaled) {
+				if (scaledIndices.length != effectWidth * effectHeight) {
+					scaledIndices = new byte[effectWidth * effectHeight];
+				}
+				indexedEffect.renderIndices(scaledIndices, frameIndex++);
+				scaler.upscale(scaledIndices, effectWidth, effectHeight, frame.indices, width, height);
+			} else {
+				indexedEffect.renderIndices(frame.indices, frameIndex++);
+			}
+			System.arraycopy(indexedEffect.getPalette(), 0, frame.palette, 0, frame.palette.length);
+		} else {
+			frame.ensureSize(width, height);
+			int[] pixels = frame.pixels;
+			if (scaled) {
+				if (scaledPixels.length != effectWidth * effectHeight) {
+					scaledPixels = new int[effectWidth * effectHeight];
+				}
+				pixels = scaledPixels;
+			}
+			if (effect instanceof SteppedEffect) {
+				((SteppedEffect) effect).render(pixels, frameIndex++);
+			} else if (effect instanceof DamageEffect && !scaled) {
+				renderDamage((DamageEffect) effect, frame, previousValid ? previousIndex : -1);
+			} else {
+				effect.renderFrame(pixels, frameIndex++);
+			}
+			if (scaled) {
+				scaler.upscale(pixels, effectWidth, effectHeight, frame.pixels, width, height);
+			}
+		}
+		if (profiler != null) {
+			profiler.endAllocation(allocationStart);
+			profiler.end(Phase.KERNEL, start);
+		}
+		buffer.publish();
+		lastPublished = frame;
+		renderRequested = false;
+		if (frameListener != null) {
+			frameListener.run();
+		}
+		if (scaler != null && scaler.record(System.nanoTime() - scalerStart)) {
+			rescale();
+		}
+	}
+
+	/**
+	 * Render a frame of a damage effect, incrementally when the back frame can be brought up to date with the latest published frame
+	 *
+	 * @param previousIndex the index of the frame held by the back frame, or -1 if its content cannot be used
+	 */
+	private void renderDamage(DamageEffect damageEffect, Frame frame, long previousIndex) {
+		// Number of frames published since the back frame was rendered, whose changes have to be copied
+		final long missed = previousIndex < 0 ? Long.MAX_VALUE : frameIndex - previousIndex - 1;
+		final boolean full = missed > damageDepth;
+		for (int i = 0; !full && i < missed; i++) {
+			recentDamage[i].copy(lastPublished.pixels, frame.pixels, width);
+		}
+
+		final DirtyRegion damage = recentDamage[DAMAGE_HISTORY - 1];
+		damage.clear();
+		damageEffect.renderFrame(frame.pixels, frameIndex++, full, full ? null : damage);
+		if (full) {
+			// Everything has changed, the frames before are not needed anymore
+			damageDepth = 0;
+			damage.add(0, 0, width, height);
+		} else {
+			damage.clip(width, height);
+		}
+		System.arraycopy(recentDamage, 0, recentDamage, 1, DAMAGE_HISTORY - 1);
+		recentDamage[0] = damage;
+		damageDepth = Math.min(damageDepth + 1, DAMAGE_HISTORY);
+
+		// The changes since each of the previous frames
+		frame.damage[0].set(damage);
+		for (int i = 1; i < damageDepth; i++) {
+			frame.damage[i].set(frame.damage[i - 1]);
+			frame.damage[i].add(recentDamage[i]);
+		}
+		frame.damageDepth = damageDepth;
+	}
+}
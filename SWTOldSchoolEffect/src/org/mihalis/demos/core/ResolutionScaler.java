@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lowers the resolution an effect renders at when its frames take longer than a time budget, and raises it again once there is enough headroom. The frames rendered at a reduced resolution are upscaled to the output size, with the nearest
+ * pixel or with bilinear filtering (palette indices are always upscaled with the nearest pixel).
+ * <p>
+ * The scale moves between a few levels, from 1 down to a minimum. The average render time is measured over a window of frames: when it is over budget, the scale drops directly to the largest level expected to fit in the budget, the
+ * time being proportional to the number of pixels; when the next level up is expected to fit with a margin, the scale goes up one level. Changing the scale resizes the effect, so it only happens once per window, and the scale does not
+ * go up during a few windows after it went down, which would otherwise make it oscillate between two levels.
+ * <p>
+ * It is enabled from the command line with <code>-Ddemos.scale=auto</code>, or with a fixed scale such as <code>-Ddemos.scale=0.5</code>. <code>-Ddemos.scale.budget</code> sets the budget in milliseconds (16 by default),
+ * <code>-Ddemos.scale.min</code> the minimum scale (0.25 by default) and <code>-Ddemos.scale.filter</code> the filter, <code>bilinear</code> (the default) or <code>nearest</code>.
+ */
+public class ResolutionScaler {
+
+	/**
+	 * Upscaling filter
+	 */
+	public enum Filter {
+		NEAREST, BILINEAR
+	}
+
+	/**
+	 * Default budget of a frame, in milliseconds
+	 */
+	public static final int DEFAULT_BUDGET = 16;
+
+	/**
+	 * Default number of frames the render time is averaged on
+	 */
+	public static final int DEFAULT_WINDOW = 20;
+
+	// Number of windows the scale is held after going down
+	private static final int HOLD_WINDOWS = 8;
+
+	// The scales, in sixteenths of the output size
+	private static final int[] LEVELS = { 16, 14, 12, 10, 8, 6, 4 };
+
+	private final long budgetNanos;
+	private final Filter filter;
+	private final boolean adaptive;
+	private int window = DEFAULT_WINDOW;
+	private int maxLevel = LEVELS.length - 1;
+	private volatile int level;
+	private long total;
+	private int count;
+	private int hold;
+	private int changes;
+
+	// Upscaling maps, built for the current sizes
+	private int mapSourceWidth, mapWidth, mapSourceHeight, mapHeight;
+	private int[] nearestX, nearestY, x0, x1, xWeights, y0, y1, yWeights;
+	private int[] upper = new int[0], lower = new int[0], mixed = new int[0];
+
+	/**
+	 * Create an adaptive scaler
+	 *
+	 * @param budgetNanos the time budget of a frame, in nanoseconds
+	 * @param filter the upscaling filter
+	 */
+	public ResolutionScaler(long budgetNanos, Filter filter) {
+		this(budgetNanos, filter, true);
+	}
+
+	private ResolutionScaler(long budgetNanos, Filter filter, boolean adaptive) {
+		this.budgetNanos = budgetNanos;
+		this.filter = filter;
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Create a scaler that always renders at the same scale
+	 *
+	 * @param scale the scale, rounded to the nearest level
+	 * @param filter the upscaling filter
+	 */
+	public static ResolutionScaler fixed(float scale, Filter filter) {
+		final ResolutionScaler scaler = new ResolutionScaler(0, filter, false);
+		scaler.level = nearestLevel(scale);
+		return scaler;
+	}
+
+	/**
+	 * @return the scaler configured by the system properties, or <code>null</code> if <code>demos.scale</code> is not set
+	 */
+	public static ResolutionScaler fromProperties() {
+		final String scale = System.getProperty("demos.scale");
+		if (scale == null || scale.isEmpty()) {
+			return null;
+		}
+		final Filter filter = "nearest".equalsIgnoreCase(System.getProperty("demos.scale.filter")) ? Filter.NEAREST : Filter.BILINEAR;
+		if (!"auto".equalsIgnoreCase(scale)) {
+			return fixed(Float.parseFloat(scale), filter);
+		}
+		final ResolutionScaler scaler = new ResolutionScaler(TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("demos.scale.budget", DEFAULT_BUDGET)), filter);
+		final String minScale = System.getProperty("demos.scale.min");
+		if (minScale != null) {
+			scaler.setMinScale(Float.parseFloat(minScale));
+		}
+		return scaler;
+	}
+
+	private static int nearestLevel(float scale) {
+		int nearest = 0;
+		for (int i = 1; i < LEVELS.length; i++) {
+			if (Math.abs(LEVELS[i] / 16f - scale) < Math.abs(LEVELS[nearest] / 16f - scale)) {
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * @param minScale the lowest scale the effect can be rendered at, rounded to the nearest level
+	 */
+	public void setMinScale(float minScale) {
+		maxLevel = nearestLevel(minScale);
+	}
+
+	/**
+	 * @param window the number of frames the render time is averaged on
+	 */
+	public void setWindow(int window) {
+		this.window = Math.max(1, window);
+	}
+
+	/**
+	 * Record the time spent rendering a frame, and update the scale at the end of each window
+	 *
+	 * @return <code>true</code> if the scale has changed
+	 */
+	public boolean record(long nanos) {
+		if (!adaptive) {
+			return false;
+		}
+		total += nanos;
+		if (++count < window) {
+			return false;
+		}
+		final long average = total / count;
+		total = 0;
+		count = 0;
+
+		int next = level;
+		if (average > budgetNanos) {
+			while (next < maxLevel && predict(average, next) > budgetNanos * 9 / 10) {
+				next++;
+			}
+			if (next != level) {
+				hold = HOLD_WINDOWS;
+			}
+		} else if (hold > 0) {
+			hold--;
+		} else if (next > 0 && predict(average, next - 1) < budgetNanos * 3 / 4) {
+			next--;
+		}
+		if (next == level) {
+			return false;
+		}
+		level = next;
+		changes++;
+		return true;
+	}
+
+	/**
+	 * @return the expected render time at another level, proportional to the number of pixels
+	 */
+	private long predict(long average, int target) {
+		final long current = LEVELS[level], scaled = LEVELS[target];
+		return average * scaled * scaled / (current * current);
+	}
+
+	/**
+	 * @return the current scale
+	 */
+	public float getScale() {
+		return LEVELS[level] / 16f;
+	}
+
+	/**
+	 * @return the size an output size is rendered at with the current scale. Can be called from any thread.
+	 */
+	public int scale(int size) {
+		return Math.max(1, size * LEVELS[level] / 16);
+	}
+
+	/**
+	 * @return the number of times the scale has changed
+	 */
+	public int getChanges() {
+		return changes;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Upscale a frame of colors
+	 *
+	 * @param src the frame rendered at the reduced size
+	 * @param srcWidth the reduced width
+	 * @param srcHeight the reduced height
+	 * @param dst the frame at the output size
+	 * @param width the output width
+	 * @param height the output height
+	 */
+	public void upscale(int[] src, int srcWidth, int srcHeight, int[] dst, int width, int height) {
+		buildMaps(srcWidth, srcHeight, width, height);
+		if (filter == Filter.NEAREST) {
+			for (int y = 0; y < height; y++) {
+				final int index = y * width;
+				if (y > 0 && nearestY[y] == nearestY[y - 1]) {
+					System.arraycopy(dst, index - width, dst, index, width);
+					continue;
+				}
+				final int from = nearestY[y] * srcWidth;
+				for (int x = 0; x < width; x++) {
+					dst[index + x] = src[from + nearestX[x]];
+				}
+			}
+			return;
+		}
+
+		// Each source row is filtered horizontally once, then two rows are blended for each output row
+		int upperRow = -1, lowerRow = -1;
+		final PixelOps pixelOps = PixelOps.get();
+		for (int y = 0; y < height; y++) {
+			if (y0[y] != upperRow) {
+				if (y0[y] == lowerRow) {
+					final int[] swap = upper;
+					upper = lower;
+					lower = swap;
+					lowerRow = -1;
+				} else {
+					expandRow(src, y0[y] * srcWidth, upper, width);
+				}
+				upperRow = y0[y];
+			}
+			final int weight = yWeights[y];
+			if (weight == 0) {
+				System.arraycopy(upper, 0, dst, y * width, width);
+				continue;
+			}
+			if (y1[y] != lowerRow) {
+				expandRow(src, y1[y] * srcWidth, lower, width);
+				lowerRow = y1[y];
+			}
+			pixelOps.mix(upper, lower, weight, mixed, 0, width);
+			System.arraycopy(mixed, 0, dst, y * width, width);
+		}
+	}
+
+	private void expandRow(int[] src, int offset, int[] row, int width) {
+		for (int x = 0; x < width; x++) {
+			row[x] = PixelOps.mixPixel(src[offset + x0[x]], src[offset + x1[x]], xWeights[x]);
+		}
+	}
+
+	/**
+	 * Upscale a frame of palette indices, with the nearest pixel
+	 */
+	public void upscale(byte[] src, int srcWidth, int srcHeight, byte[] dst, int width, int height) {
+		buildMaps(srcWidth, srcHeight, width, height);
+		for (int y = 0; y < height; y++) {
+			final int index = y * width;
+			if (y > 0 && nearestY[y] == nearestY[y - 1]) {
+				System.arraycopy(dst, index - width, dst, index, width);
+				continue;
+			}
+			final int from = nearestY[y] * srcWidth;
+			for (int x = 0; x < width; x++) {
+				dst[index + x] = src[from + nearestX[x]];
+			}
+		}
+	}
+
+	private void buildMaps(int srcWidth, int srcHeight, int width, int height) {
+		if (srcWidth == mapSourceWidth && width == mapWidth && srcHeight == mapSourceHeight && height == mapHeight) {
+			return;
+		}
+		nearestX = new int[width];
+		x0 = new int[width];
+		x1 = new int[width];
+		xWeights = new int[width];
+		buildMap(srcWidth, width, nearestX, x0, x1, xWeights);
+		nearestY = new int[height];
+		y0 = new int[height];
+		y1 = new int[height];
+		yWeights = new int[height];
+		buildMap(srcHeight, height, nearestY, y0, y1, yWeights);
+		if (upper.length != width) {
+			upper = new int[width];
+			lower = new int[width];
+			mixed = new int[width];
+		}
+		mapSourceWidth = srcWidth;
+		mapWidth = width;
+		mapSourceHeight = srcHeight;
+		mapHeight = height;
+	}
+
+	private static void buildMap(int srcSize, int size, int[] nearest, int[] first, int[] second, int[] weights) {
+		for (int i = 0; i < size; i++) {
+			nearest[i] = (int) Math.min(srcSize - 1, (2L * i + 1) * srcSize / (2L * size));
+
+			// Centre of the output pixel in the source, in 1/256 of pixel
+			final long position = ((2L * i + 1) * srcSize << 8) / (2L * size) - 128;
+			final int clamped = (int) Math.max(0, Math.min((long) (srcSize - 1) << 8, position));
+			first[i] = clamped >> 8;
+			second[i] = Math.min(first[i] + 1, srcSize - 1);
+			weights[i] = clamped & 0xFF;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "scale %.3f, %d changes, %s filter", getScale(), changes, filter.name().toLowerCase(Locale.ROOT));
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * A rectangle of a bitmap drawn over frames, or over any buffer of packed pixels. Its transparent pixels, fully transparent in the bitmap or of the key color, are skipped; the others are copied, or added to or subtracted from the
+ * pixels below, each channel saturating at 255 or 0.
+ * <p>
+ * The opaque pixels of each row are found once, as runs, so an unscaled copy is a few array copies per row. Every draw is clipped against the bounds of the buffer.
+ */
+public class Sprite {
+
+	/**
+	 * How the pixels of the sprite are combined with the pixels below
+	 */
+	public enum Blend {
+		COPY, ADD, SUBTRACT
+	}
+
+	/** No key color, only the fully transparent pixels of the bitmap are skipped */
+	public static final int NO_KEY = -1;
+
+	public final int width, height;
+
+	// The pixels, opaque with an alpha of 255 or transparent with an alpha of 0
+	private final int[] pixels;
+
+	// The opaque runs of the row y are the runs firstRun[y] to firstRun[y + 1] - 1
+	private final int[] firstRun, runStart, runLength;
+
+	public Sprite(Bitmap bitmap, int key) {
+		this(bitmap, 0, 0, bitmap.width, bitmap.height, key);
+	}
+
+	/**
+	 * @param key the RGB color of the transparent pixels, or {@link #NO_KEY}
+	 */
+	public Sprite(Bitmap bitmap, int x, int y, int width, int height, int key) {
+		this.width = width;
+		this.height = height;
+		pixels = new int[width * height];
+		firstRun = new int[height + 1];
+		int runs = 0;
+		for (int j = 0; j < height; j++) {
+			boolean opaque = false;
+			for (int i = 0; i < width; i++) {
+				final int pixel = bitmap.getPixel(x + i, y + j);
+				if (pixel >>> 24 != 0 && (key == NO_KEY || (pixel & 0xFFFFFF) != key)) {
+					pixels[j * width + i] = pixel | 0xFF000000;
+					if (!opaque) {
+						runs++;
+					}
+					opaque = true;
+				} else {
+					pixels[j * width + i] = pixel & 0xFFFFFF;
+					opaque = false;
+				}
+			}
+		}
+		runStart = new int[runs];
+		runLength = new int[runs];
+		int run = 0;
+		for (int j = 0; j < height; j++) {
+			firstRun[j] = run;
+			for (int i = 0; i < width; i++) {
+				if (pixels[j * width + i] >>> 24 != 0) {
+					if (i == 0 || pixels[j * width + i - 1] >>> 24 == 0) {
+						runStart[run++] = i;
+					}
+					runLength[run - 1]++;
+				}
+			}
+		}
+		firstRun[height] = run;
+	}
+
+	/**
+	 * Draw the sprite with its top left corner at x, y
+	 */
+	public void draw(int[] dst, int dstWidth, int dstHeight, int x, int y, Blend blend) {
+		final int y0 = Math.max(0, y), y1 = Math.min(dstHeight, y + height);
+		final int left = Math.max(0, -x), right = Math.min(width, dstWidth - x);
+		if (left >= right) {
+			return;
+		}
+		for (int j = y0; j < y1; j++) {
+			final int row = (j - y) * width;
+			final int line = j * dstWidth + x;
+			for (int run = firstRun[j - y]; run < firstRun[j - y + 1]; run++) {
+				final int from = Math.max(left, runStart[run]), to = Math.min(right, runStart[run] + runLength[run]);
+				if (from >= to) {
+					continue;
+				}
+				switch (blend) {
+					case COPY:
+						System.arraycopy(pixels, row + from, dst, line + from, to - from);
+						break;
+					case ADD:
+						for (int i = from; i < to; i++) {
+							dst[line + i] = add(dst[line + i], pixels[row + i]);
+						}
+						break;
+					default:
+						for (int i = from; i < to; i++) {
+							dst[line + i] = subtract(dst[line + i], pixels[row + i]);
+						}
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw the sprite scaled to a rectangle of the buffer: the pixel x + i, y + j reads the pixel <code>(u + i * du) &gt;&gt; 16, (v + j * dv) &gt;&gt; 16</code> of the sprite.
+	 *
+	 * @param u the column of the sprite read at x, in 16.16 fixed point
+	 * @param v the row of the sprite read at y, in 16.16 fixed point
+	 * @param du the step of the column of the sprite from one pixel to the next, in 16.16 fixed point
+	 * @param dv the step of the row of the sprite from one pixel to the next, in 16.16 fixed point
+	 */
+	public void drawScaled(int[] dst, int dstWidth, int dstHeight, int x, int y, int w, int h, int u, int v, int du, int dv, Blend blend) {
+		final int x0 = Math.max(0, x), x1 = Math.min(dstWidth, x + w);
+		final int y0 = Math.max(0, y), y1 = Math.min(dstHeight, y + h);
+		if (x0 >= x1) {
+			return;
+		}
+		final int[] pixels = this.pixels;
+		final int u0 = u + (x0 - x) * du;
+		for (int j = y0; j < y1; j++) {
+			final int row = (v + (j - y) * dv >> 16) * width;
+			int index = j * dstWidth + x0;
+			int s = u0;
+			for (int i = x0; i < x1; i++, index++, s += du) {
+				final int pixel = pixels[row + (s >> 16)];
+				if (pixel >>> 24 == 0) {
+					continue;
+				}
+				switch (blend) {
+					case COPY:
+						dst[index] = pixel;
+						break;
+					case ADD:
+						dst[index] = add(dst[index], pixel);
+						break;
+					default:
+						dst[index] = subtract(dst[index], pixel);
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draw the whole sprite scaled to a rectangle of the buffer
+	 */
+	public void drawScaled(int[] dst, int dstWidth, int dstHeight, int x, int y, int w, int h, Blend blend) {
+		if (w > 0 && h > 0) {
+			drawScaled(dst, dstWidth, dstHeight, x, y, w, h, 0, 0, (width << 16) / w, (height << 16) / h, blend);
+		}
+	}
+
+	/**
+	 * @return the sum of the color channels of two pixels, each one saturating at 255. The alpha of the first pixel is kept.
+	 */
+	public static int add(int pixel, int added) {
+		// The sums of the low 7 bits of each channel, the carries out of each channel are rebuilt from the high bits
+		final int low = (pixel & 0x7F7F7F) + (added & 0x7F7F7F);
+		final int carries = (pixel & added | (pixel ^ added) & low) & 0x808080;
+		final int sum = low & 0x7F7F7F | (low ^ pixel ^ added) & 0x808080;
+		return pixel & 0xFF000000 | sum | (carries >>> 7) * 0xFF;
+	}
+
+	/**
+	 * @return the difference of the color channels of two pixels, each one saturating at 0. The alpha of the first pixel is kept.
+	 */
+	public static int subtract(int pixel, int subtracted) {
+		return pixel & 0xFF000000 | ~add(~pixel, subtracted) & 0xFFFFFF;
+	}
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+/**
+ * An effect whose simulation can be advanced without being rendered.
+ * <p>
+ * When the host runs late, {@link #step()} is called several times in a row and only the last state is rendered, so the animation keeps its speed and only the expensive render is skipped. Hosts that do not care about time just call
+ * {@link #renderFrame(int[], long)}, which steps once then renders.
+ */
+public interface SteppedEffect extends Effect {
+
+	/**
+	 * Advance the simulation by one fixed step, without touching any frame.
+	 */
+	void step();
+
+	/**
+	 * Render the current state of the simulation.
+	 *
+	 * @param argb the destination, width * height pixels. Its content on entry is undefined, so every pixel must be written.
+	 * @param frameIndex the number of frames rendered before this one
+	 */
+	void render(int[] argb, long frameIndex);
+
+	@Override
+	default void renderFrame(int[] argb, long frameIndex) {
+		step();
+		render(argb, frameIndex);
+	}
+}
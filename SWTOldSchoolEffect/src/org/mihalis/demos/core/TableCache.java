@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the lookup tables that depend on the size of the frames (distances, angles, distortions...), so that going back to a size that has already been used does not compute them again.
+ * <p>
+ * A table is identified by a name, which must include any parameter it depends on, and by the size of the frames. It is built once even when several threads ask for it at the same time: the other threads wait for the first one. This is
+ * what lets {@link Effect#prepare(int, int)} build the tables of the next size in the background while the effect keeps rendering at the previous size.
+ * <p>
+ * The cache is bounded by the memory of the tables, estimated from their arrays: when it is full, the least recently used tables are evicted. Its capacity can be set in megabytes with the system property
+ * <code>demos.tables.capacity</code>. The returned tables are shared: they must never be modified.
+ * <p>
+ * With a {@link TableStore}, a table that is not in memory is first read back from its file, and written to it once built.
+ */
+public class TableCache {
+
+	/**
+	 * Default capacity, in bytes
+	 */
+	public static final long DEFAULT_CAPACITY = 128L << 20;
+
+	private static final TableCache SHARED = new TableCache(Long.getLong("demos.tables.capacity", DEFAULT_CAPACITY >> 20) << 20, TableStore.fromProperties());
+
+	private final long capacity;
+	private final TableStore store;
+
+	// Tables being built or built, from the least to the most recently used
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long size;
+	private long hits, misses, evictions;
+
+	private static final class Entry {
+		final FutureTask<Object> task;
+		long size = -1;
+
+		Entry(FutureTask<Object> task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * @param capacity the maximum memory of the tables, in bytes
+	 */
+	public TableCache(long capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * @param capacity the maximum memory of the tables, in bytes
+	 * @param store persists the tables across starts, or <code>null</code>
+	 */
+	public TableCache(long capacity, TableStore store) {
+		this.capacity = capacity;
+		this.store = store;
+	}
+
+	/**
+	 * @return the cache shared by all the effects
+	 */
+	public static TableCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Get a table, building it if needed
+	 *
+	 * @param name the name of the table and of its parameters
+	 * @param width the width of the frames
+	 * @param height the height of the frames
+	 * @param builder builds the table, an array or an array of arrays
+	 * @return the table
+	 */
+	public <T> T get(String name, int width, int height, Supplier<T> builder) {
+		return get(name, 0, width, height, builder);
+	}
+
+	/**
+	 * Get a table, building it if needed
+	 *
+	 * @param name the name of the table and of its parameters
+	 * @param version the version of the builder, to increase when it changes so that the stored tables are built again
+	 * @param width the width of the frames
+	 * @param height the height of the frames
+	 * @param builder builds the table, an array or an array of arrays
+	 * @return the table
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String name, int version, int width, int height, Supplier<T> builder) {
+		final String key = name + "@" + width + "x" + height;
+		final Entry entry;
+		final boolean owner;
+		synchronized (this) {
+			final Entry existing = entries.get(key);
+			if (existing != null) {
+				hits++;
+				entry = existing;
+				owner = false;
+			} else {
+				misses++;
+				entry = new Entry(new FutureTask<>(() -> load(key, version, builder)));
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			entry.task.run();
+		}
+		final T table;
+		try {
+			table = (T) entry.task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building " + key, e);
+		} catch (final ExecutionException e) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entries.remove(key);
+				}
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException("Unable to build " + key, cause);
+		}
+
+		if (owner) {
+			synchronized (this) {
+				entry.size = sizeOf(table);
+				if (entries.get(key) == entry) {
+					size += entry.size;
+					evict(entry);
+				}
+			}
+		}
+		return table;
+	}
+
+	private Object load(String key, int version, Supplier<?> builder) {
+		if (store == null) {
+			return builder.get();
+		}
+		Object table = store.read(key, version);
+		if (table == null) {
+			table = builder.get();
+			store.write(key, version, table);
+		}
+		return table;
+	}
+
+	private void evict(Entry keep) {
+		final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (size > capacity && iterator.hasNext()) {
+			final Entry entry = iterator.next().getValue();
+			if (entry == keep || entry.size < 0) {
+				// Being built
+				continue;
+			}
+			size -= entry.size;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @return an estimation of the memory used by an array, in bytes
+	 */
+	private static long sizeOf(Object table) {
+		if (table == null || !table.getClass().isArray()) {
+			return 16;
+		}
+		final int length = Array.getLength(table);
+		final Class<?> type = table.getClass().getComponentType();
+		if (!type.isPrimitive()) {
+			long size = 16 + 4L * length;
+			for (int i = 0; i < length; i++) {
+				size += sizeOf(Array.get(table, i));
+			}
+			return size;
+		}
+		if (type == long.class || type == double.class) {
+			return 16 + 8L * length;
+		}
+		if (type == int.class || type == float.class) {
+			return 16 + 4L * length;
+		}
+		if (type == short.class || type == char.class) {
+			return 16 + 2L * length;
+		}
+		return 16 + length;
+	}
+
+	/**
+	 * Forget every table
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the store of the tables, or <code>null</code>
+	 */
+	public TableStore getStore() {
+		return store;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the memory used by the tables, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d tables, %d KB of %d KB, %d hits, %d misses, %d evictions", entries.size(), size >> 10, capacity >> 10, hits, misses, evictions);
+	}
+}
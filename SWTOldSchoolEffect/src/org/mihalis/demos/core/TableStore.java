@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists the tables of the {@link TableCache} in a directory, so that a table built once is read back on the following starts instead of being computed again. The elements are read by chunks straight into the arrays, and the file
+ * is closed once read: it is not mapped, so it can be replaced at any time, even on Windows.
+ * <p>
+ * A table is an array of ints or bytes, or a rectangular array of such arrays with any number of dimensions. Each table is stored in its own file, in the byte order of the machine:
+ *
+ * <pre>
+ * int magic, int format version, int table version, int key length, key in UTF-8, padding to 4 bytes
+ * int element size (1 or 4), int rank, rank * int dimensions, elements
+ * </pre>
+ *
+ * A file whose magic, format version, table version, key or size does not match is ignored, and replaced once the table has been built again. The table version must be increased when the builder of a table changes. The files are written
+ * to a temporary file first, then renamed, so a file is never read half written.
+ * <p>
+ * The store is enabled by setting the directory in the system property <code>demos.tables.dir</code>.
+ */
+public class TableStore {
+
+	/**
+	 * Version of the file format
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final int MAGIC = 0x4F535442;
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private static final Logger LOGGER = Logger.getLogger(TableStore.class.getName());
+
+	private final Path directory;
+	private int reads, writes;
+
+	/**
+	 * @param directory the directory of the files, created if needed
+	 */
+	public TableStore(File directory) {
+		this.directory = directory.toPath();
+	}
+
+	/**
+	 * @return the store of the directory set in the system property <code>demos.tables.dir</code>, or <code>null</code> if it is not set
+	 */
+	public static TableStore fromProperties() {
+		final String directory = System.getProperty("demos.tables.dir");
+		return directory == null || directory.isEmpty() ? null : new TableStore(new File(directory));
+	}
+
+	/**
+	 * Read a table back from its file
+	 *
+	 * @param key the key of the table, name and size
+	 * @param version the version of the builder of the table
+	 * @return the table, or <code>null</code> if there is no up-to-date file for it
+	 */
+	public Object read(String key, int version) {
+		final Path file = getFile(key);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final Object table = decode(channel, key, version);
+			if (table != null) {
+				synchronized (this) {
+					reads++;
+				}
+			}
+			return table;
+		} catch (final IOException | RuntimeException e) {
+			// Unreadable or corrupted, the table will be built again
+			return null;
+		}
+	}
+
+	private static Object decode(FileChannel channel, String key, int version) throws IOException {
+		final byte[] expectedKey = key.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer header = ByteBuffer.allocate(align(16 + expectedKey.length) + 8).order(ByteOrder.nativeOrder());
+		if (!readFully(channel, header)) {
+			return null;
+		}
+		header.flip();
+		if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION || header.getInt() != version || header.getInt() != expectedKey.length) {
+			return null;
+		}
+		final byte[] storedKey = new byte[expectedKey.length];
+		header.get(storedKey);
+		if (!Arrays.equals(storedKey, expectedKey)) {
+			return null;
+		}
+		header.position(align(header.position()));
+
+		final int elementSize = header.getInt();
+		final int rank = header.getInt();
+		if (elementSize != 1 && elementSize != 4 || rank < 1 || rank > 8) {
+			return null;
+		}
+		final ByteBuffer dimensionBuffer = ByteBuffer.allocate(4 * rank).order(ByteOrder.nativeOrder());
+		if (!readFully(channel, dimensionBuffer)) {
+			return null;
+		}
+		dimensionBuffer.flip();
+		final int[] dimensions = new int[rank];
+		long elements = 1;
+		for (int i = 0; i < rank; i++) {
+			dimensions[i] = dimensionBuffer.getInt();
+			if (dimensions[i] < 0) {
+				return null;
+			}
+			elements *= dimensions[i];
+		}
+		if (channel.size() - channel.position() != elements * elementSize) {
+			return null;
+		}
+
+		final Object table = Array.newInstance(elementSize == 4 ? int.class : byte.class, dimensions);
+		final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+		chunk.limit(0);
+		readElements(channel, chunk, table, rank);
+		return table;
+	}
+
+	private static void readElements(FileChannel channel, ByteBuffer chunk, Object array, int rank) throws IOException {
+		if (rank > 1) {
+			for (final Object child : (Object[]) array) {
+				readElements(channel, chunk, child, rank - 1);
+			}
+			return;
+		}
+		if (array instanceof int[]) {
+			final int[] values = (int[]) array;
+			int offset = 0;
+			while (offset < values.length) {
+				if (chunk.remaining() < 4) {
+					fill(channel, chunk);
+				}
+				final int count = Math.min(values.length - offset, chunk.remaining() / 4);
+				chunk.asIntBuffer().get(values, offset, count);
+				chunk.position(chunk.position() + count * 4);
+				offset += count;
+			}
+		} else {
+			final byte[] values = (byte[]) array;
+			int offset = 0;
+			while (offset < values.length) {
+				if (!chunk.hasRemaining()) {
+					fill(channel, chunk);
+				}
+				final int count = Math.min(values.length - offset, chunk.remaining());
+				chunk.get(values, offset, count);
+				offset += count;
+			}
+		}
+	}
+
+	/**
+	 * Read the next bytes of the file after the ones left in the chunk
+	 */
+	private static void fill(FileChannel channel, ByteBuffer chunk) throws IOException {
+		final int left = chunk.remaining();
+		chunk.compact();
+		readFully(channel, chunk);
+		chunk.flip();
+		if (chunk.remaining() == left) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if the end of the file is reached before the buffer is full
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write a table to its file. Tables that are not rectangular arrays of ints or bytes are not stored.
+	 *
+	 * @param key the key of the table, name and size
+	 * @param version the version of the builder of the table
+	 * @param table the table
+	 */
+	public void write(String key, int version, Object table) {
+		final int[] dimensions = getDimensions(table);
+		if (dimensions == null) {
+			return;
+		}
+		final int elementSize = getLeafType(table, dimensions.length) == int.class ? 4 : 1;
+		final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer header = ByteBuffer.allocate(align(16 + keyBytes.length) + 8 + 4 * dimensions.length).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(version).putInt(keyBytes.length).put(keyBytes);
+		header.position(align(header.position()));
+		header.putInt(elementSize).putInt(dimensions.length);
+		for (final int dimension : dimensions) {
+			header.putInt(dimension);
+		}
+		header.flip();
+
+		final Path file = getFile(key);
+		Path temporary = null;
+		try {
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				writeFully(channel, header);
+				final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+				writeElements(channel, chunk, table, dimensions.length);
+				chunk.flip();
+				writeFully(channel, chunk);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temporary = null;
+			synchronized (this) {
+				writes++;
+			}
+		} catch (final IOException e) {
+			// The store is only an optimization: the table is built again on the next start
+			LOGGER.log(Level.WARNING, "Unable to store the table " + key, e);
+		} finally {
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (final IOException e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private static void writeElements(FileChannel channel, ByteBuffer chunk, Object array, int rank) throws IOException {
+		if (rank > 1) {
+			for (final Object child : (Object[]) array) {
+				writeElements(channel, chunk, child, rank - 1);
+			}
+			return;
+		}
+		if (array instanceof int[]) {
+			final int[] values = (int[]) array;
+			int offset = 0;
+			while (offset < values.length) {
+				if (chunk.remaining() < 4) {
+					flush(channel, chunk);
+				}
+				final int count = Math.min(values.length - offset, chunk.remaining() / 4);
+				chunk.asIntBuffer().put(values, offset, count);
+				chunk.position(chunk.position() + count * 4);
+				offset += count;
+			}
+		} else {
+			final byte[] values = (byte[]) array;
+			int offset = 0;
+			while (offset < values.length) {
+				if (!chunk.hasRemaining()) {
+					flush(channel, chunk);
+				}
+				final int count = Math.min(values.length - offset, chunk.remaining());
+				chunk.put(values, offset, count);
+				offset += count;
+			}
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+		chunk.flip();
+		writeFully(channel, chunk);
+		chunk.clear();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @return the dimensions of a rectangular array of ints or bytes, or <code>null</code> for anything else
+	 */
+	private static int[] getDimensions(Object table) {
+		if (table == null) {
+			return null;
+		}
+		int rank = 0;
+		Class<?> type = table.getClass();
+		while (type.isArray()) {
+			rank++;
+			type = type.getComponentType();
+		}
+		if (rank == 0 || rank > 8 || type != int.class && type != byte.class) {
+			return null;
+		}
+		final int[] dimensions = new int[rank];
+		Arrays.fill(dimensions, -1);
+		return isRectangular(table, dimensions, 0) ? dimensions : null;
+	}
+
+	private static boolean isRectangular(Object array, int[] dimensions, int depth) {
+		if (array == null) {
+			return false;
+		}
+		final int length = Array.getLength(array);
+		if (dimensions[depth] < 0) {
+			dimensions[depth] = length;
+		} else if (dimensions[depth] != length) {
+			return false;
+		}
+		if (depth + 1 < dimensions.length) {
+			if (length == 0) {
+				return false;
+			}
+			for (final Object child : (Object[]) array) {
+				if (!isRectangular(child, dimensions, depth + 1)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Class<?> getLeafType(Object table, int rank) {
+		Class<?> type = table.getClass();
+		for (int i = 0; i < rank; i++) {
+			type = type.getComponentType();
+		}
+		return type;
+	}
+
+	private static int align(int position) {
+		return position + 3 & ~3;
+	}
+
+	private Path getFile(String key) {
+		return directory.resolve(key.replaceAll("[^A-Za-z0-9._@-]", "_") + ".tbl");
+	}
+
+	public File getDirectory() {
+		return directory.toFile();
+	}
+
+	/**
+	 * @return the number of tables read back from their file
+	 */
+	public synchronized int getReads() {
+		return reads;
+	}
+
+	/**
+	 * @return the number of tables written
+	 */
+	public synchronized int getWrites() {
+		return writes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s, %d tables read, %d written", directory, reads, writes);
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders antialiased text into bitmaps without any display, so that effects can draw text in their frames.
+ */
+public final class TextRenderer {
+
+	private TextRenderer() {
+	}
+
+	/**
+	 * Render lines of text one under the other, each one centered horizontally. A line takes one and a half times the height of the font.
+	 *
+	 * @param lines the lines of text
+	 * @param fontName the name of the font
+	 * @param fontSize the size of the font in points, converted at 96 dpi
+	 * @param width the width of the bitmap
+	 * @param foreground the color of the text
+	 * @param background the color of the background
+	 * @return an opaque bitmap of the given width, high enough to hold all the lines
+	 */
+	public static Bitmap renderLines(String[] lines, String fontName, int fontSize, int width, int foreground, int background) {
+		final Font font = new Font(fontName, Font.PLAIN, Math.round(fontSize * 96f / 72f));
+		final FontMetrics metrics = getMetrics(font);
+		final int lineHeight = metrics.getHeight();
+
+		int height = 0;
+		for (int i = 0; i < lines.length; i++) {
+			height += lineHeight * 1.5;
+		}
+
+		final BufferedImage image = new BufferedImage(width, Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = createGraphics(image, font, background);
+		g.setColor(new Color(foreground));
+
+		int y = 0;
+		for (final String line : lines) {
+			final int x = (width - metrics.stringWidth(line)) / 2;
+			g.drawString(line, x, y + metrics.getAscent());
+			y += lineHeight * 1.5;
+		}
+		g.dispose();
+		return toBitmap(image);
+	}
+
+	/**
+	 * Render a single line of text.
+	 *
+	 * @return an opaque bitmap that fits the text
+	 */
+	public static Bitmap renderString(String text, String fontName, int fontSize, int foreground, int background) {
+		final Font font = new Font(fontName, Font.PLAIN, Math.round(fontSize * 96f / 72f));
+		final FontMetrics metrics = getMetrics(font);
+
+		final BufferedImage image = new BufferedImage(Math.max(1, metrics.stringWidth(text)), metrics.getHeight(), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = createGraphics(image, font, background);
+		g.setColor(new Color(foreground));
+		g.drawString(text, 0, metrics.getAscent());
+		g.dispose();
+		return toBitmap(image);
+	}
+
+	private static FontMetrics getMetrics(Font font) {
+		final BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = scratch.createGraphics();
+		final FontMetrics metrics = g.getFontMetrics(font);
+		g.dispose();
+		return metrics;
+	}
+
+	private static Graphics2D createGraphics(BufferedImage image, Font font, int background) {
+		final Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(new Color(background));
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setFont(font);
+		return g;
+	}
+
+	private static Bitmap toBitmap(BufferedImage image) {
+		final int w = image.getWidth();
+		final int h = image.getHeight();
+		final int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] |= 0xFF000000;
+		}
+		return new Bitmap(w, h, pixels);
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free handoff of frames between one producer and one consumer thread.
+ * <p>
+ * The producer renders into the back frame and publishes it, the consumer acquires the latest published frame. The third frame sits in between, so neither side ever waits for the other and a frame that is never acquired is simply overwritten by the
+ * next one.
+ */
+public class TripleBuffer {
+
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4;
+
+	/**
+	 * Number of previous frames the damage of a frame is known against
+	 */
+	public static final int DAMAGE_HISTORY = 4;
+
+	/**
+	 * A frame of ARGB pixels, or of palette indices with their palette, with its size and its index
+	 */
+	public static final class Frame {
+		public int[] pixels = new int[0];
+		public byte[] indices = new byte[0];
+		public final int[] palette = new int[256];
+		public boolean indexed;
+		public int width, height;
+		public long index;
+
+		/**
+		 * The regions changed since each of the previous frames: <code>damage[i]</code> holds the changes since the frame <code>index - i - 1</code>. Only the first <code>damageDepth</code> ones are known.
+		 */
+		public final DirtyRegion[] damage = new DirtyRegion[DAMAGE_HISTORY];
+		public int damageDepth;
+
+		public Frame() {
+			for (int i = 0; i < damage.length; i++) {
+				damage[i] = new DirtyRegion();
+			}
+		}
+
+		/**
+		 * @return the regions changed since a previous frame, or <code>null</code> if they are unknown and the whole frame has to be considered changed
+		 */
+		public DirtyRegion getDamageSince(long previousIndex) {
+			final long gap = index - previousIndex;
+			return gap >= 1 && gap <= damageDepth ? damage[(int) gap - 1] : null;
+		}
+
+		/**
+		 * Make sure the pixel array can hold a frame of the given size
+		 */
+		public void ensureSize(int width, int height) {
+			if (pixels.length != width * height) {
+				pixels = new int[width * height];
+			}
+			this.width = width;
+			this.height = height;
+			indexed = false;
+			damageDepth = 0;
+		}
+
+		/**
+		 * Make sure the index array can hold a frame of the given size
+		 */
+		public void ensureIndexedSize(int width, int height) {
+			if (indices.length != width * height) {
+				indices = new byte[width * height];
+			}
+			this.width = width;
+			this.height = height;
+			indexed = true;
+			damageDepth = 0;
+		}
+	}
+
+	private final Frame[] frames = { new Frame(), new Frame(), new Frame() };
+
+	// Index of the frame in between, with the FRESH flag when it has not been acquired yet
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	// Owned by the producer
+	private int back = 0;
+
+	// Owned by the consumer
+	private int front = 2;
+
+	/**
+	 * @return the frame the producer renders into. Only call it from the producer thread.
+	 */
+	public Frame getBackFrame() {
+		return frames[back];
+	}
+
+	/**
+	 * Make the back frame the latest one. Only call it from the producer thread.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Take the latest published frame, if any has been published since the previous call. Only call it from the consumer thread.
+	 *
+	 * @return the latest frame, or <code>null</code> if there is no new frame
+	 */
+	public Frame acquire() {
+		if ((middle.get() & FRESH) == 0) {
+			return null;
+		}
+		front = middle.getAndSet(front) & INDEX_MASK;
+		return frames[front];
+	}
+
+	/**
+	 * @return the frame acquired last by the consumer. Only call it from the consumer thread.
+	 */
+	public Frame getFrontFrame() {
+		return frames[front];
+	}
+}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.sampler;
+
+/**
+ * What a {@link Sampler} returns for the coordinates outside of its texture
+ */
+public enum EdgeMode {
+	/** Transparent black */
+	ZERO,
+	/** The nearest texel of the edges */
+	CLAMP,
+	/** The texture is repeated */
+	WRAP,
+	/** The nearest texel of the edges, with a zero alpha so that the borders do not turn gray when blended */
+	RGB_CLAMP
+}
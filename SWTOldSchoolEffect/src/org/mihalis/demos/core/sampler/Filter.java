@@ -1,19 +1,22 @@
-/*******************************************************************************
- * Copyright (c) 2018 Laurent Caron
- *
- * All rights reserved. This program and the
- * accompanying materials are made available under the terms of the Eclipse
- * Public License v1.0 which accompanies this distribution, and is available at
- * http://www.eclipse.org/legal/epl-v10.html
- *
- * Contributors:
- * Laurent CARON (laurent.caron at gmail dot com) - Original Version
- * Based on code by W.P. van Paassen - peter@paassen.tmfweb.nl
- *******************************************************************************/
-package org.mihalis.demos.starfield;
-
-public class Star {
-	float xpos, ypos;
-	int zpos, speed;
-	int color;
-}
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.sampler;
+
+/**
+ * How a {@link Sampler} reads a texture between its texels
+ */
+public enum Filter {
+	/** The texel under the coordinates */
+	NEAREST,
+	/** A blend of the four nearest texels */
+	BILINEAR
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.sampler;
+
+import org.mihalis.demos.core.PixelOps;
+
+/**
+ * Reads the colors of a {@link Texture} at 16.16 fixed point coordinates, the center of the texel (x, y) being at (x, y). The filter and the use of the mip levels are chosen once for all the
+ * samplers by <code>-Ddemos.sampler.filter=bilinear</code> (nearest by default) and <code>-Ddemos.sampler.mipmaps=false</code>, and can be changed for each of them.
+ * <p>
+ * Spans of texels along a line are read at once: their level only depends on their step, and the nearest texels of a repeated texture whose size is a power of two only cost a mask.
+ */
+public class Sampler {
+
+	public static final int SHIFT = 16;
+	public static final int ONE = 1 << SHIFT;
+
+	private static final Filter DEFAULT_FILTER = "bilinear".equals(System.getProperty("demos.sampler.filter")) ? Filter.BILINEAR : Filter.NEAREST;
+	private static final boolean DEFAULT_MIPMAPS = !"false".equals(System.getProperty("demos.sampler.mipmaps"));
+
+	private final Texture texture;
+	private final EdgeMode edgeMode;
+	private Filter filter = DEFAULT_FILTER;
+	private boolean mipmaps = DEFAULT_MIPMAPS;
+
+	public Sampler(Texture texture, EdgeMode edgeMode) {
+		this.texture = texture;
+		this.edgeMode = edgeMode;
+	}
+
+	public Texture getTexture() {
+		return texture;
+	}
+
+	public EdgeMode getEdgeMode() {
+		return edgeMode;
+	}
+
+	public Filter getFilter() {
+		return filter;
+	}
+
+	public void setFilter(Filter filter) {
+		this.filter = filter;
+	}
+
+	public boolean isMipmaps() {
+		return mipmaps;
+	}
+
+	/**
+	 * @param mipmaps true to read minified spans from the mip levels
+	 */
+	public void setMipmaps(boolean mipmaps) {
+		this.mipmaps = mipmaps;
+	}
+
+	/**
+	 * @return the texel of integer coordinates, following the edge mode outside of the texture
+	 */
+	public int texel(int x, int y) {
+		return texel(texture, x, y);
+	}
+
+	/**
+	 * @return the texel of integer coordinates in a mip level
+	 */
+	public int texel(int level, int x, int y) {
+		return texel(texture.getLevel(level), x, y);
+	}
+
+	private int texel(Texture texture, int x, int y) {
+		final int width = texture.getWidth(), height = texture.getHeight();
+		if (x >= 0 && x < width && y >= 0 && y < height) {
+			return texture.getPixels()[y * width + x];
+		}
+		switch (edgeMode) {
+			case WRAP:
+				return texture.getPixels()[Math.floorMod(y, height) * width + Math.floorMod(x, width)];
+			case CLAMP:
+				return texture.getPixels()[clamp(y, height) * width + clamp(x, width)];
+			case RGB_CLAMP:
+				return texture.getPixels()[clamp(y, height) * width + clamp(x, width)] & 0x00FFFFFF;
+			default:
+				return 0;
+		}
+	}
+
+	private static int clamp(int value, int size) {
+		return value < 0 ? 0 : value >= size ? size - 1 : value;
+	}
+
+	/**
+	 * @return the color at fixed point coordinates, read with the filter of this sampler
+	 */
+	public int sample(int u, int v) {
+		return sample(texture, u, v);
+	}
+
+	/**
+	 * @param level the mip level, whose coordinates are those of the level 0 divided by 2<sup>level</sup>
+	 * @return the color at fixed point coordinates of a mip level
+	 */
+	public int sample(int level, int u, int v) {
+		return sample(texture.getLevel(level), u, v);
+	}
+
+	private int sample(Texture texture, int u, int v) {
+		final int x = u >> SHIFT, y = v >> SHIFT;
+		if (filter == Filter.NEAREST) {
+			return texel(texture, x, y);
+		}
+		final int width = texture.getWidth(), height = texture.getHeight();
+		final int xWeight = u >> SHIFT - 8 & 0xFF, yWeight = v >> SHIFT - 8 & 0xFF;
+		if (edgeMode == EdgeMode.WRAP && texture.isPowerOfTwo()) {
+			final int[] pixels = texture.getPixels();
+			final int uMask = texture.getUMask(), vMask = texture.getVMask(), rowShift = texture.getRowShift();
+			final int left = x & uMask, right = x + 1 & uMask;
+			final int top = (y & vMask) << rowShift, bottom = (y + 1 & vMask) << rowShift;
+			return PixelOps.bilinearPixel(pixels[top + left], pixels[top + right], pixels[bottom + left], pixels[bottom + right], xWeight, yWeight);
+		}
+		if (x >= 0 && x < width - 1 && y >= 0 && y < height - 1) {
+			// Easy case, all corners are in the texture
+			final int[] pixels = texture.getPixels();
+			final int i = y * width + x;
+			return PixelOps.bilinearPixel(pixels[i], pixels[i + 1], pixels[i + width], pixels[i + width + 1], xWeight, yWeight);
+		}
+		return PixelOps.bilinearPixel(texel(texture, x, y), texel(texture, x + 1, y), texel(texture, x, y + 1), texel(texture, x + 1, y + 1), xWeight, yWeight);
+	}
+
+	/**
+	 * @param du the step of the u coordinate from a pixel to the next one, in fixed point
+	 * @param dv the step of the v coordinate
+	 * @return the mip level where this step is about one texel, 0 when the mip levels are not used
+	 */
+	public int getLevel(int du, int dv) {
+		if (!mipmaps) {
+			return 0;
+		}
+		final long step = Math.max(Math.abs((long) du), Math.abs((long) dv)) >> SHIFT;
+		if (step == 0) {
+			return 0;
+		}
+		return Math.min(63 - Long.numberOfLeadingZeros(step), texture.getLevelCount() - 1);
+	}
+
+	/**
+	 * Read the texels along a line
+	 *
+	 * @param dst the destination of the colors
+	 * @param offset the index of the first color in the destination
+	 * @param length the number of colors
+	 * @param u the coordinates of the first color, in fixed point
+	 * @param v
+	 * @param du the step of the coordinates from a color to the next one, in fixed point
+	 * @param dv
+	 */
+	public void span(int[] dst, int offset, int length, int u, int v, int du, int dv) {
+		final int level = getLevel(du, dv);
+		final Texture texture = this.texture.getLevel(level);
+		u >>= level;
+		v >>= level;
+		du >>= level;
+		dv >>= level;
+
+		final int end = offset + length;
+		if (filter == Filter.NEAREST && edgeMode == EdgeMode.WRAP && texture.isPowerOfTwo()) {
+			// Overflows of the coordinates do not matter either, the texture size divides 2^32
+			final int[] pixels = texture.getPixels();
+			final int uMask = texture.getUMask(), vMask = texture.getVMask(), rowShift = texture.getRowShift();
+			for (int i = offset; i < end; i++) {
+				dst[i] = pixels[(v >> SHIFT & vMask) << rowShift | u >> SHIFT & uMask];
+				u += du;
+				v += dv;
+			}
+			return;
+		}
+		for (int i = offset; i < end; i++) {
+			dst[i] = sample(texture, u, v);
+			u += du;
+			v += dv;
+		}
+	}
+}
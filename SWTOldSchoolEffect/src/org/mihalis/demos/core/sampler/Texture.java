@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.sampler;
+
+import org.mihalis.demos.core.Bitmap;
+
+/**
+ * The texels of a texture, row by row, and its mip levels: copies halved in both directions down to a single texel, which a {@link Sampler} reads instead of skipping texels when the texture is minified.
+ * <p>
+ * The levels are computed from the texels the first time they are needed, the texels must not change afterwards.
+ */
+public final class Texture {
+
+	private final int width, height;
+	private final int[] pixels;
+	// Masks and shift of a texture whose size is a power of two, -1 otherwise
+	private final int uMask, vMask, rowShift;
+	private volatile Texture[] levels;
+
+	/**
+	 * @param pixels the texels, row by row. The array is shared, not copied.
+	 */
+	public Texture(int width, int height, int[] pixels) {
+		if (width <= 0 || height <= 0 || pixels.length < width * height) {
+			throw new IllegalArgumentException("Invalid texture of " + pixels.length + " texels for " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+		if (Integer.bitCount(width) == 1 && Integer.bitCount(height) == 1) {
+			uMask = width - 1;
+			vMask = height - 1;
+			rowShift = Integer.numberOfTrailingZeros(width);
+		} else {
+			uMask = vMask = rowShift = -1;
+		}
+	}
+
+	/**
+	 * @return a texture sharing the pixels of a bitmap
+	 */
+	public static Texture of(Bitmap bitmap) {
+		return new Texture(bitmap.width, bitmap.height, bitmap.pixels);
+	}
+
+	/**
+	 * @return a copy of a rectangle of a bitmap, for instance a tile of an atlas which must be repeated or mipmapped on its own
+	 */
+	public static Texture of(Bitmap bitmap, int x, int y, int width, int height) {
+		if (x < 0 || y < 0 || x + width > bitmap.width || y + height > bitmap.height) {
+			throw new IllegalArgumentException("Rectangle out of the bitmap");
+		}
+		final int[] pixels = new int[width * height];
+		for (int row = 0; row < height; row++) {
+			System.arraycopy(bitmap.pixels, (y + row) * bitmap.width + x, pixels, row * width, width);
+		}
+		return new Texture(width, height, pixels);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the texels, row by row
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public boolean isPowerOfTwo() {
+		return rowShift >= 0;
+	}
+
+	int getUMask() {
+		return uMask;
+	}
+
+	int getVMask() {
+		return vMask;
+	}
+
+	int getRowShift() {
+		return rowShift;
+	}
+
+	/**
+	 * @return the number of levels, this texture being the first one
+	 */
+	public int getLevelCount() {
+		return getLevels().length;
+	}
+
+	/**
+	 * @return a mip level, clamped to the smallest one. The level 0 is this texture, each level is half the size of the previous one.
+	 */
+	public Texture getLevel(int level) {
+		if (level <= 0) {
+			return this;
+		}
+		final Texture[] levels = getLevels();
+		return levels[Math.min(level, levels.length - 1)];
+	}
+
+	private Texture[] getLevels() {
+		Texture[] result = levels;
+		if (result == null) {
+			synchronized (this) {
+				result = levels;
+				if (result == null) {
+					int count = 1;
+					for (int size = Math.max(width, height); size > 1; size >>= 1) {
+						count++;
+					}
+					result = new Texture[count];
+					result[0] = this;
+					for (int i = 1; i < count; i++) {
+						result[i] = result[i - 1].halve();
+					}
+					levels = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the next level, each texel being the average of a square of 2x2 texels. The last row or column of an odd size is averaged with itself.
+	 */
+	private Texture halve() {
+		final int halfWidth = Math.max(1, width >> 1);
+		final int halfHeight = Math.max(1, height >> 1);
+		final int[] half = new int[halfWidth * halfHeight];
+		int index = 0;
+		for (int y = 0; y < halfHeight; y++) {
+			final int top = Math.min(2 * y, height - 1) * width;
+			final int bottom = Math.min(2 * y + 1, height - 1) * width;
+			for (int x = 0; x < halfWidth; x++) {
+				final int left = Math.min(2 * x, width - 1);
+				final int right = Math.min(2 * x + 1, width - 1);
+				half[index++] = average(pixels[top + left], pixels[top + right], pixels[bottom + left], pixels[bottom + right]);
+			}
+		}
+		return new Texture(halfWidth, halfHeight, half);
+	}
+
+	/**
+	 * @return the average of four colors, both pairs of channels at once
+	 */
+	private static int average(int nw, int ne, int sw, int se) {
+		final int rb = (nw & 0xFF00FF) + (ne & 0xFF00FF) + (sw & 0xFF00FF) + (se & 0xFF00FF) >>> 2 & 0xFF00FF;
+		final int ag = (nw >>> 8 & 0xFF00FF) + (ne >>> 8 & 0xFF00FF) + (sw >>> 8 & 0xFF00FF) + (se >>> 8 & 0xFF00FF) << 6 & 0xFF00FF00;
+		return ag | rb;
+	}
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.swt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FrameProfiler;
+import org.mihalis.demos.core.FrameScheduler;
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.InteractiveEffect;
+import org.mihalis.demos.core.RenderLoop;
+import org.mihalis.demos.core.ResolutionScaler;
+import org.mihalis.demos.core.TripleBuffer.Frame;
+
+/**
+ * A SWT window that hosts an {@link Effect}: it owns the shell and the canvas, runs the effect in a {@link RenderLoop}, presents the latest rendered frame through a {@link FramePresenter} and forwards the input to interactive effects.
+ * <p>
+ * The effect never runs on the UI thread: the input and the resize events are posted to the render thread. When a frame only changes some regions of the previous one, only these regions are converted and painted again.
+ * <p>
+ * Each phase of the frames can be profiled with system properties: <code>-Ddemos.profile=true</code> records the histograms and prints them when the window is closed, with the skipped frames and the scale,
+ * <code>-Ddemos.profile.overlay=true</code> also draws them over the effect and <code>-Ddemos.profile.csv=file</code> also exports them to a CSV file. The frames of an {@link IndexedEffect} are presented as 8-bit images, unless
+ * <code>-Ddemos.indexed=false</code> is set. <code>-Ddemos.scale=auto</code> lowers the resolution of the effect when it misses its frame budget, see {@link ResolutionScaler}.
+ */
+public class EffectWindow {
+
+	private final Display display;
+	private final String title;
+	private final Shell shell;
+	private final Canvas canvas;
+	private final FramePresenter presenter;
+	private final RenderLoop renderLoop;
+	private final AtomicBoolean presentPending = new AtomicBoolean();
+	private final FrameProfiler profiler;
+	private final String csvFile;
+	private Font overlayFont;
+
+	private int w, h;
+	private boolean started;
+	private long presentedIndex = -1;
+
+	/**
+	 * @param display the display
+	 * @param title the title of the shell
+	 * @param width the preferred width of the canvas
+	 * @param height the preferred height of the canvas
+	 * @param timerInterval the duration of a simulation step in milliseconds, see {@link RenderLoop}. If it is not positive, a frame is only rendered when the canvas is resized or when an input event is received.
+	 * @param effect the hosted effect
+	 */
+	public EffectWindow(Display display, String title, int width, int height, int timerInterval, Effect effect) {
+		this.display = display;
+		this.title = title;
+
+		shell = new Shell(display, SWT.SHELL_TRIM);
+		shell.setText(title);
+		shell.setLayout(new GridLayout(1, false));
+
+		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
+		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
+		gdCanvas.widthHint = width;
+		gdCanvas.heightHint = height;
+		canvas.setLayoutData(gdCanvas);
+
+		presenter = new FramePresenter(display);
+		canvas.addListener(SWT.Dispose, e -> presenter.dispose());
+
+		renderLoop = new RenderLoop(effect, timerInterval);
+		renderLoop.setFrameListener(this::frameRendered);
+		renderLoop.setIndexed(!"false".equals(System.getProperty("demos.indexed")));
+		renderLoop.setResolutionScaler(ResolutionScaler.fromProperties());
+
+		csvFile = System.getProperty("demos.profile.csv");
+		final boolean overlay = Boolean.getBoolean("demos.profile.overlay");
+		if (Boolean.getBoolean("demos.profile") || overlay || csvFile != null) {
+			profiler = new FrameProfiler();
+			presenter.setProfiler(profiler);
+			renderLoop.setProfiler(profiler);
+		} else {
+			profiler = null;
+		}
+		if (overlay) {
+			overlayFont = new Font(display, "Monospace", 9, SWT.NORMAL);
+			canvas.addListener(SWT.Dispose, e -> overlayFont.dispose());
+		}
+
+		canvas.addListener(SWT.Resize, e -> {
+			final Rectangle area = canvas.getClientArea();
+			resize(area.width, area.height);
+		});
+
+		canvas.addPaintListener(e -> {
+			presenter.paint(e.gc, 0, 0);
+			if (overlayFont != null) {
+				paintOverlay(e.gc);
+			}
+		});
+
+		if (effect instanceof InteractiveEffect) {
+			addInputListeners((InteractiveEffect) effect);
+		}
+	}
+
+	private void addInputListeners(InteractiveEffect interactive) {
+		canvas.addListener(SWT.MouseMove, e -> {
+			final int x = e.x, y = e.y;
+			renderLoop.post(() -> interactive.mouseMove(renderLoop.toEffectX(x), renderLoop.toEffectY(y)));
+		});
+		canvas.addListener(SWT.MouseUp, e -> {
+			final int x = e.x, y = e.y, button = e.button;
+			renderLoop.post(() -> interactive.mouseUp(renderLoop.toEffectX(x), renderLoop.toEffectY(y), button));
+		});
+		canvas.addListener(SWT.KeyDown, e -> {
+			final int keyCode = translateKey(e);
+			if (keyCode != 0) {
+				renderLoop.post(() -> interactive.keyPressed(keyCode));
+			}
+		});
+		canvas.addListener(SWT.KeyUp, e -> {
+			final int keyCode = translateKey(e);
+			if (keyCode != 0) {
+				renderLoop.post(() -> interactive.keyReleased(keyCode));
+			}
+		});
+	}
+
+	private static int translateKey(Event e) {
+		switch (e.keyCode) {
+			case SWT.ARROW_UP:
+				return InteractiveEffect.KEY_UP;
+			case SWT.ARROW_DOWN:
+				return InteractiveEffect.KEY_DOWN;
+			case SWT.ARROW_LEFT:
+				return InteractiveEffect.KEY_LEFT;
+			case SWT.ARROW_RIGHT:
+				return InteractiveEffect.KEY_RIGHT;
+			case SWT.PAGE_UP:
+				return InteractiveEffect.KEY_PAGE_UP;
+			case SWT.PAGE_DOWN:
+				return InteractiveEffect.KEY_PAGE_DOWN;
+			case SWT.HOME:
+				return InteractiveEffect.KEY_HOME;
+			default:
+				return 0;
+		}
+	}
+
+	private void resize(int width, int height) {
+		if (width <= 0 || height <= 0 || width == w && height == h && started) {
+			return;
+		}
+		w = width;
+		h = height;
+		if (started) {
+			renderLoop.resize(w, h);
+		} else {
+			renderLoop.start("Render - " + title, w, h);
+			started = true;
+		}
+	}
+
+	/**
+	 * Called from the render thread: wake the UI thread, unless it has not presented the previous frame yet
+	 */
+	private void frameRendered() {
+		if (presentPending.compareAndSet(false, true)) {
+			try {
+				display.asyncExec(this::present);
+			} catch (final SWTException e) {
+				// The display is being disposed
+			}
+		}
+	}
+
+	private void present() {
+		presentPending.set(false);
+		if (canvas.isDisposed()) {
+			return;
+		}
+		final Frame frame = renderLoop.acquireFrame();
+		if (frame == null) {
+			return;
+		}
+		presenter.resize(frame.width, frame.height);
+		if (frame.indexed) {
+			presenter.setIndexedFrame(frame.indices, frame.palette);
+			canvas.redraw();
+		} else {
+			// The overlay covers the frame, it is simpler to paint everything again
+			final DirtyRegion damage = overlayFont == null ? frame.getDamageSince(presentedIndex) : null;
+			if (presenter.setFrame(frame.pixels, damage)) {
+				for (int i = 0; i < damage.getCount(); i++) {
+					canvas.redraw(damage.getX(i), damage.getY(i), damage.getWidth(i), damage.getHeight(i), false);
+				}
+			} else {
+				canvas.redraw();
+			}
+		}
+		presentedIndex = frame.index;
+	}
+
+	private void paintOverlay(GC gc) {
+		gc.setFont(overlayFont);
+		gc.setForeground(display.getSystemColor(SWT.COLOR_WHITE));
+		gc.setBackground(display.getSystemColor(SWT.COLOR_BLACK));
+		final int lineHeight = gc.getFontMetrics().getHeight();
+		int y = 4;
+		for (final String line : profiler.getSummary()) {
+			gc.drawString(line, 4, y);
+			y += lineHeight;
+		}
+		gc.drawString(presenter.getResourcePool().toString(), 4, y);
+	}
+
+	public FramePresenter getPresenter() {
+		return presenter;
+	}
+
+	public RenderLoop getRenderLoop() {
+		return renderLoop;
+	}
+
+	public Shell getShell() {
+		return shell;
+	}
+
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	/**
+	 * @return the profiler, or <code>null</code> if profiling is not enabled
+	 */
+	public FrameProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Open the window and run the event loop until the shell is closed.
+	 */
+	public void open() {
+		shell.pack();
+		shell.open();
+
+		while (!shell.isDisposed()) {
+			if (!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+
+		// Stop the render thread, which disposes the effect
+		renderLoop.stop();
+
+		if (profiler != null) {
+			reportProfile();
+		}
+	}
+
+	private void reportProfile() {
+		final FrameScheduler scheduler = renderLoop.getScheduler();
+		if (scheduler != null) {
+			System.out.println(title + ": " + scheduler);
+		}
+		final ResolutionScaler scaler = renderLoop.getResolutionScaler();
+		if (scaler != null) {
+			System.out.println(title + ": " + scaler);
+		}
+		for (final String line : profiler.getSummary()) {
+			System.out.println(title + ": " + line);
+		}
+		System.out.println(title + ": " + presenter.getResourcePool());
+		if (csvFile != null) {
+			try {
+				profiler.writeCsv(new File(csvFile));
+			} catch (final IOException e) {
+				System.err.println("Unable to write " + csvFile + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Create a display, show the effect in a new window and dispose the display once the window is closed.
+	 */
+	public static void run(String title, int width, int height, int timerInterval, Effect effect) {
+		final Display display = new Display();
+		new EffectWindow(display, title, width, height, timerInterval, effect).open();
+		display.dispose();
+	}
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.swt;
+
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.FrameProfiler;
+import org.mihalis.demos.core.FrameProfiler.Phase;
+
+/**
+ * Presents int[] frames on a canvas. It owns the image data the frames are converted into and a single native image, which is only replaced when a new frame has been set since the last paint: painting twice the same frame reuses the same native
+ * image, and several frames set between two paints are uploaded once.
+ * <p>
+ * SWT has no public API to upload pixels into an existing image, so the replacement creates the new image first, then disposes the previous one. At most one native image is alive outside of this swap.
+ * <p>
+ * Frames of palette indices go through an 8-bit image data instead, whose palette is applied when the native image is created.
+ * <p>
+ * When only some regions of a frame have changed, only these regions are converted, and the rectangle around them is drawn over the native image as a single patch instead of replacing it. The image data of the patch is kept while its size
+ * does not change, and the GC drawing it stays open as long as the native image.
+ * <p>
+ * The native handles go through a {@link ResourcePool}, which counts them.
+ */
+public class FramePresenter {
+
+	private static final PaletteData PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+
+	private final ResourcePool pool;
+	private int width, height;
+	private ImageData imageData;
+	private PixelWriter pixelWriter;
+	private ImageData indexedData;
+	private PixelWriter indexedWriter;
+	private ImageData current;
+	private Image image;
+	private ImageData patch;
+	private boolean dirty;
+	private boolean converted;
+	private final DirtyRegion pendingDamage = new DirtyRegion();
+	private FrameProfiler profiler;
+
+	public FramePresenter(Device device) {
+		pool = new ResourcePool(device);
+	}
+
+	/**
+	 * @return the pool of the native handles, to report their churn
+	 */
+	public ResourcePool getResourcePool() {
+		return pool;
+	}
+
+	/**
+	 * @param profiler records the conversion, upload and draw times, or <code>null</code>
+	 */
+	public void setProfiler(FrameProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Change the size of the frames. The native image is released and will be created again with the next frame.
+	 */
+	public void resize(int width, int height) {
+		if (width == this.width && height == this.height && imageData != null) {
+			return;
+		}
+		this.width = width;
+		this.height = height;
+		imageData = new ImageData(width, height, 24, PALETTE);
+		pixelWriter = PixelWriter.create(imageData);
+		indexedData = null;
+		indexedWriter = null;
+		current = imageData;
+		disposeImage();
+		patch = null;
+		dirty = false;
+		converted = false;
+		pendingDamage.clear();
+	}
+
+	/**
+	 * Convert a frame of <code>width * height</code> ARGB pixels. The native image is updated on the next paint.
+	 */
+	public void setFrame(int[] argb) {
+		final long start = profiler != null ? profiler.begin() : 0;
+		pixelWriter.setPixels(argb);
+		current = imageData;
+		dirty = true;
+		converted = true;
+		if (profiler != null) {
+			profiler.end(Phase.CONVERT, start);
+		}
+	}
+
+	/**
+	 * Convert the regions of a frame that have changed since the previous frame. The native image is patched on the next paint.
+	 *
+	 * @param argb the frame, <code>width * height</code> ARGB pixels
+	 * @param damage the regions changed since the previous frame set, or <code>null</code> if unknown
+	 * @return <code>true</code> if only the regions of the damage have to be painted again, <code>false</code> if the whole frame has to
+	 */
+	public boolean setFrame(int[] argb, DirtyRegion damage) {
+		if (damage == null || current != imageData || !converted) {
+			setFrame(argb);
+			return false;
+		}
+		final long start = profiler != null ? profiler.begin() : 0;
+		for (int i = 0; i < damage.getCount(); i++) {
+			pixelWriter.setPixels(argb, damage.getX(i), damage.getY(i), damage.getWidth(i), damage.getHeight(i));
+		}
+		final boolean partial = !dirty && image != null;
+		if (partial) {
+			pendingDamage.add(damage);
+		}
+		if (profiler != null) {
+			profiler.end(Phase.CONVERT, start);
+		}
+		return partial;
+	}
+
+	/**
+	 * Copy a frame of <code>width * height</code> palette indices, with its 256 colors. The native image is updated on the next paint.
+	 */
+	public void setIndexedFrame(byte[] indices, int[] palette) {
+		final long start = profiler != null ? profiler.begin() : 0;
+		if (indexedData == null) {
+			final RGB[] colors = new RGB[256];
+			for (int i = 0; i < colors.length; i++) {
+				colors[i] = new RGB(0, 0, 0);
+			}
+			indexedData = new ImageData(width, height, 8, new PaletteData(colors));
+			indexedWriter = PixelWriter.create(indexedData);
+		}
+		converted = false;
+		final RGB[] colors = indexedData.palette.colors;
+		for (int i = 0; i < colors.length; i++) {
+			final RGB color = colors[i];
+			final int value = palette[i];
+			color.red = value >> 16 & 0xFF;
+			color.green = value >> 8 & 0xFF;
+			color.blue = value & 0xFF;
+		}
+		indexedWriter.setIndices(indices);
+		current = indexedData;
+		dirty = true;
+		if (profiler != null) {
+			profiler.end(Phase.CONVERT, start);
+		}
+	}
+
+	/**
+	 * Draw the latest frame, uploading it first if it has changed
+	 */
+	public void paint(GC gc, int x, int y) {
+		if (dirty) {
+			upload();
+		} else if (!pendingDamage.isEmpty()) {
+			uploadDamage();
+		}
+		if (image != null) {
+			final long start = profiler != null ? profiler.begin() : 0;
+			gc.drawImage(image, x, y);
+			if (profiler != null) {
+				profiler.end(Phase.DRAW, start);
+			}
+		}
+	}
+
+	private void upload() {
+		final long start = profiler != null ? profiler.begin() : 0;
+		final Image previous = image;
+		image = pool.createImage(current);
+		if (previous != null) {
+			pool.disposeImage(previous);
+		}
+		dirty = false;
+		pendingDamage.clear();
+		if (profiler != null) {
+			profiler.end(Phase.UPLOAD, start);
+		}
+	}
+
+	/**
+	 * Draw the rectangle around the changed regions over the native image, through a patch
+	 */
+	private void uploadDamage() {
+		final long start = profiler != null ? profiler.begin() : 0;
+		int x0 = width, y0 = height, x1 = 0, y1 = 0;
+		for (int i = 0; i < pendingDamage.getCount(); i++) {
+			final int x = pendingDamage.getX(i), y = pendingDamage.getY(i);
+			final int patchWidth = pendingDamage.getWidth(i), patchHeight = pendingDamage.getHeight(i);
+			x0 = Math.min(x0, x);
+			y0 = Math.min(y0, y);
+			x1 = Math.max(x1, x + patchWidth);
+			y1 = Math.max(y1, y + patchHeight);
+		}
+		if (x0 < x1 && y0 < y1) {
+			drawPatch(x0, y0, x1 - x0, y1 - y0);
+		}
+		pendingDamage.clear();
+		if (profiler != null) {
+			profiler.end(Phase.UPLOAD, start);
+		}
+	}
+
+	private void drawPatch(int x, int y, int patchWidth, int patchHeight) {
+		if (patch == null || patch.width != patchWidth || patch.height != patchHeight) {
+			patch = new ImageData(patchWidth, patchHeight, imageData.depth, imageData.palette);
+		}
+		final int bytesPerPixel = imageData.depth / 8;
+		for (int row = 0; row < patchHeight; row++) {
+			System.arraycopy(imageData.data, (y + row) * imageData.bytesPerLine + x * bytesPerPixel, patch.data, row * patch.bytesPerLine, patchWidth * bytesPerPixel);
+		}
+		final Image patchImage = pool.createImage(patch);
+		pool.getGC(image).drawImage(patchImage, x, y);
+		pool.disposeImage(patchImage);
+	}
+
+	private void disposeImage() {
+		if (image != null) {
+			pool.disposeImage(image);
+			image = null;
+		}
+	}
+
+	/**
+	 * @return the image data of the latest frame, 24-bit or 8-bit indexed
+	 */
+	public ImageData getImageData() {
+		return current;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Release the native image and the pooled handles
+	 */
+	public void dispose() {
+		disposeImage();
+		pool.dispose();
+		imageData = null;
+		pixelWriter = null;
+		indexedData = null;
+		indexedWriter = null;
+		patch = null;
+		current = null;
+		dirty = false;
+		converted = false;
+		pendingDamage.clear();
+	}
+}
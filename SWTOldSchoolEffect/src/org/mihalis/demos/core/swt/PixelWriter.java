@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.swt;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * Writes pixels straight into {@link ImageData#data}, bypassing the generic depth and bit order switch of {@link ImageData#setPixel(int, int, int)}.
+ * <p>
+ * The 24-bit and 32-bit direct formats with byte-aligned masks and the 8-bit indexed format have a specialised writer. For direct formats, the values are 0xAARRGGBB colors (alpha is ignored). For the indexed format, the values are palette indices. Any other format falls back
+ * to {@link ImageData#setPixels(int, int, int, int[], int)}.
+ */
+public abstract class PixelWriter {
+
+	protected final ImageData imageData;
+	protected final byte[] data;
+	protected final int width, height, bytesPerLine;
+
+	protected PixelWriter(ImageData imageData) {
+		this.imageData = imageData;
+		data = imageData.data;
+		width = imageData.width;
+		height = imageData.height;
+		bytesPerLine = imageData.bytesPerLine;
+	}
+
+	/**
+	 * Create the fastest writer for the format of an image data
+	 */
+	public static PixelWriter create(ImageData imageData) {
+		final PaletteData palette = imageData.palette;
+		if (imageData.depth == 8 && !palette.isDirect) {
+			return new Indexed8(imageData);
+		}
+		if ((imageData.depth == 24 || imageData.depth == 32) && palette.isDirect && isByteMask(palette.redMask) && isByteMask(palette.greenMask) && isByteMask(palette.blueMask)) {
+			return new Direct(imageData);
+		}
+		return new Generic(imageData);
+	}
+
+	private static boolean isByteMask(int mask) {
+		return mask != 0 && Integer.numberOfTrailingZeros(mask) % 8 == 0 && mask >>> Integer.numberOfTrailingZeros(mask) == 0xFF;
+	}
+
+	public ImageData getImageData() {
+		return imageData;
+	}
+
+	public abstract void setPixel(int x, int y, int value);
+
+	/**
+	 * Copy a row of pixels
+	 *
+	 * @param y the row
+	 * @param src the values
+	 * @param offset the index of the first value of the row in src
+	 */
+	public void setRow(int y, int[] src, int offset) {
+		setSpan(0, y, width, src, offset);
+	}
+
+	/**
+	 * Copy a part of a row of pixels
+	 *
+	 * @param x the first column
+	 * @param y the row
+	 * @param length the number of pixels
+	 * @param src the values
+	 * @param offset the index of the first value in src
+	 */
+	public abstract void setSpan(int x, int y, int length, int[] src, int offset);
+
+	/**
+	 * Copy a rectangle of a frame of <code>width * height</code> values, stored row by row
+	 */
+	public void setPixels(int[] src, int x, int y, int width, int height) {
+		for (int row = y; row < y + height; row++) {
+			setSpan(x, row, width, src, row * this.width + x);
+		}
+	}
+
+	/**
+	 * Copy a whole frame of <code>width * height</code> values, stored row by row
+	 */
+	public void setPixels(int[] src) {
+		for (int y = 0; y < height; y++) {
+			setRow(y, src, y * width);
+		}
+	}
+
+	/**
+	 * Copy a whole frame of palette indices, stored row by row. Only for 8-bit indexed image data, other image data throw an {@link IllegalStateException}.
+	 */
+	public void setIndices(byte[] src) {
+		throw new IllegalStateException("Not an 8-bit indexed image data");
+	}
+
+	/**
+	 * 24-bit and 32-bit formats. SWT stores these pixels with the most significant byte first.
+	 */
+	private static final class Direct extends PixelWriter {
+
+		private final int bytesPerPixel;
+		private final int redOffset, greenOffset, blueOffset;
+
+		Direct(ImageData imageData) {
+			super(imageData);
+			bytesPerPixel = imageData.depth / 8;
+			final PaletteData palette = imageData.palette;
+			redOffset = byteOffset(palette.redMask);
+			greenOffset = byteOffset(palette.greenMask);
+			blueOffset = byteOffset(palette.blueMask);
+		}
+
+		private int byteOffset(int mask) {
+			return bytesPerPixel - 1 - Integer.numberOfTrailingZeros(mask) / 8;
+		}
+
+		@Override
+		public void setPixel(int x, int y, int value) {
+			final int index = y * bytesPerLine + x * bytesPerPixel;
+			data[index + redOffset] = (byte) (value >> 16);
+			data[index + greenOffset] = (byte) (value >> 8);
+			data[index + blueOffset] = (byte) value;
+		}
+
+		@Override
+		public void setSpan(int x, int y, int length, int[] src, int offset) {
+			final byte[] data = this.data;
+			final int bpp = bytesPerPixel, r = redOffset, g = greenOffset, b = blueOffset;
+			int index = y * bytesPerLine + x * bpp;
+			final int end = offset + length;
+			if (bpp == 3 && r == 0 && g == 1 && b == 2) {
+				// The usual 0xFF0000, 0xFF00, 0xFF palette: bytes are written in sequence
+				for (int i = offset; i < end; i++) {
+					final int value = src[i];
+					data[index++] = (byte) (value >> 16);
+					data[index++] = (byte) (value >> 8);
+					data[index++] = (byte) value;
+				}
+				return;
+			}
+			for (int i = offset; i < end; i++) {
+				final int value = src[i];
+				data[index + r] = (byte) (value >> 16);
+				data[index + g] = (byte) (value >> 8);
+				data[index + b] = (byte) value;
+				index += bpp;
+			}
+		}
+	}
+
+	/**
+	 * 8-bit indexed format, one byte per pixel
+	 */
+	private static final class Indexed8 extends PixelWriter {
+
+		Indexed8(ImageData imageData) {
+			super(imageData);
+		}
+
+		@Override
+		public void setPixel(int x, int y, int value) {
+			data[y * bytesPerLine + x] = (byte) value;
+		}
+
+		@Override
+		public void setSpan(int x, int y, int length, int[] src, int offset) {
+			final byte[] data = this.data;
+			int index = y * bytesPerLine + x;
+			final int end = offset + length;
+			for (int i = offset; i < end; i++) {
+				data[index++] = (byte) src[i];
+			}
+		}
+
+		@Override
+		public void setIndices(byte[] src) {
+			if (bytesPerLine == width) {
+				System.arraycopy(src, 0, data, 0, width * height);
+				return;
+			}
+			for (int y = 0; y < height; y++) {
+				System.arraycopy(src, y * width, data, y * bytesPerLine, width);
+			}
+		}
+	}
+
+	/**
+	 * Any other format: the colors are converted with the masks of the palette, then written by SWT
+	 */
+	private static final class Generic extends PixelWriter {
+
+		private final int[] row;
+
+		Generic(ImageData imageData) {
+			super(imageData);
+			row = new int[width];
+		}
+
+		private int toPixel(int value) {
+			final PaletteData palette = imageData.palette;
+			if (!palette.isDirect) {
+				return value;
+			}
+			return channel(value >> 16 & 0xFF, palette.redMask, palette.redShift) | channel(value >> 8 & 0xFF, palette.greenMask, palette.greenShift) | channel(value & 0xFF, palette.blueMask, palette.blueShift);
+		}
+
+		private static int channel(int value, int mask, int shift) {
+			return (shift < 0 ? value << -shift : value >>> shift) & mask;
+		}
+
+		@Override
+		public void setPixel(int x, int y, int value) {
+			imageData.setPixel(x, y, toPixel(value));
+		}
+
+		@Override
+		public void setSpan(int x, int y, int length, int[] src, int offset) {
+			for (int i = 0; i < length; i++) {
+				row[i] = toPixel(src[offset + i]);
+			}
+			imageData.setPixels(x, y, length, row, 0);
+		}
+	}
+}
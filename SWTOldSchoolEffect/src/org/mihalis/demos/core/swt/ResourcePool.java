@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.core.swt;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Resource;
+
+/**
+ * Native resources shared by the code drawing with a GC, so that they are not allocated and disposed again at each frame.
+ * <p>
+ * A GC opened on a long-lived image stays open until the image is released, and images are created and disposed through the pool. Each of these handles is counted, so that the churn can be reported.
+ * <p>
+ * Only use a pool from the UI thread.
+ */
+public class ResourcePool {
+
+	/**
+	 * The kinds of native handles counted by the pool
+	 */
+	public enum Kind {
+		GC, IMAGE
+	}
+
+	private final Device device;
+	private final Map<Image, GC> gcs = new IdentityHashMap<>();
+	private final long[] created = new long[Kind.values().length];
+	private final long[] disposed = new long[Kind.values().length];
+
+	public ResourcePool(Device device) {
+		this.device = device;
+	}
+
+	/**
+	 * @return a GC drawing on the image, opened at the first call and kept until the image is released. It must not be disposed by the caller.
+	 */
+	public GC getGC(Image image) {
+		GC gc = gcs.get(image);
+		if (gc == null || gc.isDisposed()) {
+			gc = new GC(image);
+			created[Kind.GC.ordinal()]++;
+			gcs.put(image, gc);
+		}
+		return gc;
+	}
+
+	/**
+	 * Dispose the GC opened on an image, if any
+	 */
+	public void release(Image image) {
+		final GC gc = gcs.remove(image);
+		if (gc != null) {
+			dispose(Kind.GC, gc);
+		}
+	}
+
+	public Image createImage(ImageData imageData) {
+		final Image image = new Image(device, imageData);
+		created[Kind.IMAGE.ordinal()]++;
+		return image;
+	}
+
+	/**
+	 * Release an image created by the pool, then dispose it
+	 */
+	public void disposeImage(Image image) {
+		release(image);
+		dispose(Kind.IMAGE, image);
+	}
+
+	private void dispose(Kind kind, Resource resource) {
+		if (!resource.isDisposed()) {
+			resource.dispose();
+		}
+		disposed[kind.ordinal()]++;
+	}
+
+	public long getCreated(Kind kind) {
+		return created[kind.ordinal()];
+	}
+
+	public long getDisposed(Kind kind) {
+		return disposed[kind.ordinal()];
+	}
+
+	/**
+	 * @return the number of handles of a kind currently alive
+	 */
+	public long getLive(Kind kind) {
+		return created[kind.ordinal()] - disposed[kind.ordinal()];
+	}
+
+	/**
+	 * Dispose every GC of the pool. The images created by the pool are disposed by their owner.
+	 */
+	public void dispose() {
+		for (final Iterator<GC> i = gcs.values().iterator(); i.hasNext();) {
+			dispose(Kind.GC, i.next());
+			i.remove();
+		}
+	}
+
+	/**
+	 * @return the native handles created and disposed so far, per kind
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("native handles:");
+		for (final Kind kind : Kind.values()) {
+			builder.append(String.format(" %s %d created/%d disposed", kind.name().toLowerCase(), getCreated(kind), getDisposed(kind)));
+		}
+		return builder.toString();
+	}
+}
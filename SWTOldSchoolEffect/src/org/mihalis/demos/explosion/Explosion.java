@@ -12,19 +12,16 @@
  *******************************************************************************/
 package org.mihalis.demos.explosion;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Explosion {
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.HeatDiffusion;
+import org.mihalis.demos.core.HeatDiffusion.Border;
+import org.mihalis.demos.core.HeatDiffusion.Kernel;
+import org.mihalis.demos.core.ParticleSystem;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Explosion implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "Explosion";
@@ -36,215 +33,105 @@ public class Explosion {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
 	private int w, h;
-	private ImageData imageData;
 
-	private static final int NUMBER_OF_PARTICLES = 500;
-	int fire[];
-	Particle[] particles;
+	private static final int NUMBER_OF_PARTICLES = ParticleSystem.getCapacity(500);
 
-	public Explosion(Display display) {
-		this.display = display;
-	}
+	// The heat of a cell is the average of its 8 neighbors, minus 4
+	private static final Kernel KERNEL = new Kernel(new int[] { 0, 1, -1, -1, 1, 0, 1, -1 }, new int[] { -1, -1, -1, 0, 0, 1, 1, 1 }, 1, 8, 4);
+
+	HeatDiffusion fire;
+	int palette[];
+	private final FastRandom random = new FastRandom();
+	ParticleSystem particles;
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
-		fire = new int[w * h];
-		particles = new Particle[NUMBER_OF_PARTICLES];
+		fire = new HeatDiffusion(w, h, KERNEL, Border.ZERO);
+		fire.setRegion(1, 1, w - 3, h - 3);
+		particles = new ParticleSystem(NUMBER_OF_PARTICLES);
+		particles.setAcceleration(0, 1, 0);
+		/* the particles are drawn as crosses in the cells which are computed */
+		particles.setClip(2, 2, w - 5, h - 5);
 
 		/* create a suitable shadebob palette, this is crucial for a good effect */
 		/* black to blue, blue to red, red to white */
-		final RGB[] colors = new RGB[256];
+		palette = new int[256];
 		for (int i = 0; i < 32; ++i) {
 			/* black to blue, 32 values */
-			colors[i] = new RGB(0, 0, i << 1);
+			palette[i] = createColor(0, 0, i << 1);
 
 			/* blue to red, 32 values */
-			colors[i + 32] = new RGB(i << 3, 0, 64 - (i << 1));
+			palette[i + 32] = createColor(i << 3, 0, 64 - (i << 1));
 
 			/* red to yellow, 32 values */
-			colors[i + 64] = new RGB(255, i << 3, 0);
+			palette[i + 64] = createColor(255, i << 3, 0);
 
 			/* yellow to white, 162 */
-			colors[i + 96] = new RGB(255, 255, i << 2);
-			colors[i + 128] = new RGB(255, 255, 64 + (i << 2));
-			colors[i + 160] = new RGB(255, 255, 128 + (i << 2));
-			colors[i + 192] = new RGB(255, 255, 192 + i);
-			colors[i + 224] = new RGB(255, 255, 224 + i);
+			palette[i + 96] = createColor(255, 255, i << 2);
+			palette[i + 128] = createColor(255, 255, 64 + (i << 2));
+			palette[i + 160] = createColor(255, 255, 128 + (i << 2));
+			palette[i + 192] = createColor(255, 255, 192 + i);
+			palette[i + 224] = createColor(255, 255, 224 + i);
 		}
 
-		imageData = new ImageData(w, h, 8, new PaletteData(colors));
+		initParticles();
+	}
 
-		initParticles(true);
+	private int createColor(int r, int g, int b) {
+		return r << 16 | g << 8 | b;
 	}
 
-	private void initParticles(boolean create) {
-		for (int i = 0; i < NUMBER_OF_PARTICLES; i++) {
-			if (create) {
-				particles[i] = new Particle();
-			}
-
-			particles[i].xpos = (w >> 1) - 20 + (int) (40.0 * Math.random());
-			particles[i].ypos = (h >> 1) - 20 + (int) (40.0 * Math.random());
-			particles[i].xdir = -10 + (int) (20.0 * Math.random());
-			particles[i].ydir = -17 + (int) (19.0 * Math.random());
-			particles[i].colorindex = 255;
-			particles[i].dead = false;
+	private void initParticles() {
+		particles.clear();
+		for (int n = 0; n < particles.getCapacity(); n++) {
+			final int i = particles.spawn();
+			particles.x[i] = (w >> 1) - 20 + random.nextInt(40);
+			particles.y[i] = (h >> 1) - 20 + random.nextInt(40);
+			particles.vx[i] = -10 + random.nextInt(20);
+			particles.vy[i] = -17 + random.nextInt(19);
+			particles.life[i] = 255;
 		}
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		// Animation
-		/* move and draw particles into fire array */
-		int nbDead = 0;
-		for (int i = 0; i < NUMBER_OF_PARTICLES; i++) {
-			if (!particles[i].dead) {
-				particles[i].xpos += particles[i].xdir;
-				particles[i].ypos += particles[i].ydir;
-
-				/* is particle dead? */
-				if (particles[i].ypos >= h - 3 || particles[i].colorindex == 0 || particles[i].xpos <= 1 || particles[i].xpos >= w - 3) {
-					particles[i].dead = true;
-					continue;
-				}
-
-				/* gravity takes over */
-				particles[i].ydir++;
-
-				/* particle cools off */
-				particles[i].colorindex--;
-
-				/* draw particle */
-				final int temp = particles[i].ypos * w + particles[i].xpos;
-
-				fire[temp] = particles[i].colorindex;
-				fire[temp - 1] = particles[i].colorindex;
-				fire[temp + w] = particles[i].colorindex;
-				fire[temp - w] = particles[i].colorindex;
-				fire[temp + 1] = particles[i].colorindex;
-			} else {
-				nbDead++;
-			}
+		final boolean allDead = particles.getCount() == 0;
+
+		/* move particles, gravity takes over and they cool off */
+		particles.move();
+
+		/* kill the dead particles, then draw the others into fire array */
+		final byte[] cells = fire.getCells();
+		final int count = particles.project(w, h, 0, 0, false);
+		final int[] offsets = particles.getOffsets(), life = particles.life;
+		for (int i = 0; i < count; i++) {
+			final int temp = offsets[i];
+			final byte colorindex = (byte) life[i];
+			cells[temp] = colorindex;
+			cells[temp - 1] = colorindex;
+			cells[temp + w] = colorindex;
+			cells[temp - w] = colorindex;
+			cells[temp + 1] = colorindex;
 		}
 
 		/* create fire effect */
-		for (int i = 1; i < h - 2; i++) {
-			final int index = (i - 1) * w;
-
-			for (int j = 1; j < w - 2; j++) {
-				int buf = index + j;
-
-				int temp = fire[buf];
-				temp += fire[buf + 1];
-				temp += fire[buf - 1];
-				buf += w;
-				temp += fire[buf - 1];
-				temp += fire[buf + 1];
-				buf += w;
-				temp += fire[buf];
-				temp += fire[buf + 1];
-				temp += fire[buf - 1];
-
-				temp >>= 3;
-
-				if (temp > 4) {
-					temp -= 4;
-				} else {
-					temp = 0;
-				}
-
-				fire[buf - w] = temp;
-			}
-		}
+		fire.step();
 
-		/* draw fire array to screen from bottom to top */
-		int image = w * h - 1;
-		for (int i = h - 1; i >= 0; --i) {
-			final int temp = i * w;
-			for (int j = w - 1; j >= 0; --j) {
-				imageData.setPixel(image % w, image / w, fire[temp + j]);
-				image--;
-			}
-		}
+		/* draw fire array to screen */
+		PixelOps.get().expand(palette, fire.getCells(), argb, 0, w * h);
 
-		if (nbDead == NUMBER_OF_PARTICLES) {
-			initParticles(false);
+		if (allDead) {
+			initParticles();
 		}
 
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			redrawCanvas(e.gc);
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas(GC gc) {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Explosion app = new Explosion(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Explosion());
 	}
 }
@@ -12,42 +12,39 @@
  *******************************************************************************/
 package org.mihalis.demos.fire;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Fire {
-
-	private final Display display;
-	private Canvas canvas;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.HeatDiffusion;
+import org.mihalis.demos.core.HeatDiffusion.Border;
+import org.mihalis.demos.core.HeatDiffusion.Kernel;
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Fire implements IndexedEffect {
+
 	private int w, h;
-	private ImageData imageData;
 	private int[] palette;
-	private int[][] fire;
+	private HeatDiffusion fire;
+	private byte[] indices;
+	private int[] noise;
+	private final FastRandom random = new FastRandom();
 
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	public Fire(Display display) {
-		this.display = display;
-	}
+	// Each cell is fed by the three cells below it and the one under them, and cools down by a little more than a quarter of their sum
+	private static final Kernel KERNEL = new Kernel(new int[] { -1, 0, 1, 0 }, new int[] { 1, 1, 1, 2 }, 32, 129, 0);
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		palette = new int[256];
-		fire = new int[w][h];
-
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				fire[x][y] = 0;
-			}
-		}
+		fire = new HeatDiffusion(w, h, KERNEL, Border.WRAP);
+		// The bottom row is the noise feeding the fire
+		fire.setRegion(0, 0, w, h - 1);
+		indices = new byte[w * h];
+		noise = new int[w];
 
 		// generate the palette
 		for (int x = 0; x < 256; x++) {
@@ -57,33 +54,33 @@ public class Fire {
 			// Lightness is 0..255 for x=0..128, and 255 for x=128..255
 			palette[x] = HSLtoRGB(x / 3, 255, Math.min(255, x * 2));
 		}
+	}
 
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		renderIndices(indices, frameIndex);
+		PixelOps.get().expand(palette, indices, argb, 0, w * h);
 	}
 
-	public void animate() {
+	@Override
+	public int[] getPalette() {
+		return palette;
+	}
 
+	@Override
+	public void renderIndices(byte[] indices, long frameIndex) {
 		// randomize the bottom row of the fire buffer
+		random.nextInts(noise, 0, w, 0, 100);
+		final byte[] cells = fire.getCells();
+		final int bottom = (h - 1) * w;
 		for (int x = 0; x < w; x++) {
-			fire[x][h - 1] = (int) (Math.abs(32768 + Math.random() * 100) % 256);
+			cells[bottom + x] = (byte) noise[x];
 		}
-		// do the fire calculations for every pixel, from top to bottom
-		for (int y = 0; y < h - 1; y++) {
-			for (int x = 0; x < w; x++) {
-				fire[x][y] = (fire[(x - 1 + w) % w][(y + 1) % h] + fire[x % w][(y + 1) % h] + fire[(x + 1) % w][(y + 1) % h] + fire[x % w][(y + 2) % h]) * 32 / 129;
-			}
-		}
-
-		// set the drawing buffer to the fire buffer, using the palette colors
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				imageData.setPixel(x, y, palette[fire[x][y]]);
-			}
+		// do the fire calculations for every pixel
+		fire.step();
 
-		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		// set the drawing buffer to the fire buffer, the palette is applied later
+		System.arraycopy(fire.getCells(), 0, indices, 0, w * h);
 	}
 
 	private int HSLtoRGB(float _h, float _s, float _l) {
@@ -155,71 +152,7 @@ public class Fire {
 		return ri << 16 | gi << 8 | bi;
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText("Fire Effect");
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 256;
-		gdCanvas.heightHint = 256;
-		canvas.setLayoutData(gdCanvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			redrawCanvas(e.gc);
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas(GC gc) {
-		if (imageData == null) {
-			return;
-		}
-		final Image img = new Image(display, imageData);
-		if (img != null) {
-			gc.drawImage(img, 0, 0);
-		}
-		img.dispose();
-
-	}
-
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Fire app = new Fire(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run("Fire Effect", 256, 256, TIMER_INTERVAL, new Fire());
 	}
 }
@@ -12,17 +12,19 @@
  *******************************************************************************/
 package org.mihalis.demos.flattext;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class FlatText {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.ParallelRenderer;
+import org.mihalis.demos.core.ParallelRenderer.BandKernel;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Sampler;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class FlatText implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "FlatText";
@@ -34,149 +36,76 @@ public class FlatText {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	//
-	private int[] tex;
+	private Sampler tex;
 	private int[] sine;
 	private int[] cose;
 	private double ang;
 	private int xd;
 	private int yd;
 	private static final int HAUTEUR = 100; // max 325
+	private int angnew;
 
-	public FlatText(Display display) {
-		this.display = display;
-	}
+	private final ParallelRenderer renderer = new ParallelRenderer();
+	private final BandKernel<int[]> rowKernel = this::drawRows;
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Load texture
-		final ImageData texture = new ImageData(getClass().getResourceAsStream("TEXFLAT2.png"));
-		imageData = new ImageData(w, h, texture.depth, texture.palette);
-
-		tex = new int[65536];
-		texture.getPixels(0, 0, 65536, tex, 0);
-
-		// Precompute sin & cos
-		sine = new int[256];
-		cose = new int[256];
-		for (int i = 0; i < 256; i++) {
-			sine[i] = (int) (Math.sin(i * 0.02454) * 256);
-			cose[i] = (int) (Math.cos(i * 0.02454) * 256);
-		}
+		tex = new Sampler(Texture.of(Bitmap.load(getClass(), "TEXFLAT2.png")), EdgeMode.WRAP);
+
+		// Shared sin & cos tables
+		sine = FixedMath.sinTable(256, 256);
+		cose = FixedMath.cosTable(256, 256);
 
 		xd = 0;
 		yd = 0;
 
 	}
 
-	public void animate() {
-
-		final int a = (int) (HAUTEUR * 0.625);
-		final int b = HAUTEUR * 100;
-
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		ang += 2f;
 		yd += 5;
 
-		final int angnew = (int) (ang - ((int) (ang / 256) << 8));
-		int u, v, index, unew, vnew;
+		angnew = (int) (ang - ((int) (ang / 256) << 8));
 		final int halfH = h / 2;
-		final int halfW = w / 2;
-
-		for (int y = 0; y < halfH; y++) {
-			for (int x = 0; x < w; x++) {
-
-				u = a * (x - halfW) / (y - halfH);
-				v = b / (y - halfH);
 
-				unew = (u * cose[angnew] - v * sine[angnew] >> 8) + xd;
-				vnew = (u * sine[angnew] + v * cose[angnew] >> 8) + yd;
+		// Only the floor is drawn, the sky stays black
+		Arrays.fill(argb, 0, w * (h - halfH), 0);
 
-				index = unew + (vnew << 8) & 65535; // Eqv % 65536
-				imageData.setPixel(x, h - y - 1, tex[index]);
-			}
-		}
-
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		renderer.render(argb, halfH, rowKernel);
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
+	private void drawRows(int[] argb, int from, int to) {
+		final int a = (int) (HAUTEUR * 0.625);
+		final int b = HAUTEUR * 100;
 
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+		final int halfH = h / 2;
+		final int halfW = w / 2;
+		final long cos = cose[angnew], sin = sine[angnew];
+
+		for (int y = from; y < to; y++) {
+			// u = a * (x - halfW) / (y - halfH) and v = b / (y - halfH), rotated: each row is a line of the texture, read at once in 16.16 fixed point.
+			// The rows near the horizon step over many texels, they are read from the mip levels.
+			final long du = (long) a * Sampler.ONE / (y - halfH);
+			final long u = -halfW * du;
+			final long v = (long) b * Sampler.ONE / (y - halfH);
+
+			// Casts only drop multiples of 2^32, the repeated texture does not change
+			final int unew = (int) ((u * cos - v * sin >> 8) + ((long) xd << Sampler.SHIFT));
+			final int vnew = (int) ((u * sin + v * cos >> 8) + ((long) yd << Sampler.SHIFT));
+			tex.span(argb, (h - y - 1) * w, w, unew, vnew, (int) (du * cos >> 8), (int) (du * sin >> 8));
 		}
-		image.dispose();
 
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final FlatText app = new FlatText(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new FlatText());
 	}
 }
@@ -1,19 +1,22 @@
-/*******************************************************************************
- * Copyright (c) 2018 Laurent Caron
- *
- * All rights reserved. This program and the
- * accompanying materials are made available under the terms of the Eclipse
- * Public License v1.0 which accompanies this distribution, and is available at
- * http://www.eclipse.org/legal/epl-v10.html
- *
- * Contributors:
- * W.P. van Paassen - Original Version
- * Laurent CARON (laurent.caron at gmail dot com) - Conversion to SWT
- *******************************************************************************/
-package org.mihalis.demos.explosion;
-
-public class Particle {
-	int xpos, ypos, xdir, ydir;
-	int colorindex;
-	boolean dead;
-}
+/*******************************************************************************
+ * Copyright (c) 2019 Laurent Caron
+ *
+ * All rights reserved. This program and the
+ * accompanying materials are made available under the terms of the Eclipse
+ * Public License v1.0 which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Laurent CARON (laurent.caron at gmail dot com) - Initial Contributor
+ *******************************************************************************/
+package org.mihalis.demos.plasma;
+
+/**
+ * The plasma in palette cycling mode, which can be created without argument like the other effects
+ */
+public class CyclingPlasma extends Plasma {
+
+	public CyclingPlasma() {
+		super(true);
+	}
+}
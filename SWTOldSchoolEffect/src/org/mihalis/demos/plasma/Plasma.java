@@ -12,18 +12,18 @@
  *******************************************************************************/
 package org.mihalis.demos.plasma;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Plasma {
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.ParallelRenderer;
+import org.mihalis.demos.core.ParallelRenderer.BandKernel;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+/**
+ * The classic plasma. In palette cycling mode, the field is computed once and only the palette rotates from one frame to the next.
+ */
+public class Plasma implements IndexedEffect, SteppedEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Plasma";
@@ -35,59 +35,83 @@ public class Plasma {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
-	private int[] palette;
-	private final int sin[] = new int[1800];
+	private int[] colors;
+	private final int[] palette = new int[256];
+	// A power of two of entries per turn, indexed with a mask
+	private static final int SINE_SIZE = 512;
+	private static final int SINE_MASK = SINE_SIZE - 1;
+	private int sin[];
 	private int plasmaIndex = 1;
+	private int[] indexX;
+	private byte[] indices;
 
-	public Plasma(Display display) {
-		this.display = display;
+	// Palette cycling
+	private final boolean cycling;
+	private byte[] field;
+	private int cycle;
+
+	private final ParallelRenderer renderer = new ParallelRenderer();
+	private final PixelOps pixelOps = PixelOps.get();
+	private final BandKernel<byte[]> rowKernel = this::drawRows;
+
+	public Plasma() {
+		this(false);
+	}
+
+	/**
+	 * @param cycling <code>true</code> to animate the plasma by rotating its palette
+	 */
+	public Plasma(boolean cycling) {
+		this.cycling = cycling;
 	}
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		indexX = new int[w];
+		indices = new byte[w * h];
+		field = null;
 		createColors();
+		System.arraycopy(colors, 0, palette, 0, 256);
 		precomputeSin();
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
 	}
 
 	private void createColors() {
-		palette = new int[256];
+		colors = new int[256];
 		int i, r = 0, g = 0, b = 0;
 		for (i = 0; i < 256; i++) {
-			palette[i] = createColor(0, 0, 0);
+			colors[i] = createColor(0, 0, 0);
 		}
 
 		for (i = 0; i < 42; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			r++;
 		}
 
 		for (i = 42; i < 84; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			g++;
 		}
 
 		for (i = 84; i < 126; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			b++;
 		}
 
 		for (i = 126; i < 168; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			r--;
 		}
 
 		for (i = 168; i < 210; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			g--;
 		}
 
 		for (i = 210; i < 252; i++) {
-			palette[i] = createColor(r * 4, g * 4, b * 4);
+			colors[i] = createColor(r * 4, g * 4, b * 4);
 			b--;
 		}
 
@@ -98,106 +122,67 @@ public class Plasma {
 	}
 
 	private void precomputeSin() {
-		for (int i = 0; i < 1800; i++) {
-			sin[i] = (int) (Math.cos(Math.PI * i / 180) * 1024);
-		}
-	}
-
-	public void animate() {
-		drawPlasma();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		sin = FixedMath.cosTable(SINE_SIZE, 1024);
 	}
 
-	private void drawPlasma() {
-		plasmaIndex += 2;
-
-		if (plasmaIndex > 360) {
-			plasmaIndex = 0;
+	@Override
+	public void step() {
+		if (!cycling) {
+			plasmaIndex = plasmaIndex + 2 & SINE_MASK;
+			return;
 		}
 
-		for (int x = 0; x < CANVAS_WIDTH; x++) {
-			final int indexX = 75 + (sin[(x << 1) + (plasmaIndex >> 1)] + sin[x + (plasmaIndex << 1)] + (sin[(x >> 1) + plasmaIndex] << 1) >> 6);
-
-			for (int y = 0; y < CANVAS_HEIGHT; y++) {
-				final int indexY = 75 + ((sin[y + (plasmaIndex << 1)] << 1) + sin[(y << 1) + (plasmaIndex >> 1)] + (sin[y + plasmaIndex] << 1) >> 5);
-				final int colorIndex = Math.abs((indexX * indexY >> 5) % 256);
-				imageData.setPixel(x, y, palette[colorIndex]);
-			}
+		cycle = cycle + 1 & 255;
+		for (int i = 0; i < 256; i++) {
+			palette[i] = colors[i + cycle & 255];
 		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
+	@Override
+	public void render(int[] argb, long frameIndex) {
+		renderIndices(indices, frameIndex);
+		pixelOps.expand(palette, indices, argb, 0, w * h);
 	}
 
-	private void redrawCanvas() {
-		if (imageData == null) {
+	@Override
+	public void renderIndices(byte[] indices, long frameIndex) {
+		if (!cycling) {
+			drawPlasma(indices);
 			return;
 		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
 
+		if (field == null) {
+			field = new byte[w * h];
+			drawPlasma(field);
+		}
+		System.arraycopy(field, 0, indices, 0, w * h);
 	}
 
-	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Plasma app = new Plasma(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
+	@Override
+	public int[] getPalette() {
+		return palette;
+	}
 
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
+	private void drawPlasma(byte[] indices) {
+		for (int x = 0; x < w; x++) {
+			indexX[x] = 75 + (sin[(x << 1) + (plasmaIndex >> 1) & SINE_MASK] + sin[x + (plasmaIndex << 1) & SINE_MASK] + (sin[(x >> 1) + plasmaIndex & SINE_MASK] << 1) >> 6);
+		}
+		renderer.render(indices, h, rowKernel);
+	}
 
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
+	private void drawRows(byte[] indices, int from, int to) {
+		for (int y = from; y < to; y++) {
+			final int indexY = 75 + ((sin[y + (plasmaIndex << 1) & SINE_MASK] << 1) + sin[(y << 1) + (plasmaIndex >> 1) & SINE_MASK] + (sin[y + plasmaIndex & SINE_MASK] << 1) >> 5);
+			int index = y * w;
+			for (int x = 0; x < w; x++) {
+				indices[index++] = (byte) (Math.abs(indexX[x] * indexY >> 5) & 255);
 			}
 		}
+	}
 
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+	public static void main(String[] args) {
+		// -cycle animates the palette instead of the field
+		final boolean cycling = args.length > 0 && "-cycle".equals(args[0]);
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Plasma(cycling));
 	}
 }
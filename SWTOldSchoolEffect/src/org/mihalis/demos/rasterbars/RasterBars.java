@@ -12,18 +12,12 @@
  *******************************************************************************/
 package org.mihalis.demos.rasterbars;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class RasterBars {
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class RasterBars implements IndexedEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Rasters";
@@ -35,23 +29,19 @@ public class RasterBars {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 	private int[] palette;
+	private byte[] indices;
 
 	// Sin offset for rasterbar
 	private int offset1, offset2;
 
-	public RasterBars(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		indices = new byte[w * h];
 		createColors();
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
 	}
 
 	private void createColors() {
@@ -77,27 +67,36 @@ public class RasterBars {
 		return r << 16 | g << 8 | b;
 	}
 
-	public void animate() {
-		drawBackground();
-		drawBars();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		renderIndices(indices, frameIndex);
+		PixelOps.get().expand(palette, indices, argb, 0, w * h);
+	}
+
+	@Override
+	public void renderIndices(byte[] indices, long frameIndex) {
+		drawBackground(indices);
+		drawBars(indices);
 		offset1 += 2;
 		offset2 += 2;
 	}
 
-	private void drawBackground() {
+	@Override
+	public int[] getPalette() {
+		return palette;
+	}
+
+	private void drawBackground(byte[] indices) {
 		float color = 160f;
-		final float inc = 96f / CANVAS_HEIGHT;
+		final float inc = 96f / h;
 
-		for (int a = 0; a < CANVAS_HEIGHT; a++) {
-			drawLine(0, a, CANVAS_WIDTH, a, (int) color);
+		for (int a = 0; a < h; a++) {
+			drawLine(indices, 0, a, w, a, (int) color);
 			color += inc;
 		}
 	}
 
-	private void drawLine(int x1, int y1, int x2, int y2, int color) {
+	private void drawLine(byte[] indices, int x1, int y1, int x2, int y2, int color) {
 
 		final int dx = Math.abs(x1 - x2);
 		final int dy = Math.abs(y1 - y2);
@@ -130,7 +129,7 @@ public class RasterBars {
 					cxy -= dy;
 				}
 
-				imageData.setPixel(x1, y, palette[color]);
+				Raster.plot(indices, w, h, x1, y, color);
 			}
 		} else {
 			if (x1 > x2) {
@@ -158,101 +157,35 @@ public class RasterBars {
 					cxy -= dx;
 				}
 
-				imageData.setPixel(x, y1, palette[color]);
+				Raster.plot(indices, w, h, x, y1, color);
 			}
 		}
 	}
 
-	private void drawBars() {
+	private void drawBars(byte[] indices) {
 		int color = 0;
 		int a, c, d;
-		for (c = 0; c < CANVAS_HEIGHT; c += 3) {
+		for (c = 0; c < h; c += 3) {
 			d = (int) (150 + 60 * Math.sin((c + offset1) * 3.14 / 180) + 50 * Math.cos((c + offset2) * 4.14 / 180));
 
 			for (a = d; a < d + 20; a++) {
-				drawLine(a, c, a, CANVAS_HEIGHT, color);
+				drawLine(indices, a, c, a, h, color);
 			}
 
 			d = (int) (145 + 100 * Math.sin((c + offset2) * 4.14 / 180) + 50 * Math.cos((c + offset2) * 4.14 / 180));
 
 			for (a = d; a < d + 35; a++) {
-				drawLine(a, c + 3, a, CANVAS_HEIGHT, color + 80);
+				drawLine(indices, a, c + 3, a, h, color + 80);
 			}
 
-			color++;
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+			// Each bar has 80 colors
+			if (color < 79) {
+				color++;
+			}
 		}
-		image.dispose();
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final RasterBars app = new RasterBars(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new RasterBars());
 	}
 }
@@ -12,17 +12,13 @@
  *******************************************************************************/
 package org.mihalis.demos.rayfilter;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class BlockEffect {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class BlockEffect implements Effect {
 
 	// Title
 	private static final String TITLE = "BlockEffect";
@@ -34,39 +30,29 @@ public class BlockEffect {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	//
-	private ImageData image;
+	private Bitmap image;
 	private int blockSize;
 	private int sens;
 
-	public BlockEffect(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Load image
-		image = new ImageData(getClass().getResourceAsStream("flower.jpg"));
-
-		imageData = new ImageData(w, h, image.depth, image.palette);
-
-		final int[] pixels = new int[w * h];
-		image.getPixels(0, 0, Math.min(w * h, image.width * image.height), pixels, 0);
-		imageData.setPixels(0, 0, Math.min(w * h, image.width * image.height), pixels, 0);
+		image = Bitmap.load(getClass(), "flower.jpg");
 
 		blockSize = 1;
 		sens = 1;
 
 	}
 
-	public void animate() {
-		imageData = filter(image, blockSize);
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		filter(image, blockSize, argb);
 		blockSize += sens;
 
 		if (blockSize == 1) {
@@ -76,13 +62,12 @@ public class BlockEffect {
 		if (blockSize == w / 4) {
 			sens = -1;
 		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
 	}
 
-	private ImageData filter(ImageData src, int blockSize) {
-		final ImageData dst = new ImageData(w, h, src.depth, src.palette);
+	private void filter(Bitmap src, int blockSize, int[] dst) {
+		// What is outside of the image stays black
+		Arrays.fill(dst, 0, w * h, 0);
+
 		final int width = src.width;
 		final int height = src.height;
 
@@ -116,11 +101,9 @@ public class BlockEffect {
 				setRGB(dst, x, y, w, h, pixels, 0, w);
 			}
 		}
-
-		return dst;
 	}
 
-	public void getRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
+	public void getRGB(Bitmap image, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
 		if (pixels == null) {
 			pixels = new int[offset + h * scansize];
 		}
@@ -136,87 +119,21 @@ public class BlockEffect {
 
 	}
 
-	public void setRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
+	public void setRGB(int[] argb, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
+		// Clip against the frame
+		final int endX = Math.min(startX + w, this.w);
+		final int endY = Math.min(startY + h, this.h);
 		int yoff = offset;
 		int off;
-		for (int y = startY; y < startY + h; y++, yoff += scansize) {
+		for (int y = startY; y < endY; y++, yoff += scansize) {
 			off = yoff;
-			for (int x = startX; x < startX + w; x++) {
-				image.setPixel(x, y, pixels[off++]);
+			for (int x = startX; x < endX; x++) {
+				argb[y * this.w + x] = pixels[off++];
 			}
 		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-
-	}
-
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final BlockEffect app = new BlockEffect(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new BlockEffect());
 	}
 }
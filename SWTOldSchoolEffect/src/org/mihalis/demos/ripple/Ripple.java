@@ -12,19 +12,17 @@
  *******************************************************************************/
 package org.mihalis.demos.ripple;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.MouseEvent;
-import org.eclipse.swt.events.MouseMoveListener;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Ripple {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.InteractiveEffect;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Ripple implements InteractiveEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Ripple";
@@ -35,12 +33,9 @@ public class Ripple {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 1000 / 30;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
-
 	//
-	private ImageData offImage;
+	private int frameWidth;
+	private int frameHeight;
 	private int width;
 	private int height;
 	private int hwidth;
@@ -48,20 +43,20 @@ public class Ripple {
 	private int riprad;
 	private int size;
 	private short[] ripplemap;
-	private int[] ripple;
+	private DisplacementMap ripple;
 	private int[] texture;
+	private DisplacementEngine engine;
 	private int oldind;
 	private int newind;
 	private int mapind;
 
-	public Ripple(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int frameWidth, int frameHeight) {
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
 
 		// Load image
-		final ImageData img = new ImageData(getClass().getResourceAsStream("ocean.jpg"));
+		final Bitmap img = Bitmap.load(getClass(), "ocean.jpg");
 
 		width = img.width;
 		height = img.height;
@@ -71,30 +66,38 @@ public class Ripple {
 
 		size = width * (height + 2) * 2;
 		ripplemap = new short[size];
-		ripple = new int[width * height];
-		texture = new int[width * height];
+		ripple = new DisplacementMap(width, height);
+		texture = img.pixels;
+		engine = new DisplacementEngine(new Texture(width, height, texture), EdgeMode.CLAMP);
 		oldind = width;
 		newind = width * (height + 3);
+	}
 
-		img.getPixels(0, 0, width * height, texture, 0);
-		offImage = new ImageData(width, height, img.depth, img.palette);
-
-		canvas.addMouseMoveListener(new MouseMoveListener() {
-
-			@Override
-			public void mouseMove(MouseEvent e) {
-				disturb(e.x, e.y);
-			}
-		});
+	@Override
+	public void resize(int frameWidth, int frameHeight) {
+		// The simulation keeps the size of the texture, only the output is clipped
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		newframe();
-		// Copie ripple dans offImage
-		offImage.setPixels(0, 0, width * height, ripple, 0);
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
+		// Draw the ripple into the frame, and clear what it does not cover
+		final int copyWidth = Math.min(width, frameWidth);
+		final int copyHeight = Math.min(height, frameHeight);
+		engine.render(argb, frameWidth, 0, 0, copyWidth, copyHeight, ripple, 0, 0, 0, 0);
+		if (copyWidth < frameWidth) {
+			for (int y = 0; y < copyHeight; y++) {
+				Arrays.fill(argb, y * frameWidth + copyWidth, (y + 1) * frameWidth, 0);
+			}
 		}
+		Arrays.fill(argb, copyHeight * frameWidth, frameWidth * frameHeight, 0);
+	}
+
+	@Override
+	public void mouseMove(int x, int y) {
+		disturb(x, y);
 	}
 
 	private void newframe() {
@@ -104,6 +107,7 @@ public class Ripple {
 		oldind = newind;
 		newind = i;
 
+		final int[] ripple = this.ripple.getTable();
 		i = 0;
 		mapind = oldind;
 		for (int y = 0; y < height; y++) {
@@ -134,49 +138,13 @@ public class Ripple {
 					b = 0;
 				}
 
-				ripple[i] = texture[a + b * width];
+				ripple[i] = DisplacementMap.pack(a, b);
 				mapind++;
 				i++;
 			}
 		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (offImage == null) {
-			return;
-		}
-		final Image image = new Image(display, offImage);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-	}
-
 	private void disturb(int dx, int dy) {
 		for (int j = dy - riprad; j < dy + riprad; j++) {
 			for (int k = dx - riprad; k < dx + riprad; k++) {
@@ -188,36 +156,6 @@ public class Ripple {
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Ripple app = new Ripple(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Ripple());
 	}
 }
@@ -12,17 +12,17 @@
  *******************************************************************************/
 package org.mihalis.demos.rotozoom;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class RotoZoom {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.ParallelRenderer;
+import org.mihalis.demos.core.ParallelRenderer.BandKernel;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Sampler;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class RotoZoom implements SteppedEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "RotoZoom";
@@ -34,59 +34,52 @@ public class RotoZoom {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	//
-	private ImageData tile;
+	private Sampler tile;
 	private int[] roto;
 	private int[] roto2;
 	private int path, zpath;
+	private int xd, yd;
 
-	public RotoZoom(Display display) {
-		this.display = display;
-	}
+	private final ParallelRenderer renderer = new ParallelRenderer();
+	private final BandKernel<int[]> rowKernel = this::drawRows;
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Load image
-		tile = new ImageData(getClass().getResourceAsStream("tux256256.png"));
+		tile = new Sampler(Texture.of(Bitmap.load(getClass(), "tux256256.png")), EdgeMode.WRAP);
 		roto = new int[256];
 		roto2 = new int[256];
 
+		final int[] sine = FixedMath.sinTable(256, 4096);
 		for (int i = 0; i < 256; i++) {
-			final float rad = (float) (i * 1.41176 * 0.0174532);
-			final float c = (float) Math.sin(rad);
-			roto[i] = (int) ((c + 0.8) * 4096.0);
-			roto2[i] = (int) (2.0 * c * 4096.0);
+			roto[i] = sine[i] + (int) (0.8 * 4096.0);
+			roto2[i] = sine[i] << 1;
 		}
 
 		path = 0;
 		zpath = 0;
-
-		imageData = new ImageData(w, h, 24, tile.palette);
-
 	}
 
-	public void animate() {
+	@Override
+	public void step() {
 		// Animation
-
-		/* draw the tile at current zoom and rotation */
-		draw_tile(roto[path], roto[path + 128 & 255], roto2[zpath]);
 		path = path - 1 & 255;
 		zpath = zpath + 1 & 255;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
 	}
 
-	private void draw_tile(int stepx, int stepy, int zoom) {
-		int x, y, i, j, xd, yd, a, b, sx, sy;
+	@Override
+	public void render(int[] argb, long frameIndex) {
+		/* draw the tile at current zoom and rotation */
+		draw_tile(argb, roto[path], roto[path + 128 & 255], roto2[zpath]);
+	}
 
-		sx = sy = 0;
+	private void draw_tile(int[] argb, int stepx, int stepy, int zoom) {
 		xd = stepx * zoom >> 12;
 		yd = stepy * zoom >> 12;
 
@@ -99,97 +92,22 @@ public class RotoZoom {
 		 *
 		 * More fun can be had by playing around with x, y, xd, and yd as you move about
 		 * the image.
+		 *
+		 * The starting coordinate of row j is (-j * yd, j * xd), so the rows can be drawn in any order.
+		 * When zoomed out, the rows are read from a smaller mip level of the tile.
 		 */
-
-		int index = 0;
-		for (j = 0; j < h; j++) {
-			x = sx;
-			y = sy;
-			for (i = 0; i < w; i++) {
-				a = x >> 12 & 255;
-				b = y >> 12 & 255;
-				imageData.setPixel(index % w, index / w, tile.getPixel(a, b));
-				index++;
-
-				x += xd;
-				y += yd;
-			}
-			sx -= yd;
-			sy += xd;
-		}
-
+		renderer.render(argb, h, rowKernel);
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+	private void drawRows(int[] argb, int from, int to) {
+		// From 20.12 to 16.16 fixed point
+		final int shift = Sampler.SHIFT - 12;
+		for (int j = from; j < to; j++) {
+			tile.span(argb, j * w, w, -j * yd << shift, j * xd << shift, xd << shift, yd << shift);
 		}
-		image.dispose();
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final RotoZoom app = new RotoZoom(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new RotoZoom());
 	}
 }
@@ -11,18 +11,13 @@
  *******************************************************************************/
 package org.mihalis.demos.scrolls;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Font;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class AdvancedScroll {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.TextRenderer;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class AdvancedScroll implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "AdvancedScroll";
@@ -34,68 +29,36 @@ public class AdvancedScroll {
 	private static final int CANVAS_WIDTH = 480;
 	private static final int CANVAS_HEIGHT = 360;
 
-	private Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
+	private Bitmap textImage;
 
 	//
-	private String[] text = { "ligne 1", "ligne 1 fgsdfsdfgsdf", "ligne 1 sdfg sdg sdfg  sgf s seg", "ligne 1", "ligne 1 sdfgsdfgsdfgdg", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1",
+	private final String[] text = { "ligne 1", "ligne 1 fgsdfsdfgsdf", "ligne 1 sdfg sdg sdfg  sgf s seg", "ligne 1", "ligne 1 sdfgsdfgsdfgdg", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1",
 			"ligne 1", "ligne 1", "ligne 1", "ligne 1" };
 	private static final String FONT = "Lucida Sans";
 	private static final int FONT_SIZE = 14;
 	private int y;
 	private static final int STEP = 1;
-	private int oldX, oldY, oldWidth, oldHeight;
-
-	public AdvancedScroll(Display display) {
-		this.display = display;
-	}
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Init image
-		image = new Image(display, w, h);
+		textImage = TextRenderer.renderLines(text, FONT, FONT_SIZE, w, 0xFFFFFF, 0x000000);
 		y = h + 10;
-
-		oldX = 0;
-		oldY = 0;
-		oldWidth = w;
-		oldHeight = h;
-
-		redrawCanvas();
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 
 		// Clear screen
-		final GC gcT = new GC(image);
-		gcT.setForeground(display.getSystemColor(SWT.COLOR_WHITE));
-		gcT.setBackground(display.getSystemColor(SWT.COLOR_BLACK));
-		gcT.fillRectangle(oldX, oldY, oldWidth, oldHeight);
-		final Font font = new Font(display, FONT, FONT_SIZE, SWT.NORMAL);
-		gcT.setFont(font);
-		gcT.setAdvanced(true);
-		gcT.setAntialias(SWT.ON);
+		Raster.fill(argb, w, h, 0x000000);
 
 		// Draw text
-		int currentY = y;
-		oldY = y - 1;
-		oldWidth = 0;
-		oldX = w;
-		for (final String current : text) {
-			final Point textSize = gcT.stringExtent(current);
-			final int x = (w - textSize.x) / 2;
-			gcT.drawString(current, x, currentY);
-			currentY += textSize.y * 1.5;
-
-			oldX = Math.min(oldX, x);
-			oldWidth = Math.max(oldWidth, textSize.x + 1);
-
-		}
-
-		oldHeight = currentY - oldY + 1;
+		Raster.drawBitmap(argb, w, h, textImage, 0, y);
+		final int currentY = y + textImage.height;
 
 		if (currentY <= 0) {
 			y = h + 10;
@@ -103,96 +66,27 @@ public class AdvancedScroll {
 			y -= STEP;
 		}
 
-		font.dispose();
-
 		// Draw gradient on the top
-		gcT.setForeground(display.getSystemColor(SWT.COLOR_BLACK));
 		final int maxSize = (int) (h * 0.1);
+		if (maxSize == 0) {
+			return;
+		}
 		final int step = 255 / maxSize;
 		int alpha = 255;
 		for (int i = 0; i < maxSize; i++) {
-			gcT.setAlpha(alpha);
-			gcT.drawLine(0, i, w, i);
+			Raster.blendRect(argb, w, h, 0, i, w, 1, 0x000000, alpha);
 			alpha -= step;
 		}
 
 		// Draw gradient on the bottom
-		gcT.setForeground(display.getSystemColor(SWT.COLOR_BLACK));
 		alpha = 255;
 		for (int i = 0; i < maxSize; i++) {
-			gcT.setAlpha(alpha);
-			gcT.drawLine(0, h - i, w, h - i);
+			Raster.blendRect(argb, w, h, 0, h - i, w, 1, 0x000000, alpha);
 			alpha -= step;
 		}
-
-		gcT.dispose();
-
-		redrawCanvas();
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final AdvancedScroll app = new AdvancedScroll(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new AdvancedScroll());
 	}
 }
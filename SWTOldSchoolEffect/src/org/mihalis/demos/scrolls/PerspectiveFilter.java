@@ -16,7 +16,7 @@ import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 
-import org.eclipse.swt.graphics.ImageData;
+import org.mihalis.demos.core.Bitmap;
 
 /**
  * A filter which performs a perspective distortion on an image. Coordinates are treated as if the image was a unit square, i.e. the bottom-right corner of the image is at (1, 1). The filter maps the unit square onto an arbitrary convex quadrilateral or
@@ -169,7 +169,7 @@ public class PerspectiveFilter extends TransformFilter {
 	}
 
 	@Override
-	public ImageData filter(ImageData src, ImageData dst) {
+	public Bitmap filter(Bitmap src, Bitmap dst) {
 		A = a22 * a33 - a32 * a23;
 		B = a31 * a23 - a21 * a33;
 		C = a21 * a32 - a31 * a22;
@@ -234,7 +234,7 @@ public class PerspectiveFilter extends TransformFilter {
 		return y0 - (int) Math.min(Math.min(y0, y1), Math.min(y2, y3));
 	}
 
-	public Rectangle2D getBounds2D(ImageData src) {
+	public Rectangle2D getBounds2D(Bitmap src) {
 		if (clip) {
 			return new Rectangle(0, 0, src.width, src.height);
 		}
@@ -11,18 +11,13 @@
  *******************************************************************************/
 package org.mihalis.demos.scrolls;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Font;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class StarwarsScroll {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.TextRenderer;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class StarwarsScroll implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "StarwarsScroll";
@@ -34,11 +29,10 @@ public class StarwarsScroll {
 	private static final int CANVAS_WIDTH = 480;
 	private static final int CANVAS_HEIGHT = 360;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
+	private Bitmap textImage;
+	private Bitmap source;
+	private Bitmap target;
 
 	//
 	private final String[] text = { "ligne 1", "ligne 1 fgsdfsdfgsdf", "ligne 1 sdfg sdg sdfg  sgf s seg", "ligne 1", "ligne 1 sdfgsdfgsdfgdg", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1", "ligne 1",
@@ -49,13 +43,14 @@ public class StarwarsScroll {
 	private static final int STEP = 5;
 	private PerspectiveFilter filter;
 
-	public StarwarsScroll(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
-		image = new Image(display, w, h);
+		textImage = TextRenderer.renderLines(text, FONT, FONT_SIZE, w, 0xFFFFFF, 0x000000);
+		source = new Bitmap(w, h);
+		target = null;
 		y = h + 10;
 
 		filter = new PerspectiveFilter();
@@ -63,27 +58,15 @@ public class StarwarsScroll {
 
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 
 		// Clear screen
-		final Image imageTmp = new Image(display, w, h);
-		final GC gcT = new GC(imageTmp);
-		gcT.setForeground(display.getSystemColor(SWT.COLOR_WHITE));
-		gcT.setBackground(display.getSystemColor(SWT.COLOR_BLACK));
-		gcT.fillRectangle(0, 0, w, h);
-		final Font font = new Font(display, FONT, FONT_SIZE, SWT.NORMAL);
-		gcT.setFont(font);
-		gcT.setAdvanced(true);
-		gcT.setAntialias(SWT.ON);
+		Raster.fill(source.pixels, w, h, 0xFF000000);
 
 		// Draw text
-		int currentY = y;
-		for (final String current : text) {
-			final Point textSize = gcT.stringExtent(current);
-			final int x = (w - textSize.x) / 2;
-			gcT.drawString(current, x, currentY);
-			currentY += textSize.y * 1.5;
-		}
+		Raster.drawBitmap(source.pixels, w, h, textImage, 0, y);
+		final int currentY = y + textImage.height;
 
 		if (currentY <= 0) {
 			y = h + 10;
@@ -91,79 +74,13 @@ public class StarwarsScroll {
 			y -= STEP;
 		}
 
-		// Now let's play with imageTmp
-		image = new Image(display, filter.filter(imageTmp.getImageData(), null));
-
-		font.dispose();
-		gcT.dispose();
-		imageTmp.dispose();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
+		// Now let's play with the image
+		target = filter.filter(source, target);
+		Raster.fill(argb, w, h, 0x000000);
+		Raster.drawBitmap(argb, w, h, target, 0, 0);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final StarwarsScroll app = new StarwarsScroll(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new StarwarsScroll());
 	}
 }
@@ -15,7 +15,11 @@ package org.mihalis.demos.scrolls;
 
 import java.awt.Rectangle;
 
-import org.eclipse.swt.graphics.ImageData;
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Sampler;
+import org.mihalis.demos.core.sampler.Texture;
 
 /**
  * An abstract superclass for filters which distort images in some way. The subclass only needs to override two methods to provide the mapping between source and destination pixels.
@@ -129,7 +133,7 @@ public abstract class TransformFilter {
 	protected void transformSpace(Rectangle rect) {
 	}
 
-	public ImageData filter(ImageData src, ImageData dst) {
+	public Bitmap filter(Bitmap src, Bitmap dst) {
 		final int width = src.width;
 		final int height = src.height;
 
@@ -138,17 +142,18 @@ public abstract class TransformFilter {
 		transformSpace(transformedSpace);
 
 		if (dst == null) {
-			dst = new ImageData(transformedSpace.width, transformedSpace.height, src.depth, src.palette);
+			dst = new Bitmap(transformedSpace.width, transformedSpace.height);
 		}
 
-		final int[] inPixels = getRGB(src, 0, 0, width, height, null);
+		final int[] inPixels = src.pixels;
+		// The edge actions are in the same order as the edge modes
+		final Sampler sampler = new Sampler(Texture.of(src), EdgeMode.values()[edgeAction]);
 
 		if (interpolation == NEAREST_NEIGHBOUR) {
-			return filterPixelsNN(dst, width, height, inPixels, transformedSpace);
+			return filterPixelsNN(dst, sampler, transformedSpace);
 		}
 
 		final int srcWidth = width;
-		final int srcHeight = height;
 		final int srcWidth1 = width - 1;
 		final int srcHeight1 = height - 1;
 		final int outWidth = transformedSpace.width;
@@ -156,6 +161,11 @@ public abstract class TransformFilter {
 		int outX, outY;
 		final int[] outPixels = new int[outWidth];
 
+		// The four neighbours and the weights of a whole row, filtered at once
+		final int[] nw = new int[outWidth], ne = new int[outWidth], sw = new int[outWidth], se = new int[outWidth];
+		final int[] xWeights = new int[outWidth], yWeights = new int[outWidth];
+		final PixelOps pixelOps = PixelOps.get();
+
 		outX = transformedSpace.x;
 		outY = transformedSpace.y;
 		final float[] out = new float[2];
@@ -165,130 +175,49 @@ public abstract class TransformFilter {
 				transformInverse(outX + x, outY + y, out);
 				final int srcX = (int) Math.floor(out[0]);
 				final int srcY = (int) Math.floor(out[1]);
-				final float xWeight = out[0] - srcX;
-				final float yWeight = out[1] - srcY;
-				int nw, ne, sw, se;
+				xWeights[x] = (int) ((out[0] - srcX) * 256);
+				yWeights[x] = (int) ((out[1] - srcY) * 256);
 
 				if (srcX >= 0 && srcX < srcWidth1 && srcY >= 0 && srcY < srcHeight1) {
 					// Easy case, all corners are in the image
 					final int i = srcWidth * srcY + srcX;
-					nw = inPixels[i];
-					ne = inPixels[i + 1];
-					sw = inPixels[i + srcWidth];
-					se = inPixels[i + srcWidth + 1];
+					nw[x] = inPixels[i];
+					ne[x] = inPixels[i + 1];
+					sw[x] = inPixels[i + srcWidth];
+					se[x] = inPixels[i + srcWidth + 1];
 				} else {
 					// Some of the corners are off the image
-					nw = getPixel(inPixels, srcX, srcY, srcWidth, srcHeight);
-					ne = getPixel(inPixels, srcX + 1, srcY, srcWidth, srcHeight);
-					sw = getPixel(inPixels, srcX, srcY + 1, srcWidth, srcHeight);
-					se = getPixel(inPixels, srcX + 1, srcY + 1, srcWidth, srcHeight);
+					nw[x] = sampler.texel(srcX, srcY);
+					ne[x] = sampler.texel(srcX + 1, srcY);
+					sw[x] = sampler.texel(srcX, srcY + 1);
+					se[x] = sampler.texel(srcX + 1, srcY + 1);
 				}
-				outPixels[x] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
 			}
-			setRGB(dst, 0, y, transformedSpace.width, 1, outPixels);
+			pixelOps.bilinear(nw, ne, sw, se, xWeights, yWeights, outPixels, outWidth);
+			System.arraycopy(outPixels, 0, dst.pixels, y * dst.width, Math.min(outWidth, dst.width));
 		}
 		return dst;
 	}
 
-	final private int getPixel(int[] pixels, int x, int y, int width, int height) {
-		if (x < 0 || x >= width || y < 0 || y >= height) {
-			switch (edgeAction) {
-				case ZERO:
-				default:
-					return 0;
-				case WRAP:
-					return pixels[ImageMath.mod(y, height) * width + ImageMath.mod(x, width)];
-				case CLAMP:
-					return pixels[ImageMath.clamp(y, 0, height - 1) * width + ImageMath.clamp(x, 0, width - 1)];
-				case RGB_CLAMP:
-					return pixels[ImageMath.clamp(y, 0, height - 1) * width + ImageMath.clamp(x, 0, width - 1)] & 0x00ffffff;
-			}
-		}
-		return pixels[y * width + x];
-	}
-
-	protected ImageData filterPixelsNN(ImageData dst, int width, int height, int[] inPixels, Rectangle transformedSpace) {
-		final int srcWidth = width;
-		final int srcHeight = height;
+	protected Bitmap filterPixelsNN(Bitmap dst, Sampler sampler, Rectangle transformedSpace) {
 		final int outWidth = transformedSpace.width;
 		final int outHeight = transformedSpace.height;
-		int outX, outY, srcX, srcY;
+		int outX, outY;
 		final int[] outPixels = new int[outWidth];
 
 		outX = transformedSpace.x;
 		outY = transformedSpace.y;
-		final int[] rgb = new int[4];
 		final float[] out = new float[2];
 
 		for (int y = 0; y < outHeight; y++) {
 			for (int x = 0; x < outWidth; x++) {
 				transformInverse(outX + x, outY + y, out);
-				srcX = (int) out[0];
-				srcY = (int) out[1];
-				// int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
-				if (out[0] < 0 || srcX >= srcWidth || out[1] < 0 || srcY >= srcHeight) {
-					int p;
-					switch (edgeAction) {
-						case ZERO:
-						default:
-							p = 0;
-							break;
-						case WRAP:
-							p = inPixels[ImageMath.mod(srcY, srcHeight) * srcWidth + ImageMath.mod(srcX, srcWidth)];
-							break;
-						case CLAMP:
-							p = inPixels[ImageMath.clamp(srcY, 0, srcHeight - 1) * srcWidth + ImageMath.clamp(srcX, 0, srcWidth - 1)];
-							break;
-						case RGB_CLAMP:
-							p = inPixels[ImageMath.clamp(srcY, 0, srcHeight - 1) * srcWidth + ImageMath.clamp(srcX, 0, srcWidth - 1)] & 0x00ffffff;
-					}
-					outPixels[x] = p;
-				} else {
-					final int i = srcWidth * srcY + srcX;
-					rgb[0] = inPixels[i];
-					outPixels[x] = inPixels[i];
-				}
+				// The sampler applies the edge action off the image
+				outPixels[x] = sampler.texel((int) Math.floor(out[0]), (int) Math.floor(out[1]));
 			}
-			setRGB(dst, 0, y, transformedSpace.width, 1, outPixels);
+			System.arraycopy(outPixels, 0, dst.pixels, y * dst.width, Math.min(outWidth, dst.width));
 		}
 		return dst;
 	}
 
-	private int[] getRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels) {
-		return getRGB(image, startX, startY, w, h, pixels, 0, w);
-	}
-
-	private int[] getRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
-		if (pixels == null) {
-			pixels = new int[offset + h * scansize];
-		}
-
-		int yoff = offset;
-		int off;
-		for (int y = startY; y < startY + h; y++, yoff += scansize) {
-			off = yoff;
-			for (int x = startX; x < startX + w; x++) {
-				pixels[off++] = image.getPixel(x, y);
-			}
-		}
-		return pixels;
-
-	}
-
-	private void setRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels) {
-		setRGB(image, startX, startY, w, h, pixels, 0, w);
-
-	}
-
-	private void setRGB(ImageData image, int startX, int startY, int w, int h, int[] pixels, int offset, int scansize) {
-		int yoff = offset;
-		int off;
-		for (int y = startY; y < startY + h; y++, yoff += scansize) {
-			off = yoff;
-			for (int x = startX; x < startX + w; x++) {
-				image.setPixel(x, y, pixels[off++]);
-			}
-		}
-	}
-
 }
@@ -12,19 +12,15 @@
  *******************************************************************************/
 package org.mihalis.demos.shadebobs;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.graphics.RGB;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class ShadeBobs {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DamageEffect;
+import org.mihalis.demos.core.DirtyRegion;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.Sprite;
+import org.mihalis.demos.core.Sprite.Blend;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class ShadeBobs implements DamageEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "ShadeBobs";
@@ -36,18 +32,18 @@ public class ShadeBobs {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	private int xpath[];
 	private int ypath[];
 	private int pathpath[];
+	private int palette[];
+
+	/* the heat of every pixel, an index in the palette */
+	private int buffer[];
 
 	/* the shadebob image to apply */
-	private final int heat[][] = { { 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, 0 }, //
+	private static final int HEAT[][] = { { 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, 0 }, //
 			{ 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 }, //
 			{ 0, 0, 0, 1, 1, 1, 2, 2, 2, 2, 1, 1, 1, 0, 0, 0 }, //
 			{ 0, 0, 1, 1, 2, 2, 2, 3, 3, 2, 2, 2, 1, 1, 0, 0 }, //
@@ -65,18 +61,19 @@ public class ShadeBobs {
 			{ 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, 0 }, //
 	};
 
-	private int trail;
+	/* the shadebob, which adds or removes 8 times its heat */
+	private Sprite bob;
 
-	public ShadeBobs(Display display) {
-		this.display = display;
-	}
+	private int trail;
 
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Init
 		xpath = new int[512];
 		ypath = new int[512];
-		pathpath = new int[1024];
 
 		final int hw = w - 150;
 		final int hh = h - 180;
@@ -85,74 +82,83 @@ public class ShadeBobs {
 
 		/* initialise a movement path for the bob */
 		for (int i = 0; i < 512; i++) {
-			/* spread 360 degrees over 512 values and convert to rad */
-			final double rad = i * 0.703125 * 0.0174532;
-			xpath[i] = (int) (Math.sin(rad * 2) * hw / 2 + hw / 2 + aw);
-			ypath[i] = (int) (Math.sin(rad) * hh / 2 + hh / 2 + ah);
+			/* spread 360 degrees over 512 values */
+			final int angle = i * (FixedMath.ANGLES / 512);
+			xpath[i] = (FixedMath.sin(angle * 2) * hw >> FixedMath.SHIFT + 1) + hw / 2 + aw;
+			ypath[i] = (FixedMath.sin(angle) * hh >> FixedMath.SHIFT + 1) + hh / 2 + ah;
 		}
 
-		for (int i = 0; i < 1024; i++) {
-			/* spread 360 degrees over 1024 values and convert to rad */
-			final double rad = i * 0.3515625 * 0.0174532;
-			pathpath[i] = (int) (Math.sin(rad) * 15);
-		}
+		/* spread 360 degrees over 1024 values */
+		pathpath = FixedMath.sinTable(1024, 15);
 
 		/* create a suitable shadebob palette, this is crucial for a good effect */
 		/* black to blue, blue to red, red to white */
-		final RGB[] colors = new RGB[256];
+		palette = new int[256];
 		for (int i = 0; i < 64; ++i) {
-			colors[i] = new RGB(0, 0, i << 1);
-			colors[i + 64] = new RGB(i << 1, 0, 128 - (i << 1));
-			colors[i + 128] = new RGB(128 + (i << 1), 0, 128 - (i << 1));
-			colors[i + 192] = new RGB(255, i << 2, i << 2);
+			palette[i] = createColor(0, 0, i << 1);
+			palette[i + 64] = createColor(i << 1, 0, 128 - (i << 1));
+			palette[i + 128] = createColor(128 + (i << 1), 0, 128 - (i << 1));
+			palette[i + 192] = createColor(255, i << 2, i << 2);
 		}
 
-		imageData = new ImageData(w, h, 8, new PaletteData(colors));
+		buffer = new int[w * h];
 		trail = 0;
+
+		/* the heat is the lowest channel of the pixels of the sprite */
+		final Bitmap stamp = new Bitmap(16, 16);
+		for (int i = 0; i < 16; i++) {
+			for (int j = 0; j < 16; j++) {
+				stamp.pixels[i * 16 + j] = 0xFF000000 | HEAT[i][j] * 8;
+			}
+		}
+		bob = new Sprite(stamp, 0);
+	}
+
+	private int createColor(int r, int g, int b) {
+		return r << 16 | g << 8 | b;
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex, boolean full, DirtyRegion damage) {
 		// Animation
 
 		int remx = 0, remy = 0;
 		int drawx = 0, drawy = 0;
-		int i, j, tmp;
 
 		/* remove heat from tail */
 		if (trail >= 500) {
-			tmp = trail - 500;
-			remx = get_bob_x_location(tmp);
-			remy = get_bob_y_location(tmp);
-			for (i = 0; i < 16; i++) {
-				tmp = (remy + i) * w + remx;
-				for (j = 0; j < 16; j++) {
-					int val = imageData.getPixel((tmp + j) % w, (tmp + j) / w);
-					val -= heat[i][j] * 8;
-					if (val < 0) {
-						val = 0;
-					}
-					imageData.setPixel((tmp + j) % w, (tmp + j) / w, val);
-				}
-			}
+			remx = get_bob_x_location(trail - 500);
+			remy = get_bob_y_location(trail - 500);
+			bob.draw(buffer, w, h, remx, remy, Blend.SUBTRACT);
 		}
 
 		/* add heat at new head */
 		drawx = get_bob_x_location(trail);
 		drawy = get_bob_y_location(trail);
-		for (i = 0; i < 16; i++) {
-			tmp = (drawy + i) * w + drawx;
-			for (j = 0; j < 16; j++) {
-				int val = imageData.getPixel((tmp + j) % w, (tmp + j) / w);
-				val += heat[i][j] * 8;
-				if (val > 255) {
-					val = 255;
-				}
-				imageData.setPixel((tmp + j) % w, (tmp + j) / w, val);
+		bob.draw(buffer, w, h, drawx, drawy, Blend.ADD);
+
+		if (full) {
+			for (int i = 0; i < w * h; i++) {
+				argb[i] = palette[buffer[i]];
 			}
+		} else {
+			// Only the two patches of the bob have changed
+			if (trail >= 500) {
+				drawPatch(argb, remx, remy);
+				damage.add(remx, remy, 16, 16);
+			}
+			drawPatch(argb, drawx, drawy);
+			damage.add(drawx, drawy, 16, 16);
 		}
 		trail++;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
+	}
+
+	private void drawPatch(int[] argb, int x, int y) {
+		for (int i = 0; i < 16; i++) {
+			final int offset = (y + i) * w + x;
+			for (int j = 0; j < 16; j++) {
+				argb[offset + j] = palette[buffer[offset + j]];
+			}
 		}
 	}
 
@@ -164,76 +170,7 @@ public class ShadeBobs {
 		return ypath[index & 511] + pathpath[index & 1023];
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-
-	}
-
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final ShadeBobs app = new ShadeBobs(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new ShadeBobs());
 	}
 }
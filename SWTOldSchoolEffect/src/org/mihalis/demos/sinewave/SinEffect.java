@@ -13,7 +13,7 @@
 package org.mihalis.demos.sinewave;
 
 public class SinEffect {
-	short sine_table[] = new short[512];
+	int sine_table[];
 	int index_add;
 	boolean effect;
 }
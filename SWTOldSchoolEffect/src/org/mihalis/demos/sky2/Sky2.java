@@ -12,17 +12,17 @@
  *******************************************************************************/
 package org.mihalis.demos.sky2;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Sky2 {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.Sprite;
+import org.mihalis.demos.core.Sprite.Blend;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Sampler;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Sky2 implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "Sky2";
@@ -33,67 +33,52 @@ public class Sky2 {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
-	private ImageData sprite;
+	private Bitmap sprite;
+	private Sprite ball;
+	private Sampler floor, sky;
 	private int t;
 
-	public Sky2(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Load image
-		sprite = new ImageData(getClass().getResourceAsStream("DEMO2.png"));
-		imageData = new ImageData(w, h, sprite.depth, sprite.palette);
+		sprite = Bitmap.load(getClass(), "DEMO2.png");
+		floor = new Sampler(Texture.of(sprite, 0, 0, 128, 128), EdgeMode.WRAP);
+		sky = new Sampler(Texture.of(sprite, 128, 0, 128, 128), EdgeMode.WRAP);
+		ball = new Sprite(sprite, 0, 128, 128, 128, 0x0000FF);
 		t = 0;
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		// Clear screen
-		final Image tmp = new Image(display, imageData);
-		final GC GCTemp = new GC(tmp);
-		GCTemp.setBackground(display.getSystemColor(SWT.COLOR_BLUE));
-		GCTemp.fillRectangle(0, 0, w, h);
-		GCTemp.dispose();
-		tmp.dispose();
+		Raster.fill(argb, w, h, 0);
 
 		// Go
 		t += 10;
 
 		// Textures
 		for (int z = 1; z < 91; z++) {
-
-			int u = 0;
 			final int difx = 2 * z + 10;
 			final int ustep = (160 << 7) / difx;
 
-			for (int x = 0; x < 160; x++) {
-				final int xnew = (u >> 7) - (u >> 14 << 7);
-				final int ynew = 7000 / z + t - (7000 / z + t >> 7 << 7);
-				final int xnew2 = (u >> 9) - (u >> 16 << 7);
-				final int ynew2 = 2048 / z + (t >> 5) - (2048 / z + (t >> 5) >> 7 << 7);
-
-				imageData.setPixel(160 + x, 90 - z, sprite.getPixel(255 - xnew2, ynew2));
-				imageData.setPixel(160 - x, 90 - z, sprite.getPixel(128 + xnew2, ynew2));
-				imageData.setPixel(160 + x, 91 + z, sprite.getPixel(127 - xnew, ynew));
-				imageData.setPixel(160 - x, 91 + z, sprite.getPixel(xnew, ynew));
-
-				u += ustep;
-			}
-
+			// The sky reads its tile every 512 steps of u, the floor every 128 steps, both mirrored around the column 160
+			final int ynew = 7000 / z + t & 127;
+			final int ynew2 = 2048 / z + (t >> 5) & 127;
+			drawMirroredRow(argb, 90 - z, sky, ustep << Sampler.SHIFT - 9, ynew2);
+			drawMirroredRow(argb, 91 + z, floor, ustep << Sampler.SHIFT - 7, ynew);
 		}
 
 		for (int b = 0; b < 200; b += 10) {
 			final int e = (int) (110 + 20 * Math.cos((b + t) * 0.01) + 15 * Math.sin((4 * b + t) * 0.01));
 			final int f = (int) (160 + 50 * Math.sin((2 * b + t) * 0.01) + 25 * Math.cos((2 * b + t) * 0.01));
-			Sprite(f, e, 127, 127, 0.1f, 0.1f);
-			Shade(f, (e >> 2) + 135, 127, 127, 0.1f, 0.04f);
+			// The ball and its shade
+			drawBall(argb, f, e, 127, 127, 0.1f, 0.1f);
+			drawBall(argb, f, (e >> 2) + 135, 127, 127, 0.1f, 0.04f);
 		}
 
 		// Scrolling
@@ -103,136 +88,45 @@ public class Sky2 {
 			final int xs = t2 - (ys << 7);
 
 			for (int c = 0; c < 15; c++) {
-				imageData.setPixel(d, c + 184, sprite.getPixel(xs + 128, ys * 16 + 128 + c));
-			}
-		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private void Shade(int x, int y, int xs, int ys, float rx, float ry) {
-		int xn, yn;
-		int an, bn;
-		int rn, tn;
-		xn = (int) (xs * rx);
-		yn = (int) (ys * ry);
-		if (xn < 2) {
-			xn = 2;
-		}
-		if (yn < 2) {
-			yn = 2;
-		}
-		an = (int) ((float) (ys << 8) / yn);
-		bn = (int) ((float) (xs << 8) / xn);
-		rn = x - (xn >> 1);
-		tn = y - (yn >> 1);
-		for (int ut = 1; ut < xn; ut++) {
-			for (int vt = 1; vt < yn; vt++) {
-				final int pixel = sprite.getPixel(ut * bn >> 8, (vt * an >> 8) + 128);
-				if (pixel != 255) {
-					imageData.setPixel(ut + rn, vt + tn, pixel);
-				}
-			}
-		}
-	}
-
-	private void Sprite(int x, int y, int xs, int ys, float rx, float ry) {
-		int xn, yn;
-		int an, bn;
-		int rn, tn;
-		xn = (int) (xs * rx);
-		yn = (int) (ys * ry);
-		if (xn < 2) {
-			xn = 2;
-		}
-		if (yn < 2) {
-			yn = 2;
-		}
-		an = (int) ((float) (ys << 8) / yn);
-		bn = (int) ((float) (xs << 8) / xn);
-		rn = x - (xn >> 1);
-		tn = y - (yn >> 1);
-		for (int ut = 1; ut < xn; ut++) {
-			for (int vt = 1; vt < yn; vt++) {
-				final int pixel = sprite.getPixel(ut * bn >> 8, (vt * an >> 8) + 128);
-				if (pixel != 255) {
-					imageData.setPixel(ut + rn, vt + tn, pixel);
-				}
+				Raster.plot(argb, w, h, d, c + 184, sprite.getPixel(xs + 128, ys * 16 + 128 + c));
 			}
 		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
+	/**
+	 * Draw the column x of a texture at 160 - x, from 1 to 160, and mirrored at 160 + x, from 161 to 319
+	 *
+	 * @param step the step of the column of the texture from x to x + 1, in 16.16 fixed point
+	 */
+	private void drawMirroredRow(int[] argb, int y, Sampler sampler, int step, int row) {
+		if (y >= h) {
 			return;
 		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+		final int v = row << Sampler.SHIFT;
+		sampler.span(argb, y * w + 1, Math.min(160, w - 1), 159 * step, v, -step, 0);
+		// 127 - column, rounded down like the column
+		final int mirrored = (127 << Sampler.SHIFT | Sampler.ONE - 1) - step;
+		if (w > 161) {
+			sampler.span(argb, y * w + 161, Math.min(159, w - 161), mirrored, v, -step, 0);
 		}
-		image.dispose();
+	}
 
+	/**
+	 * Draw the ball of xs x ys pixels, scaled by rx and ry and centered at x, y
+	 */
+	private void drawBall(int[] argb, int x, int y, int xs, int ys, float rx, float ry) {
+		final int xn = Math.max(2, (int) (xs * rx));
+		final int yn = Math.max(2, (int) (ys * ry));
+		// The steps in 8.8 fixed point, as the original effect, then in 16.16 for the sprite
+		final int an = (int) ((float) (ys << 8) / yn) << 8;
+		final int bn = (int) ((float) (xs << 8) / xn) << 8;
+		final int rn = x - (xn >> 1);
+		final int tn = y - (yn >> 1);
+		// The first row and column are skipped
+		ball.drawScaled(argb, w, h, rn + 1, tn + 1, xn - 1, yn - 1, bn, an, bn, an, Blend.COPY);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Sky2 app = new Sky2(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Sky2());
 	}
 }
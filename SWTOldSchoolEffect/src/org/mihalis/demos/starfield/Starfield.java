@@ -12,17 +12,13 @@
  *******************************************************************************/
 package org.mihalis.demos.starfield;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Starfield {
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.FastRandom;
+import org.mihalis.demos.core.ParticleSystem;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Starfield implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "Starfield";
@@ -33,149 +29,61 @@ public class Starfield {
 	private static final int CANVAS_WIDTH = 480;
 	private static final int CANVAS_HEIGHT = 360;
 
-	private static final int NUMBER_OF_STARS = 1020;
+	private static final int NUMBER_OF_STARS = ParticleSystem.getCapacity(1020);
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
 
-	private Star[] stars;
+	private ParticleSystem stars;
+	private final FastRandom random = new FastRandom();
 	private int centerX, centerY;
 
-	public Starfield(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		image = new Image(display, w, h);
-
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		// Init stars
-		stars = new Star[NUMBER_OF_STARS];
+		stars = new ParticleSystem(NUMBER_OF_STARS);
 		for (int i = 0; i < NUMBER_OF_STARS; i++) {
-			stars[i] = initStar(i + 1);
-
+			initStar(stars.spawn());
 		}
 		centerX = w >> 1;
 		centerY = h >> 1;
 	}
 
-	private Star initStar(int i) {
-		final Star star = new Star();
-		star.xpos = (float) (-10.0 + 20.0 * Math.random());
-		star.ypos = (float) (-10.0 + 20.0 * Math.random());
+	private void initStar(int i) {
+		stars.x[i] = (float) (-10.0 + 20.0 * random.nextDouble());
+		stars.y[i] = (float) (-10.0 + 20.0 * random.nextDouble());
 
-		star.xpos *= 3072.0; /* change viewpoint */
-		star.ypos *= 3072.0;
+		stars.x[i] *= 3072.0; /* change viewpoint */
+		stars.y[i] *= 3072.0;
 
-		star.zpos = i;
-		star.speed = 2 + (int) (2.0 * Math.random());
+		/* the stars are spread in depth, the closer to the viewer the brighter */
+		final int depth = 1 + random.nextInt(1020);
+		stars.z[i] = depth;
+		stars.vz[i] = -(2 + random.nextInt(2));
 
-		star.color = i >> 2; /* the closer to the viewer the brighter */
-
-		return star;
+		final int color = depth >> 2;
+		stars.color[i] = color << 16 | color << 8 | color;
+		/* the stars never die, they only leave the screen */
+		stars.life[i] = Integer.MAX_VALUE;
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		// Animation
 		/* move and draw stars */
-		final GC gc = new GC(image);
-		gc.setBackground(Display.getCurrent().getSystemColor(SWT.COLOR_BLACK));
-		gc.fillRectangle(0, 0, w, h);
-
-		for (int i = 0; i < NUMBER_OF_STARS; i++) {
-			stars[i].zpos -= stars[i].speed;
-
-			if (stars[i].zpos <= 0) {
-				stars[i] = initStar(i + 1);
-			}
-
-			/* compute 3D position */
-			final int tempx = (int) (stars[i].xpos / stars[i].zpos + centerX);
-			final int tempy = (int) (stars[i].ypos / stars[i].zpos + centerY);
-
-			if (tempx < 0 || tempx > w - 1 || tempy < 0 || tempy > h - 1) /* check if a star leaves the screen */
-			{
-				stars[i] = initStar(i + 1);
-				continue;
-			}
-
-			final Color color = new Color(Display.getCurrent(), stars[i].color, stars[i].color, stars[i].color);
-			gc.setForeground(color);
-			gc.drawPoint(tempx, tempy);
-			color.dispose();
-		}
-		gc.dispose();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
+		Raster.fill(argb, w, h, 0x000000);
 
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
+		stars.move();
 
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+		/* draw the stars, those which left the screen are replaced */
+		stars.plot(argb, w, h, centerX, centerY, true);
+		while (stars.getCount() < NUMBER_OF_STARS) {
+			initStar(stars.spawn());
 		}
-
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Starfield app = new Starfield(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Starfield());
 	}
 }
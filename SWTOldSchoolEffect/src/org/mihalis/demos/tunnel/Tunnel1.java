@@ -12,27 +12,20 @@
  *******************************************************************************/
 package org.mihalis.demos.tunnel;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.TableCache;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class Tunnel1 {
+public class Tunnel1 implements SteppedEffect {
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
-	private int[][] texture;
-	private int[][] distanceTable;
-	private int[][] angleTable;
+	private int[] texture;
+	private DisplacementMap map;
+	private DisplacementEngine engine;
 	private float animation;
 
 	// TEXTURE SIZE
@@ -42,125 +35,65 @@ public class Tunnel1 {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	public Tunnel1(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
-		texture = new int[TEX_WIDTH][TEX_HEIGHT];
-		distanceTable = new int[w][h];
-		angleTable = new int[w][h];
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		texture = new int[TEX_WIDTH * TEX_HEIGHT];
+		map = new DisplacementMap(w, h, getTable(w, h));
 
 		// generate texture
-		for (int x = 0; x < TEX_WIDTH; x++) {
-			for (int y = 0; y < TEX_HEIGHT; y++) {
-				texture[x][y] = x * 256 / TEX_WIDTH ^ y * 256 / TEX_HEIGHT;
-			}
-		}
-
-		// generate non-linear transformation table
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				int angle, distance;
-				final float ratio = 32.0f;
-				distance = (int) Math.floor(ratio * TEX_HEIGHT / Math.sqrt((x - w / 2.0) * (x - w / 2.0) + (y - h / 2.0) * (y - h / 2.0)) % TEX_HEIGHT);
-				angle = (int) Math.floor(0.5 * TEX_WIDTH * Math.atan2(y - h / 2.0, x - w / 2.0) / 3.1416);
-				distanceTable[x][y] = distance;
-				angleTable[x][y] = angle;
+		for (int y = 0; y < TEX_HEIGHT; y++) {
+			for (int x = 0; x < TEX_WIDTH; x++) {
+				texture[y * TEX_WIDTH + x] = x * 256 / TEX_WIDTH ^ y * 256 / TEX_HEIGHT;
 			}
 		}
+		engine = new DisplacementEngine(new Texture(TEX_WIDTH, TEX_HEIGHT, texture), EdgeMode.WRAP);
 
 		animation = 0f;
 	}
 
-	public void animate() {
-		// calculate the shift values out of the animation value
-		final int shiftX = (int) Math.floor(TEX_WIDTH * 1.0 * animation);
-		final int shiftY = (int) Math.floor(TEX_HEIGHT * 0.25 * animation);
-
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				// get the texel from the texture by using the tables, shifted with the
-				// animation values
-				final int color = texture[Math.abs((distanceTable[x][y] + shiftX) % TEX_WIDTH)][Math.abs((angleTable[x][y] + shiftY) % TEX_HEIGHT)];
-				imageData.setPixel(x, y, color);
-			}
-		}
-		animation += 0.05f;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+	@Override
+	public void prepare(int width, int height) {
+		getTable(width, height);
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText("Fire Effect");
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 256;
-		gdCanvas.heightHint = 256;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
+	/**
+	 * @return the distance and angle of each pixel, packed as the coordinates of a {@link DisplacementMap}, shared by all the tunnels of this size
+	 */
+	private static int[] getTable(int w, int h) {
+		return TableCache.getShared().get("Tunnel1.map", w, h, () -> {
+			final int[] table = new int[w * h];
 
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
+			// generate non-linear transformation table
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					final float ratio = 32.0f;
+					final double distance = ratio * TEX_HEIGHT / Math.sqrt((x - w / 2.0) * (x - w / 2.0) + (y - h / 2.0) * (y - h / 2.0)) % TEX_HEIGHT;
+					final double angle = 0.5 * TEX_WIDTH * Math.atan2(y - h / 2.0, x - w / 2.0) / 3.1416;
+					table[y * w + x] = DisplacementMap.pack(Double.isNaN(distance) ? 0 : distance, angle);
+				}
+			}
+			return table;
 		});
+	}
 
-		return shell;
+	@Override
+	public void step() {
+		animation += 0.05f;
 	}
 
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image img = new Image(display, imageData);
-		if (img != null) {
-			gc.drawImage(img, 0, 0);
-		}
-		img.dispose();
+	@Override
+	public void render(int[] argb, long frameIndex) {
+		// calculate the shift values out of the animation value
+		final int shiftX = (int) Math.floor(TEX_WIDTH * 1.0 * animation);
+		final int shiftY = (int) Math.floor(TEX_HEIGHT * 0.25 * animation);
 
+		// get the texel from the texture by using the table, shifted with the animation values
+		engine.render(argb, map, shiftX, shiftY);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Tunnel1 app = new Tunnel1(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run("Fire Effect", 256, 256, TIMER_INTERVAL, new Tunnel1());
 	}
 }
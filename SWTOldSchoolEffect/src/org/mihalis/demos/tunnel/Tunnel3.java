@@ -12,27 +12,21 @@
  *******************************************************************************/
 package org.mihalis.demos.tunnel;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Tunnel3 {
-
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.TableCache;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Tunnel3 implements SteppedEffect {
+
 	private int w, h;
-	private ImageData imageData;
-	private int[][] texture;
-	private int[][] distanceTable;
-	private int[][] angleTable;
+	private int[] texture;
+	private DisplacementMap map;
+	private DisplacementEngine engine;
 	private float animation;
 
 	// TEXTURE SIZE
@@ -42,42 +36,58 @@ public class Tunnel3 {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 1;
 
-	public Tunnel3(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
-		texture = new int[TEX_WIDTH][TEX_HEIGHT];
-		distanceTable = new int[w * 2][h * 2];
-		angleTable = new int[w * 2][h * 2];
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		texture = new int[TEX_WIDTH * TEX_HEIGHT];
+		map = new DisplacementMap(w * 2, h * 2, getTable(w, h));
 
-		final Image img = new Image(display, getClass().getResourceAsStream("tunnelstonetex.png"));
-		final ImageData temp = img.getImageData();
+		final Bitmap temp = Bitmap.load(getClass(), "tunnelstonetex.png");
 
 		// generate texture
-		for (int x = 0; x < TEX_WIDTH; x++) {
-			for (int y = 0; y < TEX_HEIGHT; y++) {
-				texture[x][y] = temp.getPixel(x, y);
+		for (int y = 0; y < TEX_HEIGHT; y++) {
+			for (int x = 0; x < TEX_WIDTH; x++) {
+				texture[y * TEX_WIDTH + x] = temp.getPixel(x, y);
 			}
 		}
+		engine = new DisplacementEngine(new Texture(TEX_WIDTH, TEX_HEIGHT, texture), EdgeMode.WRAP);
 
-		// generate non-linear transformation table
-		for (int x = 0; x < w * 2; x++) {
+		animation = 0f;
+	}
+
+	@Override
+	public void prepare(int width, int height) {
+		getTable(width, height);
+	}
+
+	/**
+	 * @return the distance and angle of each pixel, packed as the coordinates of a {@link DisplacementMap} twice the size of the frames so that the tunnel can look around, shared by all the tunnels of this size
+	 */
+	private static int[] getTable(int w, int h) {
+		return TableCache.getShared().get("Tunnel3.map", w, h, () -> {
+			final int[] table = new int[w * 2 * h * 2];
+
+			// generate non-linear transformation table
 			for (int y = 0; y < h * 2; y++) {
-				int angle, distance;
-				final float ratio = 32.0f;
-				distance = (int) (ratio * TEX_HEIGHT / Math.sqrt((x - w) * (x - w) + (y - h) * (y - h))) % TEX_HEIGHT;
-				angle = (int) (0.5 * TEX_WIDTH * Math.atan2(y - h, (x - w) / 3.1416));
-				distanceTable[x][y] = distance;
-				angleTable[x][y] = angle;
+				for (int x = 0; x < w * 2; x++) {
+					final float ratio = 32.0f;
+					final double distance = ratio * TEX_HEIGHT / Math.sqrt((x - w) * (x - w) + (y - h) * (y - h)) % TEX_HEIGHT;
+					final double angle = 0.5 * TEX_WIDTH * Math.atan2(y - h, (x - w) / 3.1416);
+					table[y * w * 2 + x] = DisplacementMap.pack(Double.isNaN(distance) ? 0 : distance, angle);
+				}
 			}
-		}
+			return table;
+		});
+	}
 
-		animation = 0f;
+	@Override
+	public void step() {
+		animation += 0.02f;
 	}
 
-	public void animate() {
+	@Override
+	public void render(int[] argb, long frameIndex) {
 		// calculate the shift values out of the animation value
 		final int shiftX = (int) (TEX_WIDTH * 1.0 * animation);
 		final int shiftY = (int) (TEX_HEIGHT * 0.25 * animation);
@@ -90,88 +100,11 @@ public class Tunnel3 {
 		final int shiftLookX = w / 2 + (int) (w / 2 * Math.sin(animation));
 		final int shiftLookY = h / 2 + (int) (h / 2 * Math.sin(animation * 2.0));
 
-		for (int x = 0; x < w; x++) {
-			for (int y = 0; y < h; y++) {
-				// get the texel from the texture by using the tables, shifted with the
-				// animation values
-				final int color = texture[Math.abs((distanceTable[x + shiftLookX][y + shiftLookY] + shiftX) % TEX_WIDTH)][Math.abs((angleTable[x + shiftLookX][y + shiftLookY] + shiftY) % TEX_HEIGHT)];
-				imageData.setPixel(x, y, color);
-			}
-		}
-		animation += 0.02f;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText("Tunnel");
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 256;
-		gdCanvas.heightHint = 256;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image img = new Image(display, imageData);
-		if (img != null) {
-			gc.drawImage(img, 0, 0);
-		}
-		img.dispose();
-
+		// get the texel from the texture by using the table, shifted with the animation values
+		engine.render(argb, w, 0, 0, w, h, map, shiftLookX, shiftLookY, shiftX, shiftY);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Tunnel3 app = new Tunnel3(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-		display.dispose();
+		EffectWindow.run("Tunnel", 256, 256, TIMER_INTERVAL, new Tunnel3());
 	}
 }
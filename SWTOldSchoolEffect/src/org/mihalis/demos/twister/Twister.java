@@ -12,18 +12,13 @@
  *******************************************************************************/
 package org.mihalis.demos.twister;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Twister {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.IndexedEffect;
+import org.mihalis.demos.core.PixelOps;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Twister implements IndexedEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Twister Effect";
@@ -35,11 +30,7 @@ public class Twister {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 100;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
 	private static final int SINTABLESIZE = 256;
 
@@ -51,13 +42,14 @@ public class Twister {
 	// Precalculated torsion table
 	private final float pas[] = new float[SINTABLESIZE];
 	private int[] palette;
+	private byte[] indices;
 	private int roll = 0;
 
-	public Twister(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		indices = new byte[w * h];
 		createColors();
 		initSinTables();
 	}
@@ -75,12 +67,12 @@ public class Twister {
 
 	private void initSinTables() {
 		for (int i = 0; i < SINTABLESIZE; i++) {
-			int min = CANVAS_WIDTH;
+			int min = w;
 			int num_min = 0;
 			final int tmp[] = new int[4];
 
 			for (int k = 0; k < 4; k++) {
-				tmp[k] = CANVAS_WIDTH / 2 - (int) ((CANVAS_WIDTH / 2 - 20) * Math.cos(k * Math.PI / 2 + i * (3 * Math.PI / SINTABLESIZE)));
+				tmp[k] = w / 2 - (int) ((w / 2 - 20) * Math.cos(k * Math.PI / 2 + i * (3 * Math.PI / SINTABLESIZE)));
 				if (tmp[k] < min) {
 					min = tmp[k];
 					num_min = k;
@@ -95,18 +87,27 @@ public class Twister {
 		}
 	}
 
-	public void animate() {
-		imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
-		doTwister();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		renderIndices(indices, frameIndex);
+		PixelOps.get().expand(palette, indices, argb, 0, w * h);
 	}
 
-	private void doTwister() {
+	@Override
+	public void renderIndices(byte[] indices, long frameIndex) {
+		Arrays.fill(indices, 0, w * h, (byte) 0);
+		doTwister(indices);
+	}
+
+	@Override
+	public int[] getPalette() {
+		return palette;
+	}
+
+	private void doTwister(byte[] indices) {
 		roll = (roll + 1) % (SINTABLESIZE - 1);
 
-		for (int j = 0; j < CANVAS_HEIGHT; j++) {
+		for (int j = 0; j < h; j++) {
 			int wouaf = (int) (roll + j * pas[roll]);
 			wouaf &= SINTABLESIZE - 1;
 
@@ -114,103 +115,36 @@ public class Twister {
 			final int tmp2 = guim2[wouaf];
 			final int tmp3 = guim3[wouaf];
 
-			zoom(tmp1, tmp2 - tmp1, j);
-			zoom(tmp2, tmp3 - tmp2, j);
+			zoom(indices, tmp1, tmp2 - tmp1, j);
+			zoom(indices, tmp2, tmp3 - tmp2, j);
 		}
 	}
 
-	private void zoom(int begin, int size, int height) {
-		int screenIndex = begin + height * CANVAS_WIDTH;
+	private void zoom(byte[] indices, int begin, int size, int height) {
+		// On frames narrower than about 40 pixels, the faces may be reversed or go out of the frame
+		if (size < 0) {
+			return;
+		}
+		final int row = height * w;
 		final int j = height & 63;
 		final float rap = 64.0f / size;
 
-		for (float k = 0f; k < 64f; k += rap) {
+		int x = begin;
+		for (float k = 0f; k < 64f; k += rap, x++) {
+			if (x < 0 || x >= w) {
+				continue;
+			}
 			final int i = (int) k;
 			int color = (i ^ j) << 2;
 
 			if ((color & 64) == 0) {
 				color ^= 64;
 			}
-			drawPixel(screenIndex++, color);
+			indices[row + x] = (byte) color;
 		}
 	}
 
-	private void drawPixel(int screenIndex, int colorIndex) {
-		final int posX = screenIndex % CANVAS_WIDTH;
-		final int posY = screenIndex / CANVAS_WIDTH;
-		imageData.setPixel(posX, posY, palette[colorIndex]);
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
-
-	}
-
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Twister app = new Twister(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Twister());
 	}
 }
@@ -13,38 +13,35 @@
 package org.mihalis.demos.unlimitedballs;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.InteractiveEffect;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.Sprite;
+import org.mihalis.demos.core.Sprite.Blend;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class UnlimitedBalls {
+public class UnlimitedBalls implements InteractiveEffect {
 
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image[] offscreenImage;
-	private Image ball;
+	private int[][] offscreenImage;
+	private Sprite ball;
 
 	private int Xc, Yc;
 	private float Xr, Yr;
 	private int count;
-	private int current;
+	private volatile int current;
 	private int xspeed, yspeed, xrspeed, yrspeed, xstart, ystart, xrstart, yrstart;
 	private int currentShape = 0;
 
-	public UnlimitedBalls(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		int i;
 		count = 0;
 		current = 0;
@@ -53,17 +50,12 @@ public class UnlimitedBalls {
 		Xr = w / 2.5F;
 		Yr = h / 2.5F;
 
-		offscreenImage = new Image[8];
+		offscreenImage = new int[8][w * h];
 		for (i = 0; i < 8; i++) {
-			final Image image = new Image(display, w, h);
-			final GC tempGC = new GC(image);
-			tempGC.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
-			tempGC.fillRectangle(0, 0, w, h);
-			tempGC.dispose();
-			offscreenImage[i] = image;
+			Raster.fill(offscreenImage[i], w, h, 0xFFFFFF);
 		}
 
-		ball = new Image(display, getClass().getResourceAsStream("ball.gif"));
+		ball = new Sprite(Bitmap.load(getClass(), "ball.gif"), Sprite.NO_KEY);
 
 		switch (currentShape) {
 			case 0:
@@ -102,7 +94,8 @@ public class UnlimitedBalls {
 		}
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 		int i;
 		double x, y;
 		double xr, yr;
@@ -113,89 +106,37 @@ public class UnlimitedBalls {
 			yr = Math.cos((current + yrstart) * Math.PI / yrspeed) * Yr;
 			x = Math.cos((current + xstart) * Math.PI / xspeed) * xr;
 			y = Math.sin((current + ystart) * Math.PI / yspeed) * yr;
-			final GC tempGC = new GC(offscreenImage[i]);
-			tempGC.drawImage(ball, (int) (Xc + Math.round(x)), (int) (Yc + Math.round(y)));
-			tempGC.dispose();
+			ball.draw(offscreenImage[i], w, h, (int) (Xc + Math.round(x)), (int) (Yc + Math.round(y)), Blend.COPY);
 			current++;
 		}
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		System.arraycopy(offscreenImage[count], 0, argb, 0, w * h);
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText("Plasma");
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = 512;
-		gdCanvas.heightHint = 512;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		canvas.addListener(SWT.MouseUp, e -> {
-			currentShape = (currentShape + 1) % 3;
-			init();
-		});
-
-		return shell;
+	@Override
+	public void mouseUp(int x, int y, int button) {
+		currentShape = (currentShape + 1) % 3;
+		init(w, h);
 	}
 
-	private void redrawCanvas() {
-		if (offscreenImage == null) {
-			return;
-		}
-		gc.drawImage(offscreenImage[count], 0, 0);
-		gc.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
-		gc.drawText("Number of sprites :" + current, 5, 5);
-
-		gc.drawText("Clic to change the shape", 5, h - 15);
+	public int getSpriteCount() {
+		return current;
 	}
 
 	public static void main(String[] args) {
 		final Display display = new Display();
 
-		final UnlimitedBalls app = new UnlimitedBalls(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
+		final UnlimitedBalls app = new UnlimitedBalls();
+		final EffectWindow window = new EffectWindow(display, "Plasma", 512, 512, TIMER_INTERVAL, app);
+
+		final Canvas canvas = window.getCanvas();
+		canvas.addPaintListener(e -> {
+			e.gc.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
+			e.gc.drawText("Number of sprites :" + app.getSpriteCount(), 5, 5);
+
+			e.gc.drawText("Clic to change the shape", 5, canvas.getClientArea().height - 15);
+		});
 
-		// Kill the timer
-		display.timerExec(-1, runnable);
+		window.open();
 		display.dispose();
 	}
 }
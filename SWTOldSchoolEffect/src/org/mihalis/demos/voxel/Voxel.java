@@ -12,20 +12,16 @@
  *******************************************************************************/
 package org.mihalis.demos.voxel;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
-
-public class Voxel {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.FixedMath;
+import org.mihalis.demos.core.IndexedBitmap;
+import org.mihalis.demos.core.InteractiveEffect;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Voxel implements InteractiveEffect, SteppedEffect {
 
 	private static final String SHELL_TITLE = "Voxel";
 
@@ -35,30 +31,27 @@ public class Voxel {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
 
-	//
+	// A power of two of angles per turn, so that any angle is brought back into the tables with a mask
 	public static final int ANGLE_0 = 0, //
-			ANGLE_1 = 5, //
-			ANGLE_2 = 10, //
-			ANGLE_4 = 20, //
-			ANGLE_5 = 25, //
-			ANGLE_6 = 30, //
-			ANGLE_15 = 80, //
-			ANGLE_30 = 160, //
-			ANGLE_45 = 240, //
-			ANGLE_60 = 320, //
-			ANGLE_90 = 480, //
-			ANGLE_135 = 720, //
-			ANGLE_180 = 960, //
-			ANGLE_225 = 1200, //
-			ANGLE_270 = 1440, //
-			ANGLE_315 = 1680, //
-			ANGLE_360 = 1920;
+			ANGLE_1 = 6, //
+			ANGLE_2 = 11, //
+			ANGLE_4 = 23, //
+			ANGLE_5 = 28, //
+			ANGLE_6 = 34, //
+			ANGLE_15 = 85, //
+			ANGLE_30 = 171, //
+			ANGLE_45 = 256, //
+			ANGLE_60 = 341, //
+			ANGLE_90 = 512, //
+			ANGLE_135 = 768, //
+			ANGLE_180 = 1024, //
+			ANGLE_225 = 1280, //
+			ANGLE_270 = 1536, //
+			ANGLE_315 = 1792, //
+			ANGLE_360 = 2048;
+	public static final int ANGLE_MASK = ANGLE_360 - 1;
 
 	public final int FIXP_SHIFT = 12; // number of decimal places 20.12
 	public final int FIXP_MUL = 4096; // 2^12, used to convert reals
@@ -114,60 +107,39 @@ public class Voxel {
 			view_ang_y, // heading, or yaw
 			view_ang_z; // roll, unused
 
-	private boolean listenerAdded = false;
-
-	private PaletteData paletteData;
-
-	public Voxel(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		virtualScreen = new int[w * h];
 		for (int i = 0; i < w * h; i++) {
 			virtualScreen[i] = 0xff000000;
 		}
 
-		image = new Image(display, w, h);
-
-		//
-		ImageData heightMap, colorMap, skyTexture;
-		heightMap = new ImageData(getClass().getResourceAsStream("heightmap1.gif"));
+		// The images are decoded once, then shared by the following inits
+		final IndexedBitmap heightMap = IndexedBitmap.load(getClass(), "heightmap1.gif");
 		mapWidth = heightMap.width;
 		mapHeight = heightMap.height;
 
 		// Load sky texture
-		skyTexture = new ImageData(getClass().getResourceAsStream("sunset1.jpg"));
-		skyTextureWidth = 640;
-		skyTextureHeight = 99;
-		skyTextureRaw = new int[skyTextureWidth * skyTextureHeight];
-		skyTexture.getPixels(0, 0, skyTextureWidth * skyTextureHeight, skyTextureRaw, 0);
+		final Bitmap skyTexture = Bitmap.load(getClass(), "sunset1.jpg");
+		skyTextureWidth = skyTexture.width;
+		skyTextureHeight = skyTexture.height;
+		skyTextureRaw = skyTexture.pixels;
 
 		// Load colorMap
-		colorMapRaw = new int[mapWidth * mapHeight];
-		colorMap = new ImageData(getClass().getResourceAsStream("colormap.jpg"));
-		colorMap.getPixels(0, 0, mapWidth * mapHeight, colorMapRaw, 0);
-		paletteData = colorMap.palette;
-
-		//
+		colorMapRaw = Bitmap.load(getClass(), "colormap.jpg").pixels;
 
+		// The palette indices of the height map are the heights
 		heightMapRaw = new int[mapWidth * mapHeight];
-		heightMap.getPixels(0, 0, mapWidth * mapHeight, heightMapRaw, 0);
-
-		for (int i = 0; i < 512 * 512; i++) {
-			heightMapRaw[i] = heightMapRaw[i] & 0xff;// we have RBG, but we
-			// just want 8 bit range for height mapping
+		for (int i = 0; i < mapWidth * mapHeight; i++) {
+			heightMapRaw[i] = heightMap.indices[i] & 0xff;
 		}
 
 		// Build tables
-		cos_look = new int[ANGLE_360];
-		sin_look = new int[ANGLE_360];
-		for (int curr_angle = 0; curr_angle < ANGLE_360; curr_angle++) {
-			final double angle_rad = 2 * Math.PI * curr_angle / ANGLE_360;
-			cos_look[curr_angle] = (int) (Math.cos(angle_rad) * FIXP_MUL);
-			sin_look[curr_angle] = (int) (Math.sin(angle_rad) * FIXP_MUL);
-		}
+		cos_look = FixedMath.cosTable(ANGLE_360, FIXP_MUL);
+		sin_look = FixedMath.sinTable(ANGLE_360, FIXP_MUL);
 
 		// Init position
 		dx = 0;
@@ -180,36 +152,21 @@ public class Voxel {
 		view_ang_x = START_PITCH; // pitch
 		view_ang_y = START_HEADING; // heading, or yaw
 		view_ang_z = 0; // roll, unused
-
-		if (!listenerAdded) {
-			listenerAdded = true;
-			canvas.addListener(SWT.KeyDown, new CustomKeyListener(true));
-			canvas.addListener(SWT.KeyUp, new CustomKeyListener(false));
-
-		}
-
 	}
 
-	public void animate() {
-
-		// Clear screen
-		ImageData imageData = new ImageData(w, h, 24, paletteData);
-
-		// Go
-		int xr, // used to compute the point the ray intersects the
-				yr, // the height data
-				curr_column, // current screen column being processed
-				curr_step, // current step ray is at
-				raycast_ang, // current angle of ray being cast
-				dx_, dy_, dz_, // general deltas for ray to move from pt to pt
-				curr_voxel_scale, // current scaling factor to draw each voxel line
-				column_height, // height of the column intersected and being rendered
-				curr_row, // number of rows processed in current column
-				x_ray, y_ray, z_ray, // the position of the tip of the ray
-				map_addr; // temp var used to hold the addr of data bytes
-		int dest_buffer = 0, dest_column_ptr = 0;
-		int vp_x, vp_y, vp_z;
+	/**
+	 * Keep the view point, so that a change of resolution does not move the camera back to its start
+	 */
+	@Override
+	public void resize(int width, int height) {
+		w = width;
+		h = height;
+		virtualScreen = new int[w * h];
+		Arrays.fill(virtualScreen, 0xff000000);
+	}
 
+	@Override
+	public void step() {
 		if (cursorKeyUp) {
 			if (speed < MAX_SPEED) {
 				speed += 2;
@@ -222,16 +179,16 @@ public class Voxel {
 		}
 		if (cursorKeyLeft) {
 			if (strafe) {
-				dy = Math.cos(6.28 * view_ang_y / ANGLE_360) * 10;
-				dx = -Math.sin(6.28 * view_ang_y / ANGLE_360) * 10;
+				dy = COS_LOOK(view_ang_y) * 10.0 / FIXP_MUL;
+				dx = -SIN_LOOK(view_ang_y) * 10.0 / FIXP_MUL;
 			} else {
 				view_ang_y += ANGLE_5;
 			}
 		}
 		if (cursorKeyRight) {
 			if (strafe) {
-				dy = -Math.cos(6.28 * view_ang_y / ANGLE_360) * 10;
-				dx = Math.sin(6.28 * view_ang_y / ANGLE_360) * 10;
+				dy = -COS_LOOK(view_ang_y) * 10.0 / FIXP_MUL;
+				dx = SIN_LOOK(view_ang_y) * 10.0 / FIXP_MUL;
 			} else {
 				view_ang_y -= ANGLE_5;
 			}
@@ -260,17 +217,25 @@ public class Voxel {
 		} else if (view_pos_y < 0) {
 			view_pos_y = HFIELD_HEIGHT - 1;
 		}
-		if (view_ang_y >= ANGLE_360) {
-			view_ang_y -= ANGLE_360;
-		} else if (view_ang_y < ANGLE_0) {
-			view_ang_y += ANGLE_360;
-		}
+		view_ang_y &= ANGLE_MASK;
+	}
 
-		if (view_ang_y >= ANGLE_360) {
-			view_ang_y -= ANGLE_360;
-		} else if (view_ang_y < ANGLE_0) {
-			view_ang_y += ANGLE_360;
-		}
+	@Override
+	public void render(int[] argb, long frameIndex) {
+		// Go
+		int xr, // used to compute the point the ray intersects the
+				yr, // the height data
+				curr_column, // current screen column being processed
+				curr_step, // current step ray is at
+				raycast_ang, // current angle of ray being cast
+				dx_, dy_, dz_, // general deltas for ray to move from pt to pt
+				curr_voxel_scale, // current scaling factor to draw each voxel line
+				column_height, // height of the column intersected and being rendered
+				curr_row, // number of rows processed in current column
+				x_ray, y_ray, z_ray, // the position of the tip of the ray
+				map_addr; // temp var used to hold the addr of data bytes
+		int dest_buffer = 0, dest_column_ptr = 0;
+		int vp_x, vp_y, vp_z;
 
 		for (int y_ = 0; y_ < h; y_++) {
 			for (int x_ = 0; x_ < w; x_++) {
@@ -329,13 +294,7 @@ public class Voxel {
 		} // end for curr_col
 
 		// Draw
-		imageData.setPixels(0, 0, w * h, virtualScreen, 0);
-		image = null;
-		image = new Image(display, imageData);
-		imageData = null;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+		System.arraycopy(virtualScreen, 0, argb, 0, w * h);
 	}
 
 	public int abs(int x) {
@@ -344,128 +303,48 @@ public class Voxel {
 	}
 
 	public int COS_LOOK(int theta) {
-		if (theta < 0) {
-			return cos_look[theta + ANGLE_360];
-		} else if (theta >= ANGLE_360) {
-			return cos_look[theta - ANGLE_360];
-		} else {
-			return cos_look[theta];
-		}
+		return cos_look[theta & ANGLE_MASK];
 	}
 
 	public int SIN_LOOK(int theta) {
-		if (theta < 0) {
-			return sin_look[theta + ANGLE_360];
-		} else if (theta >= ANGLE_360) {
-			return sin_look[theta - ANGLE_360];
-		} else {
-			return sin_look[theta];
-		}
+		return sin_look[theta & ANGLE_MASK];
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
+	public static void main(String[] args) {
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Voxel());
 	}
 
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
+	@Override
+	public void keyPressed(int keyCode) {
+		setKey(keyCode, true);
 	}
 
-	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Voxel app = new Voxel(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+	@Override
+	public void keyReleased(int keyCode) {
+		setKey(keyCode, false);
 	}
 
-	class CustomKeyListener implements Listener {
-
-		private boolean keyDown = false;
-
-		/**
-		 * Constructeur
-		 *
-		 * @param keyDown
-		 */
-		public CustomKeyListener(boolean keyDown) {
-			this.keyDown = keyDown;
+	private void setKey(int keyCode, boolean keyDown) {
+		if (keyCode == KEY_UP) {
+			cursorKeyUp = keyDown;
 		}
-
-		@Override
-		public void handleEvent(Event event) {
-			if (event.keyCode == SWT.ARROW_UP) {
-				cursorKeyUp = keyDown;
-			}
-			if (event.keyCode == SWT.ARROW_DOWN) {
-				cursorKeyDown = keyDown;
-			}
-			if (event.keyCode == SWT.ARROW_LEFT) {
-				cursorKeyLeft = keyDown;
-			}
-			if (event.keyCode == SWT.ARROW_RIGHT) {
-				cursorKeyRight = keyDown;
-			}
-			if (event.keyCode == SWT.PAGE_UP) {
-				ascend = keyDown;
-			}
-			if (event.keyCode == SWT.PAGE_DOWN) {
-				descend = keyDown;
-			}
-			if (event.keyCode == SWT.HOME) {
-				strafe = keyDown;
-			}
+		if (keyCode == KEY_DOWN) {
+			cursorKeyDown = keyDown;
+		}
+		if (keyCode == KEY_LEFT) {
+			cursorKeyLeft = keyDown;
+		}
+		if (keyCode == KEY_RIGHT) {
+			cursorKeyRight = keyDown;
+		}
+		if (keyCode == KEY_PAGE_UP) {
+			ascend = keyDown;
+		}
+		if (keyCode == KEY_PAGE_DOWN) {
+			descend = keyDown;
+		}
+		if (keyCode == KEY_HOME) {
+			strafe = keyDown;
 		}
 	}
 }
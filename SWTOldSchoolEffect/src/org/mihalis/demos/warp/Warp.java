@@ -12,18 +12,18 @@
  *******************************************************************************/
 package org.mihalis.demos.warp;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class Warp {
+import java.util.Arrays;
+
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.SteppedEffect;
+import org.mihalis.demos.core.TableCache;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class Warp implements SteppedEffect {
 
 	// Title
 	private static final String SHELL_TITLE = "Warp Effect";
@@ -35,26 +35,22 @@ public class Warp {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 30;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
-	private final Point[][] distorsionTable = new Point[CANVAS_HEIGHT / 2][CANVAS_WIDTH / 2];
+	private DisplacementMap map;
+	private DisplacementEngine engine;
 	private static final int TEXTUREWIDTH = 256;
 	private static final int TEXTUREHEIGHT = 256;
 	private int[] texture;
 	private float alpha = 0, beta = 0, dz = 0, dw = 0;
+	private int decz, decw;
 
-	public Warp(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		initDistortionTable();
-		final ImageData image = new ImageData(getClass().getResourceAsStream("texture.png"));
-		imageData = new ImageData(w, h, image.depth, image.palette);
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		map = new DisplacementMap(w, h, getDistortionTable(w, h));
+		final Bitmap image = Bitmap.load(getClass(), "texture.png");
 
 		int index = 0;
 		texture = new int[TEXTUREWIDTH * TEXTUREHEIGHT];
@@ -63,142 +59,82 @@ public class Warp {
 				texture[index++] = image.getPixel(x, y);
 			}
 		}
+		engine = new DisplacementEngine(new Texture(TEXTUREWIDTH, TEXTUREHEIGHT, texture), EdgeMode.WRAP);
 	}
 
-	private void initDistortionTable() {
-		for (int i = 0; i < CANVAS_HEIGHT / 2; i++) {
-			for (int j = 0; j < CANVAS_WIDTH / 2; j++) {
-				double f = Math.pow(j * 1.2 / CANVAS_WIDTH, 2);
-				double d = Math.log(1 + i / (CANVAS_HEIGHT / 3.0)) / (3 * f + 1) * CANVAS_HEIGHT / 2;
-				final short w = (short) d;
-
-				f = Math.pow(i * 1.5 / CANVAS_WIDTH, 2);
-				d = Math.log(1 + j / (CANVAS_WIDTH / 3.0)) / (3 * f + 1) * CANVAS_WIDTH / 2;
-				final short z = (short) d;
+	@Override
+	public void prepare(int width, int height) {
+		getDistortionTable(width, height);
+	}
 
-				distorsionTable[i][j] = new Point(w, z);
+	/**
+	 * @return the distortions of the whole frame, packed as the coordinates of a {@link DisplacementMap}. The distortions of a quarter of the frame
+	 *         are mirrored in the four quadrants, which do not cover the first row and column. They grow with the size of the frame, so they are
+	 *         brought back into the repeated texture to fit in the packing of the map.
+	 */
+	private static int[] getDistortionTable(int w, int h) {
+		return TableCache.getShared().get("Warp.map", w, h, () -> {
+			final int[] table = new int[w * h];
+			for (int j = 0; j < h / 2; j++) {
+				final int p1 = w / 2 + w * (h / 2 - j);
+				final int p3 = w / 2 + w * (h / 2 + j);
+				for (int i = 0; i < w / 2; i++) {
+					double f = Math.pow(i * 1.2 / w, 2);
+					double d = Math.log(1 + j / (h / 3.0)) / (3 * f + 1) * h / 2;
+					final int ddx = (short) d;
+
+					f = Math.pow(j * 1.5 / w, 2);
+					d = Math.log(1 + i / (w / 3.0)) / (3 * f + 1) * w / 2;
+					final int ddy = (short) d;
+
+					// same order as the quadrants were drawn, the last one wins on the middle row and column
+					table[p1 - i] = pack(-ddx, -ddy);
+					table[p1 + i] = pack(-ddx, ddy);
+					table[p3 - i] = pack(ddx, -ddy);
+					table[p3 + i] = pack(ddx, ddy);
+				}
 			}
-		}
+			return table;
+		});
 	}
 
-	public void animate() {
-		doWarp();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
+	private static int pack(int u, int v) {
+		return DisplacementMap.pack(Math.floorMod(u, TEXTUREWIDTH), Math.floorMod(v, TEXTUREHEIGHT));
 	}
 
-	private void doWarp() {
+	@Override
+	public void step() {
 		alpha += 0.02f;
 		beta += 0.044f;
 		dz += Math.sin(alpha + beta) * 2 + Math.cos(beta) + 0.4;
 		dw += Math.cos(beta - alpha) * 3 + Math.sin(alpha) + 0.2;
-		final int decz = (int) dz;
-		final int decw = (int) dw;
-
-		for (int j = 0; j < CANVAS_HEIGHT / 2; j++) {
-			int p1 = CANVAS_WIDTH / 2 + CANVAS_WIDTH * (CANVAS_HEIGHT / 2 - j);
-			int p2 = p1;
-			int p3 = CANVAS_WIDTH / 2 + CANVAS_WIDTH * (CANVAS_HEIGHT / 2 + j);
-			int p4 = p3;
-
-			for (int i = 0; i < CANVAS_WIDTH / 2; i++) {
-				final int ddx = distorsionTable[j][i].x;
-				final int ddy = distorsionTable[j][i].y;
-
-				drawPixel(p1, -ddx + decz & 255, -ddy + decw & 255);
-				p1--;
-				drawPixel(p2, -ddx + decz & 255, ddy + decw & 255);
-				p2++;
-				drawPixel(p3, ddx + decz & 255, -ddy + decw & 255);
-				p3--;
-				drawPixel(p4, ddx + decz & 255, ddy + decw & 255);
-				p4++;
-			}
-		}
-	}
-
-	private void drawPixel(int index, int x, int y) {
-		final int colorIndex = getTexturePixel(x, y);
-		final int posX = index % CANVAS_WIDTH;
-		final int posY = index / CANVAS_WIDTH;
-		imageData.setPixel(posX, posY, colorIndex);
+		decz = (int) dz;
+		decw = (int) dw;
 	}
 
-	private int getTexturePixel(int x, int y) {
-		return texture[(y << 8) + x];
+	@Override
+	public void render(int[] argb, long frameIndex) {
+		doWarp(argb);
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
+	private void doWarp(int[] argb) {
+		// The quadrants cover the rows and columns 1 to 2 * (h / 2) - 1 and 2 * (w / 2) - 1
+		final int width = 2 * (w / 2) - 1, height = 2 * (h / 2) - 1;
+		Arrays.fill(argb, 0, w, 0);
+		for (int y = 1; y <= height; y++) {
+			argb[y * w] = 0;
+			if (width < w - 1) {
+				argb[y * w + w - 1] = 0;
+			}
 		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
+		if (height < h - 1) {
+			Arrays.fill(argb, (h - 1) * w, h * w, 0);
 		}
-		image.dispose();
 
+		engine.render(argb, w, 1, 1, width, height, map, 1, 1, decz, decw);
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Warp app = new Warp(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Warp());
 	}
 }
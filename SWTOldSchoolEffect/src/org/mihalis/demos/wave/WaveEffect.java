@@ -13,19 +13,12 @@
 package org.mihalis.demos.wave;
 
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Event;
-import org.eclipse.swt.widgets.Listener;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.InteractiveEffect;
+import org.mihalis.demos.core.Raster;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class WaveEffect {
+public class WaveEffect implements InteractiveEffect {
 
 	private static final String SHELL_TITLE = "WaveEffect";
 
@@ -35,11 +28,7 @@ public class WaveEffect {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
 
 	//
 	private int patternWidth;
@@ -52,17 +41,12 @@ public class WaveEffect {
 	private static final double STEP = 0.07000000000000001D;
 	private static final int COLS = 30;
 	private static final int LINES = 20;
-	private int kind = 0;
-	private boolean listenerAlreadyAdded;
-
-	public WaveEffect(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		final ImageData imageData = new ImageData(w, h, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
-		image = new Image(display, imageData);
+	private volatile int kind = 0;
 
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 		position = 0.0D;
 		xPos = new int[COLS][LINES];
 		yPos = new int[COLS][LINES];
@@ -71,30 +55,22 @@ public class WaveEffect {
 		patternHeight = (int) (0.5D * (h - (LINES - 1) * 15)) - 3;
 		centerX = (int) (0.5D * w);
 		centerY = (int) (0.5D * h);
+	}
 
-		if (!listenerAlreadyAdded) {
-			listenerAlreadyAdded = true;
-			canvas.addListener(SWT.MouseUp, new Listener() {
-
-				@Override
-				public void handleEvent(Event event) {
-					position = 0.0D;
-					kind++;
-					if (kind == 4) {
-						kind = 0;
-					}
-				}
-			});
+	@Override
+	public void mouseUp(int x, int y, int button) {
+		position = 0.0D;
+		kind++;
+		if (kind == 4) {
+			kind = 0;
 		}
 	}
 
-	public void animate() {
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 
 		// Clear screen
-		final GC GCTemp = new GC(image);
-		GCTemp.setBackground(display.getSystemColor(SWT.COLOR_BLACK));
-		GCTemp.setForeground(display.getSystemColor(SWT.COLOR_WHITE));
-		GCTemp.fillRectangle(0, 0, w, h);
+		Raster.fill(argb, w, h, 0);
 
 		// Compute new positions
 		position += STEP;
@@ -152,85 +128,27 @@ public class WaveEffect {
 		// Draw points
 		for (int i = 0; i < COLS; ++i) {
 			for (int j = 0; j < LINES; ++j) {
-				GCTemp.drawPoint(xPos[i][j], yPos[i][j]);
-				GCTemp.drawPoint(xPos[i][j] + 1, yPos[i][j]);
-				GCTemp.drawPoint(xPos[i][j], yPos[i][j] + 1);
-				GCTemp.drawPoint(xPos[i][j] + 1, yPos[i][j] + 1);
+				Raster.fillRect(argb, w, h, xPos[i][j], yPos[i][j], 2, 2, 0xFFFFFF);
 			}
 		}
-
-		GCTemp.drawString("Click to change the effect (Here is effect #" + (kind + 1) + ")", 10, 10);
-
-		GCTemp.dispose();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
 	}
 
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
+	public int getKind() {
+		return kind;
 	}
 
 	public static void main(String[] args) {
 		final Display display = new Display();
 
-		final WaveEffect app = new WaveEffect(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
+		final WaveEffect app = new WaveEffect();
+		final EffectWindow window = new EffectWindow(display, SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, app);
 
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
+		window.getCanvas().addPaintListener(e -> {
+			e.gc.setForeground(display.getSystemColor(SWT.COLOR_WHITE));
+			e.gc.drawString("Click to change the effect (Here is effect #" + (app.getKind() + 1) + ")", 10, 10, true);
+		});
 
+		window.open();
 		display.dispose();
 	}
 }
@@ -12,17 +12,11 @@
  *******************************************************************************/
 package org.mihalis.demos.wobble;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
-
-public class WobbleEffect {
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.swt.EffectWindow;
+
+public class WobbleEffect implements Effect {
 
 	// Title
 	private static final String TITLE = "WobbleEffect";
@@ -34,14 +28,10 @@ public class WobbleEffect {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 10;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private Image image;
 
 	//
-	private ImageData img;
+	private Bitmap img;
 	double dk;
 	double aci;
 	double prm1;
@@ -61,17 +51,13 @@ public class WobbleEffect {
 
 	private int imgw;
 
-	public WobbleEffect(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
 
 		// Load images
-		img = new ImageData(getClass().getResourceAsStream("bu.jpg"));
-
-		final ImageData imageData = new ImageData(w, h, img.depth, img.palette);
-		image = new Image(display, imageData);
+		img = Bitmap.load(getClass(), "bu.jpg");
 
 		dk = 0.0D;
 		prm1 = 6 / 10.0D;
@@ -83,12 +69,10 @@ public class WobbleEffect {
 		imgw = img.width;
 		imgh = img.height;
 
-		dt = new int[imgw * imgh];
+		dt = img.pixels;
 		isle = new int[w * h];
 		isle2 = new int[w * h];
 
-		img.getPixels(0, 0, imgw * imgh, dt, 0);
-
 		icx = (int) Math.floor(imgw / 2);
 		icy = (int) Math.floor(imgh / 2);
 
@@ -111,14 +95,8 @@ public class WobbleEffect {
 
 	}
 
-	public void animate() {
-
-		// Clear screen
-		final GC GCTemp = new GC(image);
-		GCTemp.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
-		GCTemp.fillRectangle(0, 0, w, h);
-		GCTemp.dispose();
-		final ImageData imageData = image.getImageData();
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
 
 		final double b = Math.sin(aci);
 		for (int i = 0; i < w; i++) {
@@ -135,8 +113,7 @@ public class WobbleEffect {
 			}
 
 		}
-		imageData.setPixels(0, 0, w * h, isle, 0);
-		image = new Image(display, imageData);
+		System.arraycopy(isle, 0, argb, 0, w * h);
 
 		//
 		if (direction) {
@@ -154,74 +131,9 @@ public class WobbleEffect {
 		}
 
 		aci = dk * 0.0174532925199433D;
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
-		});
-		return shell;
-	}
-
-	private void redrawCanvas() {
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final WobbleEffect app = new WobbleEffect(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new WobbleEffect());
 	}
 }
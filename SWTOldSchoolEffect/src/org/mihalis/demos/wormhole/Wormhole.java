@@ -12,17 +12,16 @@
  *******************************************************************************/
 package org.mihalis.demos.wormhole;
 
-import org.eclipse.swt.SWT;
-import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Canvas;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Shell;
+import org.mihalis.demos.core.Bitmap;
+import org.mihalis.demos.core.DisplacementEngine;
+import org.mihalis.demos.core.DisplacementMap;
+import org.mihalis.demos.core.Effect;
+import org.mihalis.demos.core.TableCache;
+import org.mihalis.demos.core.sampler.EdgeMode;
+import org.mihalis.demos.core.sampler.Texture;
+import org.mihalis.demos.core.swt.EffectWindow;
 
-public class Wormhole {
+public class Wormhole implements Effect {
 
 	// Title
 	private static final String SHELL_TITLE = "Wormhole";
@@ -34,38 +33,27 @@ public class Wormhole {
 	// The timer interval in milliseconds
 	private static final int TIMER_INTERVAL = 30;
 
-	private final Display display;
-	private Canvas canvas;
-	private GC gc;
 	private int w, h;
-	private ImageData imageData;
 
-	private byte[] wormImg;
-	private float[] spokeCalc;
-	private float[] spokeCosCalc;
-	private float[] spokeSinCalc;
+	private DisplacementMap wormImg;
 	private int[] wormTexture;
+	private DisplacementEngine engine;
+	private int shift;
 
 	//
 	private static final int DIRECTIONX = -2; // -5 to 5
 	private static final int DIRECTIONY = -1; // -5 to 5
 	private static final int SPOKES = 2400;
-	private static final int MAXX = 640;
-	private static final int MAXY = 480;
-	private static final int XCENTER = MAXX / 2;
-	private static final int YCENTER = MAXY / 2 - MAXY / 4;
 	private static final int DIVS = SPOKES;
 	private static final int TEXTUREWIDTH = 15;
 	private static final int TEXTUREHEIGHT = 15;
 
-	public Wormhole(Display display) {
-		this.display = display;
-	}
-
-	public void init() {
-		initTables();
-		final ImageData image = new ImageData(getClass().getResourceAsStream("texture.png"));
-		imageData = new ImageData(w, h, image.depth, image.palette);
+	@Override
+	public void init(int width, int height) {
+		w = width;
+		h = height;
+		wormImg = new DisplacementMap(w, h, getWormImage(w, h));
+		final Bitmap image = Bitmap.load(getClass(), "texture.png");
 
 		int index = 0;
 		wormTexture = new int[TEXTUREWIDTH * TEXTUREHEIGHT];
@@ -74,201 +62,72 @@ public class Wormhole {
 				wormTexture[index++] = image.getPixel(x, y);
 			}
 		}
-
+		engine = new DisplacementEngine(new Texture(TEXTUREWIDTH, TEXTUREHEIGHT, wormTexture), EdgeMode.WRAP);
+		shift = 0;
 	}
 
-	private void initTables() {
-		wormImg = new byte[MAXX * MAXY];
-		spokeCalc = new float[SPOKES];
-		spokeCosCalc = new float[SPOKES];
-		spokeSinCalc = new float[SPOKES];
-
-		for (int i = 0; i < SPOKES; i++) {
-			spokeCalc[i] = (float) (2f * Math.PI * i / SPOKES);
-			spokeCosCalc[i] = (float) Math.cos(spokeCalc[i]);
-			spokeSinCalc[i] = (float) Math.sin(spokeCalc[i]);
-		}
-
-		for (int j = 1; j < DIVS + 1; j++) {
-			final float z = (float) (-1.0f + Math.log(2.0f * j / DIVS));
-
-			final float divCalcX = MAXX * j / DIVS;
-			final float divCalcY = MAXY * j / DIVS;
-
-			for (int i = 0; i < SPOKES; i++) {
-				float x = divCalcX * spokeCosCalc[i];
-				float y = divCalcY * spokeSinCalc[i];
-
-				y -= 25f * z;
-
-				x += XCENTER;
-				y += YCENTER;
-
-				if (x >= 0 && x < MAXX && y >= 0 && y < MAXY) {
-					wormImg[(int) x + (int) y * MAXX] = (byte) (i / 8 % TEXTUREWIDTH + TEXTUREWIDTH * (j / 7 % TEXTUREWIDTH));
-				}
-			}
-		}
+	@Override
+	public void prepare(int width, int height) {
+		getWormImage(width, height);
 	}
 
-	public void animate() {
-		doWormhole();
-		if (!canvas.isDisposed()) {
-			canvas.redraw();
-		}
-	}
-
-	private void doWormhole() {
-
-		for (int i = 0; i < MAXX * MAXY; i++) {
-			final int colorIndex = wormTexture[(wormImg[i] + 256) % 256];
-			imageData.setPixel(i % CANVAS_WIDTH, i / CANVAS_WIDTH, colorIndex);
-		}
-
-		shiftDown();
-		shiftUp();
-		shiftRight();
-		shiftLeft();
-	}
-
-	private void shiftDown() {
-		final int[] reg = new int[TEXTUREHEIGHT];
-
-		for (int i = 0; i < DIRECTIONY; i++) {
-			for (int k = 0; k < TEXTUREHEIGHT; k++) {
-				reg[k] = wormTexture[k + 210];
-			}
-
-			for (int k = 209; k >= 0; k--) {
-				wormTexture[k + 15] = wormTexture[k];
-			}
-
-			for (int k = 0; k < 15; k++) {
-				wormTexture[k] = reg[k];
-			}
-		}
-	}
-
-	private void shiftUp() {
-		final int[] reg = new int[TEXTUREHEIGHT];
-
-		for (int i = DIRECTIONY; i < 0; i++) {
-			for (int k = 0; k < TEXTUREHEIGHT; k++) {
-				reg[k] = wormTexture[k];
-			}
+	/**
+	 * @return the coordinates of the texel of each pixel, packed as the coordinates of a {@link DisplacementMap} and shared by all the wormholes of this
+	 *         size. Only the texture is animated.
+	 */
+	private static int[] getWormImage(int w, int h) {
+		return TableCache.getShared().get("Wormhole.map", w, h, () -> {
+			final int xCenter = w / 2;
+			final int yCenter = h / 2 - h / 4;
+			final int[] wormImg = new int[w * h];
+			final float[] spokeCalc = new float[SPOKES];
+			final float[] spokeCosCalc = new float[SPOKES];
+			final float[] spokeSinCalc = new float[SPOKES];
 
-			for (int k = 15; k < 15 * 15; k++) {
-				wormTexture[k - 15] = wormTexture[k];
+			for (int i = 0; i < SPOKES; i++) {
+				spokeCalc[i] = (float) (2f * Math.PI * i / SPOKES);
+				spokeCosCalc[i] = (float) Math.cos(spokeCalc[i]);
+				spokeSinCalc[i] = (float) Math.sin(spokeCalc[i]);
 			}
 
-			for (int k = 0; k < 15; k++) {
-				wormTexture[k + 210] = reg[k];
-			}
-		}
-	}
+			for (int j = 1; j < DIVS + 1; j++) {
+				final float z = (float) (-1.0f + Math.log(2.0f * j / DIVS));
 
-	private void shiftRight() {
-		final int[] reg = new int[TEXTUREHEIGHT];
+				final float divCalcX = w * j / DIVS;
+				final float divCalcY = h * j / DIVS;
 
-		for (int j = 0; j < DIRECTIONX; j++) {
-			for (int k = 0; k < 15; k++) {
-				reg[k] = wormTexture[15 * k + 14];
+				for (int i = 0; i < SPOKES; i++) {
+					float x = divCalcX * spokeCosCalc[i];
+					float y = divCalcY * spokeSinCalc[i];
 
-				for (int i = 14; i > 0; i--) {
-					wormTexture[15 * k + i] = wormTexture[15 * k + i - 1];
-				}
+					y -= 25f * z;
 
-				wormTexture[15 * k] = reg[k];
-			}
-		}
-	}
+					x += xCenter;
+					y += yCenter;
 
-	private void shiftLeft() {
-		final int[] reg = new int[TEXTUREHEIGHT];
-
-		for (int j = DIRECTIONX; j < 0; j++) {
-			for (int k = 0; k < 15; k++) {
-				reg[k] = wormTexture[15 * k];
-
-				for (int i = 0; i < 14; i++) {
-					wormTexture[15 * k + i] = wormTexture[15 * k + i + 1];
+					if (x >= 0 && x < w && y >= 0 && y < h) {
+						wormImg[(int) x + (int) y * w] = DisplacementMap.pack(i / 8 % TEXTUREWIDTH, j / 7 % TEXTUREWIDTH);
+					}
 				}
-
-				wormTexture[15 * k + 14] = reg[k];
 			}
-		}
-	}
-
-	private Shell createWindow() {
-		final Shell shell = new Shell(display, SWT.SHELL_TRIM);
-		shell.setText(SHELL_TITLE);
-		shell.setLayout(new GridLayout(1, false));
-
-		canvas = new Canvas(shell, SWT.BORDER | SWT.NO_REDRAW_RESIZE | SWT.DOUBLE_BUFFERED);
-		final GridData gdCanvas = new GridData(GridData.FILL, GridData.FILL, true, true);
-		gdCanvas.widthHint = CANVAS_WIDTH;
-		gdCanvas.heightHint = CANVAS_HEIGHT;
-		canvas.setLayoutData(gdCanvas);
-
-		gc = new GC(canvas);
-
-		canvas.addListener(SWT.Resize, e -> {
-			w = canvas.getClientArea().width;
-			h = canvas.getClientArea().height;
-			init();
-		});
-
-		canvas.addPaintListener(e -> {
-			gc = e.gc;
-			redrawCanvas();
+			return wormImg;
 		});
+	}
 
-		return shell;
+	@Override
+	public void renderFrame(int[] argb, long frameIndex) {
+		doWormhole(argb);
 	}
 
-	private void redrawCanvas() {
-		if (imageData == null) {
-			return;
-		}
-		final Image image = new Image(display, imageData);
-		if (image != null) {
-			gc.drawImage(image, 0, 0);
-		}
-		image.dispose();
+	private void doWormhole(int[] argb) {
+		// Scrolling the texture by the directions every frame is the same as shifting its coordinates
+		engine.render(argb, wormImg, -DIRECTIONX * shift, -DIRECTIONY * shift);
 
+		// The texture repeats itself every 15 shifts
+		shift = (shift + 1) % TEXTUREWIDTH;
 	}
 
 	public static void main(String[] args) {
-		final Display display = new Display();
-
-		final Wormhole app = new Wormhole(display);
-
-		final Shell shell = app.createWindow();
-		shell.pack();
-		shell.open();
-		app.init();
-
-		// Set up the timer for the animation
-		final Runnable runnable = new Runnable() {
-			@Override
-			public void run() {
-				app.animate();
-				display.timerExec(TIMER_INTERVAL, this);
-			}
-		};
-
-		// Launch the timer
-		display.timerExec(TIMER_INTERVAL, runnable);
-
-		while (!shell.isDisposed()) {
-			if (!display.readAndDispatch()) {
-				display.sleep();
-			}
-		}
-
-		// Kill the timer
-		display.timerExec(-1, runnable);
-
-		display.dispose();
+		EffectWindow.run(SHELL_TITLE, CANVAS_WIDTH, CANVAS_HEIGHT, TIMER_INTERVAL, new Wormhole());
 	}
 }